@@ -0,0 +1,127 @@
+package com.qna.platform.util;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 敏感词预筛基准：Aho-Corasick自动机（{@link KeywordAutomaton}）与逐词 contains 对比
+ * 词库默认为固定种子生成的中文词（2~6字），内容不含敏感词（预筛最常见、也是逐词扫描最慢的情况）；
+ * 指定 -Dbadwords.path 时改用实际词库文件，wordCount参数不再生效。
+ * automaton/naiveContains 输出每次扫描的耗时（ns/op）；automatonThroughput 以吞吐量模式运行自动机，
+ * 附加的 megabytes 计数即按UTF-8字节计的扫描速度（MB/s）。
+ * 运行：mvn -Pjmh test-compile exec:exec -Djmh.args="KeywordAutomatonBenchmark"
+ *
+ * @author QnA Platform
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KeywordAutomatonBenchmark {
+
+    @Param({"1000", "10000"})
+    private int wordCount;
+
+    @Param({"200", "2000", "102400"})
+    private int contentLength;
+
+    private List<String> words;
+    private KeywordAutomaton automaton;
+    private String content;
+    private double contentMegabytes;
+
+    /**
+     * 扫描字节数计数，吞吐量模式下按秒归一化即为MB/s
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ScannedBytes {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(20240601L);
+        String path = System.getProperty("badwords.path");
+        if (path != null) {
+            words = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8).stream()
+                    .map(String::strip)
+                    .filter(word -> !word.isEmpty())
+                    .toList();
+        } else {
+            Set<String> generated = new LinkedHashSet<>();
+            while (generated.size() < wordCount) {
+                generated.add(randomCjk(random, 2 + random.nextInt(5)));
+            }
+            words = new ArrayList<>(generated);
+        }
+        automaton = KeywordAutomaton.build(words);
+
+        // 生成不含任何敏感词的内容：先整体随机生成，再把命中的词的末字替换掉，直到没有命中
+        StringBuilder builder = new StringBuilder(randomCjk(random, contentLength));
+        String word;
+        while ((word = automaton.firstMatch(builder.toString())) != null) {
+            int end = builder.indexOf(word) + word.length();
+            builder.setCharAt(end - 1, randomCjk(random, 1).charAt(0));
+        }
+        content = builder.toString();
+        contentMegabytes = content.getBytes(StandardCharsets.UTF_8).length / 1_000_000.0;
+    }
+
+    @Benchmark
+    public String automaton() {
+        return automaton.firstMatch(content);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String automatonThroughput(ScannedBytes scanned) {
+        scanned.megabytes += contentMegabytes;
+        return automaton.firstMatch(content);
+    }
+
+    @Benchmark
+    public String naiveContains() {
+        for (String word : words) {
+            if (content.contains(word)) {
+                return word;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 从常用汉字区间随机取字，字符集较小以使词之间有公共前缀
+     */
+    private static String randomCjk(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (0x4E00 + random.nextInt(2000));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,147 @@
+package com.qna.platform.util;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.qna.platform.entity.ApiConfig;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大模型JSON编解码基准：Jackson流式编解码（{@link LlmJsonCodec}）与原先的Hutool Map/JSON树方式对比
+ * <ul>
+ *   <li>encode：构建OpenAI格式的对话请求体并写出为字节</li>
+ *   <li>decode：从完整响应中读取回复内容</li>
+ *   <li>delta：从流式响应的一个data块中读取增量文本</li>
+ * </ul>
+ * 两种方式的主要差别在于中间对象的分配，比较时以 gc.alloc.rate.norm（每次操作分配的字节数）为准，
+ * 耗时受GC停顿影响波动较大。pom中jmh profile的默认参数（jmh.options）带 -prof gc 输出该指标。
+ * 运行：mvn -Pjmh test-compile exec:exec -Djmh.args="LlmJsonCodecBenchmark"
+ *
+ * @author QnA Platform
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LlmJsonCodecBenchmark {
+
+    /**
+     * 历史消息条数
+     */
+    @Param({"4", "20"})
+    private int historySize;
+
+    /**
+     * 每条消息和回复的字符数
+     */
+    @Param({"200", "2000"})
+    private int messageLength;
+
+    private ApiConfig apiConfig;
+    private List<Map<String, String>> messages;
+    private byte[] responseBody;
+    private String deltaChunk;
+
+    @Setup
+    public void setUp() {
+        apiConfig = new ApiConfig();
+        apiConfig.setProvider("OPENAI");
+        apiConfig.setModelName("gpt-4o");
+        apiConfig.setApiEndpoint("https://api.openai.com/v1/chat/completions");
+        apiConfig.setMaxTokens(2048);
+        apiConfig.setTemperature(new BigDecimal("0.7"));
+
+        messages = new ArrayList<>();
+        messages.add(Map.of("role", "system", "content", "你是一个乐于助人的助手。"));
+        for (int i = 0; i < historySize; i++) {
+            messages.add(Map.of("role", i % 2 == 0 ? "user" : "assistant", "content", text(messageLength, i)));
+        }
+
+        JSONObject message = new JSONObject()
+                .set("role", "assistant")
+                .set("content", text(messageLength, 7));
+        JSONObject response = new JSONObject()
+                .set("id", "chatcmpl-9x8y7z")
+                .set("object", "chat.completion")
+                .set("created", 1718000000L)
+                .set("model", "gpt-4o-2024-05-13")
+                .set("choices", List.of(new JSONObject()
+                        .set("index", 0)
+                        .set("message", message)
+                        .set("logprobs", null)
+                        .set("finish_reason", "stop")))
+                .set("usage", new JSONObject()
+                        .set("prompt_tokens", 1200)
+                        .set("completion_tokens", 600)
+                        .set("total_tokens", 1800))
+                .set("system_fingerprint", "fp_3aa7262c27");
+        responseBody = response.toString().getBytes(StandardCharsets.UTF_8);
+
+        deltaChunk = "{\"id\":\"chatcmpl-9x8y7z\",\"object\":\"chat.completion.chunk\",\"created\":1718000000,"
+                + "\"model\":\"gpt-4o-2024-05-13\",\"system_fingerprint\":\"fp_3aa7262c27\",\"choices\":[{\"index\":0,"
+                + "\"delta\":{\"content\":\"这是一段增量内容\"},\"logprobs\":null,\"finish_reason\":null}]}";
+    }
+
+    @Benchmark
+    public long encodeStreaming() throws IOException {
+        Buffer buffer = new Buffer();
+        LlmJsonCodec.chatRequest(apiConfig, messages, false).writeTo(buffer);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public int encodeHutool() {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", apiConfig.getModelName());
+        requestBody.put("messages", messages);
+        requestBody.put("max_tokens", apiConfig.getMaxTokens());
+        requestBody.put("temperature", apiConfig.getTemperature());
+        return JSONUtil.toJsonStr(requestBody).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @Benchmark
+    public String decodeStreaming() throws IOException {
+        return LlmJsonCodec.readChatContent("OPENAI", new ByteArrayInputStream(responseBody));
+    }
+
+    @Benchmark
+    public String decodeHutool() {
+        JSONObject json = JSONUtil.parseObj(new String(responseBody, StandardCharsets.UTF_8));
+        return json.getByPath("choices[0].message.content", String.class);
+    }
+
+    @Benchmark
+    public String deltaStreaming() throws IOException {
+        return LlmJsonCodec.readStreamDelta("OPENAI", deltaChunk);
+    }
+
+    @Benchmark
+    public String deltaHutool() {
+        return JSONUtil.parseObj(deltaChunk).getByPath("choices[0].delta.content", String.class);
+    }
+
+    private static String text(int length, int seed) {
+        StringBuilder builder = new StringBuilder(length);
+        String sample = "合规检测 \"quoted\" text, 中英文混合 content\n";
+        for (int i = seed; builder.length() < length; i++) {
+            builder.append(sample.charAt(i % sample.length()));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package com.qna.platform.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 异步线程池配置
+ *
+ * @author QnA Platform
+ */
+@Configuration
+public class AsyncConfig {
+
+    /**
+     * 流式对话线程池
+     * 每个流式对话在读取大模型响应期间占用一个线程，不占用Web请求线程
+     */
+    @Bean("chatStreamExecutor")
+    public ThreadPoolTaskExecutor chatStreamExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(16);
+        executor.setMaxPoolSize(64);
+        executor.setQueueCapacity(200);
+        executor.setThreadNamePrefix("chat-stream-");
+        // 队列满时直接拒绝，由调用方返回错误，避免阻塞请求线程
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 合规检测任务线程池
+     * 每个正在执行的LOG检测任务占用一个线程，负责调度检测请求和写回结果
+     */
+    @Bean("complianceTaskExecutor")
+    public ThreadPoolTaskExecutor complianceTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(50);
+        executor.setThreadNamePrefix("compliance-task-");
+        // 队列满时直接拒绝，由调用方返回"任务过多"
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 合规检测调用线程池
+     * 执行对Python合规检测服务的批量调用，每个任务同时在途的调用数由任务自身限制
+     */
+    @Bean("complianceCheckExecutor")
+    public ThreadPoolTaskExecutor complianceCheckExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(16);
+        executor.setMaxPoolSize(16);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("compliance-check-");
+        // 饱和时由任务线程自己执行，相当于降低该任务的并发
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
@@ -4,11 +4,13 @@ import com.qna.platform.annotation.RequirePermission;
 import com.qna.platform.common.PageResult;
 import com.qna.platform.common.Result;
 import com.qna.platform.entity.ApiConfig;
+import com.qna.platform.entity.ApiConfigKey;
 import com.qna.platform.service.ApiConfigService;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * API配置控制器
@@ -129,4 +131,115 @@ public class ApiConfigController {
             return Result.error(e.getMessage());
         }
     }
+
+    /**
+     * 并发测试所有启用的API配置
+     */
+    @PostMapping("/test-all")
+    public Result<Map<Long, Object>> testEnabledConfigs() {
+        try {
+            return Result.success(apiConfigService.testEnabledConfigs());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 获取回复缓存统计
+     */
+    @GetMapping("/response-cache/stats")
+    public Result<Map<String, Object>> getResponseCacheStats() {
+        try {
+            return Result.success(apiConfigService.getResponseCacheStats());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 获取对冲请求统计
+     */
+    @GetMapping("/hedge/stats")
+    public Result<Map<String, Object>> getHedgeStats() {
+        try {
+            return Result.success(apiConfigService.getHedgeStats());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 获取准入控制状态
+     */
+    @GetMapping("/admission/stats")
+    public Result<Map<Long, Object>> getAdmissionStats() {
+        try {
+            return Result.success(apiConfigService.getAdmissionStats());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 获取熔断器状态
+     */
+    @GetMapping("/circuit-breaker/stats")
+    public Result<Map<Long, Object>> getCircuitBreakerStats() {
+        try {
+            return Result.success(apiConfigService.getCircuitBreakerStats());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 获取API配置密钥池中的密钥
+     */
+    @GetMapping("/{id}/keys")
+    public Result<List<ApiConfigKey>> getConfigKeys(@PathVariable Long id) {
+        try {
+            return Result.success(apiConfigService.getConfigKeys(id));
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 向API配置的密钥池添加密钥
+     */
+    @PostMapping("/{id}/keys")
+    public Result<String> addConfigKey(@PathVariable Long id, @RequestBody ApiConfigKey configKey) {
+        try {
+            configKey.setApiConfigId(id);
+            apiConfigService.addConfigKey(configKey);
+            return Result.success("添加成功");
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 从密钥池删除密钥
+     */
+    @DeleteMapping("/keys/{keyId}")
+    public Result<String> deleteConfigKey(@PathVariable Long keyId) {
+        try {
+            apiConfigService.deleteConfigKey(keyId);
+            return Result.success("删除成功");
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 获取密钥池使用统计
+     */
+    @GetMapping("/key-pool/stats")
+    public Result<Map<Long, Object>> getKeyPoolStats() {
+        try {
+            return Result.success(apiConfigService.getKeyPoolStats());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
 }
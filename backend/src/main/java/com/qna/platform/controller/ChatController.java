@@ -7,11 +7,15 @@ import com.qna.platform.dto.FileUploadResult;
 import com.qna.platform.service.ChatService;
 import com.qna.platform.util.FileParser;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -52,6 +56,35 @@ public class ChatController {
         }
     }
 
+    /**
+     * 流式发送消息（SSE）
+     * 大模型每生成一段内容就推送一个delta事件，完成后推送done事件
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMessage(
+            @Validated @RequestBody ChatRequestDTO requestDTO,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        Long userId = (Long) request.getAttribute("userId");
+        // 禁止反向代理缓冲，保证增量内容及时到达浏览器
+        response.setHeader("X-Accel-Buffering", "no");
+        response.setHeader("Cache-Control", "no-cache");
+        try {
+            return chatService.streamMessage(userId, requestDTO);
+        } catch (Exception e) {
+            // 前置校验失败（配额、会话等），以error事件返回
+            SseEmitter emitter = new SseEmitter();
+            try {
+                emitter.send(SseEmitter.event().name("error")
+                        .data(Map.of("message", String.valueOf(e.getMessage()))));
+                emitter.complete();
+            } catch (IOException sendError) {
+                emitter.completeWithError(sendError);
+            }
+            return emitter;
+        }
+    }
+
     /**
      * 获取会话历史
      */
@@ -8,11 +8,13 @@ import com.qna.platform.dto.ComplianceCheckDTO;
 import com.qna.platform.entity.ComplianceTask;
 import com.qna.platform.service.ComplianceService;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -95,6 +97,80 @@ public class ComplianceController {
         }
     }
 
+    /**
+     * 获取合规检测结果缓存统计
+     */
+    @GetMapping("/verdict-cache/stats")
+    public Result<Map<String, Object>> getVerdictCacheStats() {
+        try {
+            return Result.success(complianceService.getVerdictCacheStats());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 获取敏感词预筛统计
+     */
+    @GetMapping("/prefilter/stats")
+    public Result<Map<String, Object>> getPrefilterStats() {
+        try {
+            return Result.success(complianceService.getPrefilterStats());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 获取后台合规扫描状态
+     */
+    @GetMapping("/scanner/stats")
+    public Result<Map<String, Object>> getScannerStats() {
+        try {
+            return Result.success(complianceService.getScannerStats());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 获取合规检测服务实例状态
+     */
+    @GetMapping("/instances/stats")
+    public Result<List<Map<String, Object>>> getInstanceStats() {
+        try {
+            return Result.success(complianceService.getInstanceStats());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 获取合规补检队列统计
+     */
+    @GetMapping("/retry/stats")
+    public Result<Map<String, Object>> getRetryQueueStats() {
+        try {
+            return Result.success(complianceService.getRetryQueueStats());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 取消检测
+     */
+    @PostMapping("/task/{taskId}/cancel")
+    public Result<String> cancelTask(@PathVariable Long taskId, HttpServletRequest request) {
+        try {
+            Long userId = (Long) request.getAttribute("userId");
+            complianceService.cancelTask(taskId, userId);
+            return Result.success("检测任务已取消");
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
     /**
      * 检查单条消息
      */
@@ -129,4 +205,18 @@ public class ComplianceController {
             return Result.error("批量检测失败：" + e.getMessage());
         }
     }
+
+    /**
+     * 批量检测 - 文件上传，检测结果以NDJSON流式返回
+     * 支持JSON数组、NDJSON和CSV格式的导出文件
+     */
+    @PostMapping("/batch-check/stream")
+    public void batchCheckStream(
+            @RequestParam("file") MultipartFile file,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        log.info("收到流式批量检测请求，文件名：{}", file.getOriginalFilename());
+        Long userId = (Long) request.getAttribute("userId");
+        complianceService.batchCheckFromFileToResponse(file, userId, response);
+    }
 }
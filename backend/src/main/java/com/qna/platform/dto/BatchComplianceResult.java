@@ -42,6 +42,11 @@ public class BatchComplianceResult {
      * 未检测数
      */
     private Integer uncheckedCount;
+
+    /**
+     * 检测项是否超出返回上限被截断（完整结果使用流式接口获取）
+     */
+    private Boolean truncated;
     
     /**
      * 检测项
@@ -19,7 +19,7 @@ public class ComplianceCheckDTO {
     private String taskName;
 
     /**
-     * 任务类型：LOG-日志检测，FILE-文件上传检测
+     * 任务类型：LOG-日志检测，FILE-文件上传检测，SAMPLE-日志分层抽样检测
      */
     @NotNull(message = "任务类型不能为空")
     private String taskType;
@@ -39,6 +39,21 @@ public class ComplianceCheckDTO {
      */
     private String userIds;
 
+    /**
+     * 分层维度（抽样检测使用）：USER-按用户，ROLE-按消息角色，API_CONFIG-按API配置，默认USER
+     */
+    private String stratifyBy;
+
+    /**
+     * 置信水平（抽样检测使用），默认0.95
+     */
+    private Double confidence;
+
+    /**
+     * 误差范围（抽样检测使用），默认0.05
+     */
+    private Double margin;
+
     /**
      * 上传文件路径（文件检测使用）
      */
@@ -0,0 +1,51 @@
+package com.qna.platform.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 日志检测任务的筛选条件
+ * 创建任务时保存，执行时按同一条件扫描，maxMessageId 保证任务只覆盖创建时已存在的消息；
+ * 抽样检测任务另外保存分层维度、置信水平和误差范围
+ *
+ * @author QnA Platform
+ */
+@Data
+public class ComplianceLogFilter {
+
+    /**
+     * 开始时间（yyyy-MM-dd HH:mm:ss）
+     */
+    private String startTime;
+
+    /**
+     * 结束时间（yyyy-MM-dd HH:mm:ss）
+     */
+    private String endTime;
+
+    /**
+     * 用户ID列表，为空表示所有用户
+     */
+    private List<Long> userIds;
+
+    /**
+     * 消息ID上界（创建任务时的最大消息ID）
+     */
+    private Long maxMessageId;
+
+    /**
+     * 分层维度（抽样检测）：USER、ROLE、API_CONFIG
+     */
+    private String stratifyBy;
+
+    /**
+     * 置信水平（抽样检测）
+     */
+    private Double confidence;
+
+    /**
+     * 误差范围（抽样检测）
+     */
+    private Double margin;
+}
@@ -72,6 +72,36 @@ public class ApiConfig implements Serializable {
      */
     private String extraParams;
 
+    /**
+     * 是否启用回复缓存：0-否，1-是
+     */
+    private Integer responseCacheEnabled;
+
+    /**
+     * 回复缓存有效期（秒）
+     */
+    private Integer responseCacheTtl;
+
+    /**
+     * 对冲组名称：同组的API配置视为等价，为空表示不参与对冲
+     */
+    private String hedgeGroup;
+
+    /**
+     * 每秒最大请求数，为空表示不限制
+     */
+    private BigDecimal rateLimitRps;
+
+    /**
+     * 最大并发请求数（实际上限根据429和响应耗时自适应调整）
+     */
+    private Integer maxConcurrency;
+
+    /**
+     * 超出限制时最大排队请求数
+     */
+    private Integer maxQueue;
+
     /**
      * 状态：0-禁用，1-启用
      */
@@ -0,0 +1,61 @@
+package com.qna.platform.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * API密钥池中的密钥
+ * 与 {@link ApiConfig#getApiKey()} 一起组成该配置的密钥池
+ *
+ * @author QnA Platform
+ */
+@Data
+@TableName("api_config_key")
+public class ApiConfigKey implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 密钥ID
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * API配置ID
+     */
+    private Long apiConfigId;
+
+    /**
+     * 密钥名称
+     */
+    private String keyName;
+
+    /**
+     * API密钥
+     */
+    private String apiKey;
+
+    /**
+     * API端点，为空时使用API配置的端点
+     */
+    private String apiEndpoint;
+
+    /**
+     * 状态：0-禁用，1-启用
+     */
+    private Integer status;
+
+    /**
+     * 创建时间
+     */
+    @TableField(fill = FieldFill.INSERT)
+    private LocalDateTime createdTime;
+
+    /**
+     * 更新时间
+     */
+    @TableField(fill = FieldFill.INSERT_UPDATE)
+    private LocalDateTime updatedTime;
+}
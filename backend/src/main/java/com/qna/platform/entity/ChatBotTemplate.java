@@ -35,6 +35,11 @@ public class ChatBotTemplate {
      */
     private String systemMessage;
     
+    /**
+     * 是否启用回复缓存：0-否，1-是（还需API配置开启）
+     */
+    private Integer responseCacheEnabled;
+    
     /**
      * 创建时间
      */
@@ -0,0 +1,46 @@
+package com.qna.platform.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 合规检测补检队列实体
+ *
+ * @author QnA Platform
+ */
+@Data
+@TableName("compliance_retry")
+public class ComplianceRetry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 消息ID
+     */
+    @TableId(type = IdType.INPUT)
+    private Long messageId;
+
+    /**
+     * 已重试次数
+     */
+    private Integer attempts;
+
+    /**
+     * 下次重试时间
+     */
+    private LocalDateTime nextRetryTime;
+
+    /**
+     * 最近一次失败原因
+     */
+    private String lastError;
+
+    /**
+     * 加入时间
+     */
+    private LocalDateTime createdTime;
+}
@@ -0,0 +1,36 @@
+package com.qna.platform.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 合规扫描进度实体
+ *
+ * @author QnA Platform
+ */
+@Data
+@TableName("compliance_scan_state")
+public class ComplianceScanState implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 扫描器名称
+     */
+    @TableId(type = IdType.INPUT)
+    private String scannerName;
+
+    /**
+     * 已扫描到的消息ID
+     */
+    private Long watermark;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updatedTime;
+}
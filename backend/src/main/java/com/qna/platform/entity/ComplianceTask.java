@@ -32,7 +32,7 @@ public class ComplianceTask implements Serializable {
     private String taskName;
 
     /**
-     * 任务类型：LOG-日志检测，FILE-文件上传检测
+     * 任务类型：LOG-日志检测，FILE-文件上传检测，SAMPLE-日志分层抽样检测
      */
     private String taskType;
 
@@ -41,6 +41,11 @@ public class ComplianceTask implements Serializable {
      */
     private String filePath;
 
+    /**
+     * 日志检测的筛选条件（JSON格式）
+     */
+    private String filterParams;
+
     /**
      * 总记录数
      */
@@ -62,7 +67,7 @@ public class ComplianceTask implements Serializable {
     private Integer failCount;
 
     /**
-     * 任务状态：PENDING-待处理，PROCESSING-处理中，COMPLETED-已完成，FAILED-失败
+     * 任务状态：PENDING-待处理，PROCESSING-处理中，COMPLETED-已完成，FAILED-失败，CANCELLED-已取消
      */
     private String taskStatus;
 
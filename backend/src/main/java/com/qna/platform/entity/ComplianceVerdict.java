@@ -0,0 +1,46 @@
+package com.qna.platform.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 合规检测结果缓存实体
+ *
+ * @author QnA Platform
+ */
+@Data
+@TableName("compliance_verdict_cache")
+public class ComplianceVerdict implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 规则版本+检测模式+规范化内容的SHA-256
+     */
+    @TableId(type = IdType.INPUT)
+    private String contentHash;
+
+    /**
+     * 检测结果（JSON格式）
+     */
+    private String verdict;
+
+    /**
+     * 规则版本
+     */
+    private String ruleVersion;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createdTime;
+
+    /**
+     * 过期时间
+     */
+    private LocalDateTime expireTime;
+}
@@ -73,7 +73,9 @@ public class SysUser implements Serializable {
 
     /**
      * API已使用次数
+     * 由ApiQuotaLedger通过增量UPDATE维护，updateById不写入该字段，避免覆盖未刷新的计数
      */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
     private Integer apiUsed;
 
     /**
@@ -0,0 +1,14 @@
+package com.qna.platform.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.qna.platform.entity.ApiConfigKey;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * API密钥池Mapper
+ *
+ * @author QnA Platform
+ */
+@Mapper
+public interface ApiConfigKeyMapper extends BaseMapper<ApiConfigKey> {
+}
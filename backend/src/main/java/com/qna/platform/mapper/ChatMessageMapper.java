@@ -3,6 +3,10 @@ package com.qna.platform.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.qna.platform.entity.ChatMessage;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
 
 /**
  * 对话消息Mapper
@@ -11,4 +15,20 @@ import org.apache.ibatis.annotations.Mapper;
  */
 @Mapper
 public interface ChatMessageMapper extends BaseMapper<ChatMessage> {
+
+    /**
+     * 批量更新消息的合规状态和检测结果（单条UPDATE语句）
+     */
+    @Update("<script>" +
+            "UPDATE chat_message SET " +
+            "compliance_status = CASE id " +
+            "<foreach collection='messages' item='m'>WHEN #{m.id} THEN #{m.complianceStatus} </foreach>" +
+            "END, " +
+            "compliance_result = CASE id " +
+            "<foreach collection='messages' item='m'>WHEN #{m.id} THEN #{m.complianceResult} </foreach>" +
+            "END " +
+            "WHERE id IN " +
+            "<foreach collection='messages' item='m' open='(' separator=',' close=')'>#{m.id}</foreach>" +
+            "</script>")
+    int batchUpdateCompliance(@Param("messages") List<ChatMessage> messages);
 }
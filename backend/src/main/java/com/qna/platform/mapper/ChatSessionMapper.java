@@ -3,6 +3,10 @@ package com.qna.platform.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.qna.platform.entity.ChatSession;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
 
 /**
  * 对话会话Mapper
@@ -11,4 +15,12 @@ import org.apache.ibatis.annotations.Mapper;
  */
 @Mapper
 public interface ChatSessionMapper extends BaseMapper<ChatSession> {
+
+    /**
+     * 原子增加会话消息数并更新时间（不回写会话的其他字段）
+     */
+    @Update("UPDATE chat_session SET message_count = IFNULL(message_count, 0) + #{delta}, " +
+            "updated_time = #{updatedTime} WHERE id = #{id}")
+    int incrementMessageCount(@Param("id") Long id, @Param("delta") int delta,
+                              @Param("updatedTime") LocalDateTime updatedTime);
 }
@@ -0,0 +1,49 @@
+package com.qna.platform.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.qna.platform.entity.ComplianceRetry;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.Collection;
+
+/**
+ * 合规检测补检队列Mapper
+ *
+ * @author QnA Platform
+ */
+@Mapper
+public interface ComplianceRetryMapper extends BaseMapper<ComplianceRetry> {
+
+    /**
+     * 批量加入补检队列，已在队列中的消息保持原有的重试计划（单条INSERT语句）
+     */
+    @Insert("<script>" +
+            "INSERT IGNORE INTO compliance_retry (message_id, attempts, next_retry_time, last_error) VALUES " +
+            "<foreach collection='messageIds' item='id' separator=','>" +
+            "(#{id}, 0, DATE_ADD(NOW(), INTERVAL #{delaySeconds} SECOND), #{reason})" +
+            "</foreach>" +
+            "</script>")
+    int batchEnqueue(@Param("messageIds") Collection<Long> messageIds,
+                     @Param("delaySeconds") long delaySeconds,
+                     @Param("reason") String reason);
+
+    /**
+     * 记录一次重试失败：下次重试时间按 baseDelay * 2^attempts 秒推迟（不超过maxDelay），重试次数加一
+     * （MySQL按顺序执行赋值，计算延迟时使用的是加一之前的次数）
+     */
+    @Update("<script>" +
+            "UPDATE compliance_retry SET " +
+            "next_retry_time = DATE_ADD(NOW(), INTERVAL LEAST(#{maxDelay}, #{baseDelay} * POW(2, attempts)) SECOND), " +
+            "attempts = attempts + 1, " +
+            "last_error = #{reason} " +
+            "WHERE message_id IN " +
+            "<foreach collection='messageIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    int batchReschedule(@Param("messageIds") Collection<Long> messageIds,
+                        @Param("baseDelay") long baseDelay,
+                        @Param("maxDelay") long maxDelay,
+                        @Param("reason") String reason);
+}
@@ -0,0 +1,14 @@
+package com.qna.platform.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.qna.platform.entity.ComplianceScanState;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * 合规扫描进度Mapper
+ *
+ * @author QnA Platform
+ */
+@Mapper
+public interface ComplianceScanStateMapper extends BaseMapper<ComplianceScanState> {
+}
@@ -0,0 +1,30 @@
+package com.qna.platform.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.qna.platform.entity.ComplianceVerdict;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 合规检测结果缓存Mapper
+ *
+ * @author QnA Platform
+ */
+@Mapper
+public interface ComplianceVerdictMapper extends BaseMapper<ComplianceVerdict> {
+
+    /**
+     * 批量写入检测结果，已存在的哈希覆盖结果并刷新过期时间（单条INSERT语句）
+     */
+    @Insert("<script>" +
+            "INSERT INTO compliance_verdict_cache (content_hash, verdict, rule_version, expire_time) VALUES " +
+            "<foreach collection='verdicts' item='v' separator=','>" +
+            "(#{v.contentHash}, #{v.verdict}, #{v.ruleVersion}, #{v.expireTime})" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE verdict = VALUES(verdict), expire_time = VALUES(expire_time)" +
+            "</script>")
+    int batchUpsert(@Param("verdicts") List<ComplianceVerdict> verdicts);
+}
@@ -3,7 +3,12 @@ package com.qna.platform.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.qna.platform.entity.SysUser;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.Map;
 
 /**
  * 系统用户Mapper
@@ -15,4 +20,29 @@ public interface SysUserMapper extends BaseMapper<SysUser> {
     @Select("SELECT * FROM sys_user WHERE username = #{username}")
     SysUser selectByUsername(String username);
 
+    /**
+     * 批量累加用户API使用次数（key-用户ID，value-增量）
+     */
+    @Update("<script>" +
+            "UPDATE sys_user SET api_used = IFNULL(api_used, 0) + CASE id " +
+            "<foreach collection='deltas' index='userId' item='delta'>WHEN #{userId} THEN #{delta} </foreach>" +
+            "END " +
+            "WHERE id IN " +
+            "<foreach collection='deltas' index='userId' open='(' separator=',' close=')'>#{userId}</foreach>" +
+            "</script>")
+    int batchIncrementApiUsed(@Param("deltas") Map<Long, Integer> deltas);
+
+    /**
+     * 重置所有用户的API使用次数
+     */
+    @Update("UPDATE sys_user SET api_used = 0, quota_reset_time = #{nextResetTime}")
+    int resetAllApiUsed(@Param("nextResetTime") LocalDateTime nextResetTime);
+
+    /**
+     * 重置已过重置时间的用户的API使用次数
+     */
+    @Update("UPDATE sys_user SET api_used = 0, quota_reset_time = #{nextResetTime} " +
+            "WHERE quota_reset_time IS NULL OR quota_reset_time <= #{now}")
+    int resetExpiredApiUsed(@Param("now") LocalDateTime now,
+                            @Param("nextResetTime") LocalDateTime nextResetTime);
 }
@@ -2,8 +2,10 @@ package com.qna.platform.service;
 
 import com.qna.platform.common.PageResult;
 import com.qna.platform.entity.ApiConfig;
+import com.qna.platform.entity.ApiConfigKey;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * API配置服务接口
@@ -46,4 +48,51 @@ public interface ApiConfigService {
      * 测试API配置
      */
     boolean testConfig(Long id);
+
+    /**
+     * 并发测试所有启用的API配置
+     *
+     * @return 各配置ID的测试结果（success、message）
+     */
+    Map<Long, Object> testEnabledConfigs();
+
+    /**
+     * 获取回复缓存统计（命中、未命中、合并请求数等）
+     */
+    Map<String, Object> getResponseCacheStats();
+
+    /**
+     * 获取各对冲组的统计（对冲发出次数、胜出次数、p95耗时等）
+     */
+    Map<String, Object> getHedgeStats();
+
+    /**
+     * 获取各API配置的准入控制状态（当前并发上限、排队数、拒绝和429次数等）
+     */
+    Map<Long, Object> getAdmissionStats();
+
+    /**
+     * 获取各API配置的熔断器状态
+     */
+    Map<Long, Object> getCircuitBreakerStats();
+
+    /**
+     * 获取API配置密钥池中附加的密钥（密钥已脱敏）
+     */
+    List<ApiConfigKey> getConfigKeys(Long apiConfigId);
+
+    /**
+     * 向API配置的密钥池添加密钥
+     */
+    boolean addConfigKey(ApiConfigKey configKey);
+
+    /**
+     * 从密钥池删除密钥
+     */
+    boolean deleteConfigKey(Long keyId);
+
+    /**
+     * 获取各API配置密钥池中每个密钥的使用统计（进行中请求、429/401次数、移出次数等）
+     */
+    Map<Long, Object> getKeyPoolStats();
 }
@@ -1,6 +1,8 @@
 package com.qna.platform.service;
 
 import com.qna.platform.dto.ChatRequestDTO;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
 import java.util.Map;
 
 /**
@@ -19,6 +21,16 @@ public interface ChatService {
      */
     Map<String, Object> sendMessage(Long userId, ChatRequestDTO requestDTO);
 
+    /**
+     * 以流式方式发送消息，通过SSE逐段推送AI回复
+     * 事件：delta-增量内容，done-完成（附带会话ID、消息ID等），error-调用失败
+     *
+     * @param userId 用户ID
+     * @param requestDTO 请求参数
+     * @return SSE发射器
+     */
+    SseEmitter streamMessage(Long userId, ChatRequestDTO requestDTO);
+
     /**
      * 获取会话历史
      *
@@ -4,8 +4,12 @@ import com.qna.platform.common.PageResult;
 import com.qna.platform.dto.BatchComplianceResult;
 import com.qna.platform.dto.ComplianceCheckDTO;
 import com.qna.platform.entity.ComplianceTask;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * 合规检测服务接口
  *
@@ -43,12 +47,23 @@ public interface ComplianceService {
 
     /**
      * 手动触发检测（调用Python服务）
+     * 任务在后台执行，调用立即返回，进度通过任务详情查询
      *
      * @param taskId 任务ID
-     * @return 是否成功
+     * @return 是否已提交
      */
     boolean triggerCheck(Long taskId);
 
+    /**
+     * 取消处理中的检测任务
+     * 已发出的检测请求完成并写回后停止，任务状态变为CANCELLED
+     *
+     * @param taskId 任务ID
+     * @param userId 用户ID
+     * @return 是否成功
+     */
+    boolean cancelTask(Long taskId, Long userId);
+
     /**
      * 检查单条消息的合规性
      *
@@ -59,11 +74,46 @@ public interface ComplianceService {
     
     /**
      * 从文件批量检测合规性
-     * 支持JSON和CSV格式的导出文件
+     * 支持JSON、NDJSON和CSV格式的导出文件，返回的检测项数量有上限
      *
      * @param file 上传的文件
      * @param userId 用户ID
      * @return 批量检测结果
      */
     BatchComplianceResult batchCheckFromFile(MultipartFile file, Long userId);
+
+    /**
+     * 从文件批量检测合规性，检测结果以NDJSON逐行写入响应
+     * 每个检测项一行，最后一行为汇总（type=summary）或错误（type=error）
+     *
+     * @param file 上传的文件（JSON数组、NDJSON或CSV）
+     * @param userId 用户ID
+     * @param response HTTP响应
+     */
+    void batchCheckFromFileToResponse(MultipartFile file, Long userId, HttpServletResponse response);
+
+    /**
+     * 获取合规检测结果缓存统计（命中率、避免的Python调用次数等）
+     */
+    Map<String, Object> getVerdictCacheStats();
+
+    /**
+     * 获取敏感词预筛统计（本地判定条数、交给Python服务的条数等）
+     */
+    Map<String, Object> getPrefilterStats();
+
+    /**
+     * 获取后台合规扫描状态（watermark、已检测条数、暂停原因等）
+     */
+    Map<String, Object> getScannerStats();
+
+    /**
+     * 获取各合规检测服务实例的状态（是否移出轮换、进行中请求数、错误数、延迟等）
+     */
+    List<Map<String, Object>> getInstanceStats();
+
+    /**
+     * 获取合规补检队列统计（排队条数、到期条数、补检成功条数等）
+     */
+    Map<String, Object> getRetryQueueStats();
 }
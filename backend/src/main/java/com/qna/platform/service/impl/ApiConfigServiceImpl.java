@@ -4,31 +4,91 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.qna.platform.common.PageResult;
 import com.qna.platform.entity.ApiConfig;
+import com.qna.platform.entity.ApiConfigKey;
+import com.qna.platform.mapper.ApiConfigKeyMapper;
 import com.qna.platform.mapper.ApiConfigMapper;
 import com.qna.platform.service.ApiConfigService;
 import com.qna.platform.util.AiApiClient;
+import com.qna.platform.util.AiHedgeStats;
+import com.qna.platform.util.AiHttpClientRegistry;
+import com.qna.platform.util.AiResponseCache;
+import com.qna.platform.util.ApiCircuitBreaker;
+import com.qna.platform.util.ApiKeyPool;
+import com.qna.platform.util.ApiRateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
 
 /**
  * API配置服务实现
  *
  * @author QnA Platform
  */
-
+@Slf4j
 @Service
 public class ApiConfigServiceImpl implements ApiConfigService {
 
+    /**
+     * 批量测试时单个配置的截止时间
+     */
+    private static final Duration TEST_DEADLINE = Duration.ofSeconds(60);
+
     private final ApiConfigMapper apiConfigMapper;
+    private final ApiConfigKeyMapper configKeyMapper;
     private final AiApiClient aiApiClient;
+    private final AiHttpClientRegistry clientRegistry;
+    private final AiResponseCache responseCache;
+    private final AiHedgeStats hedgeStats;
+    private final ApiRateLimiter rateLimiter;
+    private final ApiCircuitBreaker circuitBreaker;
+    private final ApiKeyPool keyPool;
 
-    public ApiConfigServiceImpl(ApiConfigMapper apiConfigMapper, AiApiClient aiApiClient) {
+    public ApiConfigServiceImpl(ApiConfigMapper apiConfigMapper,
+                                ApiConfigKeyMapper configKeyMapper,
+                                AiApiClient aiApiClient,
+                                AiHttpClientRegistry clientRegistry,
+                                AiResponseCache responseCache,
+                                AiHedgeStats hedgeStats,
+                                ApiRateLimiter rateLimiter,
+                                ApiCircuitBreaker circuitBreaker,
+                                ApiKeyPool keyPool) {
         this.apiConfigMapper = apiConfigMapper;
+        this.configKeyMapper = configKeyMapper;
         this.aiApiClient = aiApiClient;
+        this.clientRegistry = clientRegistry;
+        this.responseCache = responseCache;
+        this.hedgeStats = hedgeStats;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.keyPool = keyPool;
+    }
+
+    /**
+     * 启动完成后预热所有启用的API配置的连接
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpEnabledConfigs() {
+        try {
+            List<ApiConfig> configs = getEnabledConfigs();
+            log.info("预热API连接，启用的配置数: {}", configs.size());
+            configs.forEach(clientRegistry::warmUp);
+        } catch (Exception e) {
+            log.warn("预热API连接失败: {}", e.getMessage());
+        }
     }
 
     @Override
@@ -46,12 +106,26 @@ public class ApiConfigServiceImpl implements ApiConfigService {
         if (existingConfig == null) {
             throw new RuntimeException("API配置不存在");
         }
-        return apiConfigMapper.updateById(apiConfig) > 0;
+        boolean updated = apiConfigMapper.updateById(apiConfig) > 0;
+        if (updated) {
+            // 配置变更提交后重建客户端、清除回复缓存，并对仍启用的配置重新预热
+            Long id = apiConfig.getId();
+            afterCommit(() -> {
+                invalidateRuntimeState(id);
+                ApiConfig latest = apiConfigMapper.selectById(id);
+                if (latest != null && latest.getStatus() != null && latest.getStatus() == 1) {
+                    clientRegistry.warmUp(latest);
+                }
+            });
+        }
+        return updated;
     }
 
     @Override
     @Transactional(rollbackFor = Exception.class)
     public boolean deleteConfig(Long id, Long userId) {
+        afterCommit(() -> invalidateRuntimeState(id));
+        configKeyMapper.delete(new LambdaQueryWrapper<ApiConfigKey>().eq(ApiConfigKey::getApiConfigId, id));
         return apiConfigMapper.deleteById(id) > 0;
     }
 
@@ -111,4 +185,136 @@ public class ApiConfigServiceImpl implements ApiConfigService {
             throw new RuntimeException("API测试失败: " + e.getMessage());
         }
     }
+
+    @Override
+    public Map<Long, Object> testEnabledConfigs() {
+        List<ApiConfig> configs = getEnabledConfigs();
+        List<Map<String, String>> messages = new ArrayList<>();
+        messages.add(Map.of("role", "user", "content", "Hi, this is a test message."));
+
+        // 并发测试所有配置，等待期间不为每个请求占用线程
+        Map<Long, CompletableFuture<String>> futures = new LinkedHashMap<>();
+        for (ApiConfig config : configs) {
+            futures.put(config.getId(), aiApiClient.callAiApiAsync(config, messages, TEST_DEADLINE));
+        }
+
+        Map<Long, Object> results = new LinkedHashMap<>();
+        futures.forEach((id, future) -> {
+            Map<String, Object> item = new HashMap<>();
+            try {
+                String response = future.join();
+                item.put("success", response != null && !response.isEmpty());
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                item.put("success", false);
+                item.put("message", cause instanceof TimeoutException ? "测试超时" : cause.getMessage());
+            }
+            results.put(id, item);
+        });
+        return results;
+    }
+
+    @Override
+    public Map<String, Object> getResponseCacheStats() {
+        return responseCache.stats();
+    }
+
+    @Override
+    public Map<String, Object> getHedgeStats() {
+        return hedgeStats.stats();
+    }
+
+    @Override
+    public Map<Long, Object> getAdmissionStats() {
+        return rateLimiter.stats();
+    }
+
+    @Override
+    public Map<Long, Object> getCircuitBreakerStats() {
+        return circuitBreaker.stats();
+    }
+
+    @Override
+    public List<ApiConfigKey> getConfigKeys(Long apiConfigId) {
+        LambdaQueryWrapper<ApiConfigKey> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(ApiConfigKey::getApiConfigId, apiConfigId)
+                .orderByAsc(ApiConfigKey::getId);
+        List<ApiConfigKey> keys = configKeyMapper.selectList(wrapper);
+        keys.forEach(key -> key.setApiKey(maskKey(key.getApiKey())));
+        return keys;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean addConfigKey(ApiConfigKey configKey) {
+        if (apiConfigMapper.selectById(configKey.getApiConfigId()) == null) {
+            throw new RuntimeException("API配置不存在");
+        }
+        if (configKey.getApiKey() == null || configKey.getApiKey().isBlank()) {
+            throw new RuntimeException("API密钥不能为空");
+        }
+        configKey.setId(null);
+        if (configKey.getStatus() == null) {
+            configKey.setStatus(1);
+        }
+        boolean inserted = configKeyMapper.insert(configKey) > 0;
+        if (inserted) {
+            Long apiConfigId = configKey.getApiConfigId();
+            afterCommit(() -> keyPool.invalidate(apiConfigId));
+        }
+        return inserted;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean deleteConfigKey(Long keyId) {
+        ApiConfigKey existing = configKeyMapper.selectById(keyId);
+        if (existing == null) {
+            throw new RuntimeException("密钥不存在");
+        }
+        afterCommit(() -> keyPool.invalidate(existing.getApiConfigId()));
+        return configKeyMapper.deleteById(keyId) > 0;
+    }
+
+    @Override
+    public Map<Long, Object> getKeyPoolStats() {
+        return keyPool.stats();
+    }
+
+    /**
+     * 清除API配置的运行时状态：HTTP客户端、回复缓存、准入控制、熔断器和密钥池
+     */
+    private void invalidateRuntimeState(Long id) {
+        clientRegistry.invalidate(id);
+        responseCache.invalidate(id);
+        rateLimiter.invalidate(id);
+        circuitBreaker.reset(id);
+        keyPool.invalidate(id);
+    }
+
+    /**
+     * 事务提交后执行：提交前清除的状态可能被并发请求按未提交前的数据重新加载，且不会再失效
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 密钥脱敏：只保留前4位和后4位
+     */
+    private String maskKey(String apiKey) {
+        if (apiKey == null || apiKey.length() <= 8) {
+            return "********";
+        }
+        return apiKey.substring(0, 4) + "****" + apiKey.substring(apiKey.length() - 4);
+    }
 }
@@ -6,6 +6,7 @@ import com.qna.platform.entity.SysUser;
 import com.qna.platform.enums.UserRole;
 import com.qna.platform.mapper.SysUserMapper;
 import com.qna.platform.service.AuthService;
+import com.qna.platform.util.ApiQuotaLedger;
 import com.qna.platform.util.JwtUtil;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -25,11 +26,13 @@ public class AuthServiceImpl implements AuthService {
 
     private final SysUserMapper userMapper;
     private final JwtUtil jwtUtil;
+    private final ApiQuotaLedger quotaLedger;
     private final BCryptPasswordEncoder passwordEncoder;
 
-    public AuthServiceImpl(SysUserMapper userMapper, JwtUtil jwtUtil) {
+    public AuthServiceImpl(SysUserMapper userMapper, JwtUtil jwtUtil, ApiQuotaLedger quotaLedger) {
         this.userMapper = userMapper;
         this.jwtUtil = jwtUtil;
+        this.quotaLedger = quotaLedger;
         this.passwordEncoder = new BCryptPasswordEncoder();
     }
 
@@ -66,7 +69,7 @@ public class AuthServiceImpl implements AuthService {
         result.put("role", user.getRole());
         result.put("avatar", user.getAvatar());
         result.put("apiQuota", user.getApiQuota());
-        result.put("apiUsed", user.getApiUsed());
+        result.put("apiUsed", quotaLedger.getUsed(user));
         result.put("hasCompliancePermission", user.getHasCompliancePermission());
 
         return result;
@@ -5,6 +5,7 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.qna.platform.entity.ChatBotTemplate;
 import com.qna.platform.mapper.ChatBotTemplateMapper;
 import com.qna.platform.service.ChatBotTemplateService;
+import com.qna.platform.util.ChatSessionContextCache;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -19,9 +20,12 @@ import java.util.List;
 public class ChatBotTemplateServiceImpl extends ServiceImpl<ChatBotTemplateMapper, ChatBotTemplate> implements ChatBotTemplateService {
 
     private final ChatBotTemplateMapper chatBotTemplateMapper;
+    private final ChatSessionContextCache contextCache;
 
-    public ChatBotTemplateServiceImpl(ChatBotTemplateMapper chatBotTemplateMapper) {
+    public ChatBotTemplateServiceImpl(ChatBotTemplateMapper chatBotTemplateMapper,
+                                      ChatSessionContextCache contextCache) {
         this.chatBotTemplateMapper = chatBotTemplateMapper;
+        this.contextCache = contextCache;
     }
 
     @Override
@@ -53,10 +57,12 @@ public class ChatBotTemplateServiceImpl extends ServiceImpl<ChatBotTemplateMappe
     @Override
     public void updateTemplate(ChatBotTemplate template) {
         chatBotTemplateMapper.updateById(template);
+        contextCache.invalidateTemplate(template.getId());
     }
 
     @Override
     public void deleteTemplate(Long id) {
         chatBotTemplateMapper.deleteById(id);
+        contextCache.invalidateTemplate(id);
     }
 }
\ No newline at end of file
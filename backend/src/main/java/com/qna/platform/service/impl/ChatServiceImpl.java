@@ -8,64 +8,251 @@ import com.qna.platform.enums.ComplianceStatus;
 import com.qna.platform.mapper.*;
 import com.qna.platform.service.ChatService;
 import com.qna.platform.util.AiApiClient;
-import org.springframework.scheduling.annotation.Async;
+import com.qna.platform.util.AiResponseCache;
+import com.qna.platform.util.ApiQuotaLedger;
+import com.qna.platform.util.ChatComplianceQueue;
+import com.qna.platform.util.ChatSessionContextCache;
+import com.qna.platform.util.TokenEstimator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 /**
  * 对话服务实现
  *
  * @author QnA Platform
  */
+@Slf4j
 @Service
 public class ChatServiceImpl implements ChatService {
 
+    /**
+     * 流式对话的SSE超时时间（毫秒）
+     */
+    private static final long STREAM_TIMEOUT_MS = 10 * 60 * 1000L;
+
+    /**
+     * 上下文预算的安全余量（token），抵消估算误差
+     */
+    private static final int CONTEXT_SAFETY_MARGIN_TOKENS = 256;
+
+    /**
+     * 本轮用户消息至少保留的token数
+     */
+    private static final int MIN_CURRENT_MESSAGE_TOKENS = 256;
+
+    /**
+     * 剩余预算不少于该值时才截断最早的一条历史消息，否则直接丢弃
+     */
+    private static final int MIN_TRUNCATED_TOKENS = 128;
+
     private final ChatSessionMapper sessionMapper;
     private final ChatMessageMapper messageMapper;
     private final ApiConfigMapper apiConfigMapper;
     private final ChatBotTemplateMapper botTemplateMapper;
-    private final SysUserMapper userMapper;
     private final AiApiClient aiApiClient;
-    private final com.qna.platform.util.ComplianceClient complianceClient;
+    private final AiResponseCache responseCache;
+    private final ChatComplianceQueue complianceQueue;
+    private final ApiQuotaLedger quotaLedger;
+    private final ChatSessionContextCache contextCache;
+    private final TokenEstimator tokenEstimator;
+    private final ThreadPoolTaskExecutor chatStreamExecutor;
+    private final TransactionTemplate transactionTemplate;
 
     public ChatServiceImpl(ChatSessionMapper sessionMapper,
                           ChatMessageMapper messageMapper,
                           ApiConfigMapper apiConfigMapper,
-                          SysUserMapper userMapper,
                             ChatBotTemplateMapper botTemplateMapper,
                           AiApiClient aiApiClient,
-                          com.qna.platform.util.ComplianceClient complianceClient) {
+                          AiResponseCache responseCache,
+                          ChatComplianceQueue complianceQueue,
+                          ApiQuotaLedger quotaLedger,
+                          ChatSessionContextCache contextCache,
+                          TokenEstimator tokenEstimator,
+                          @Qualifier("chatStreamExecutor") ThreadPoolTaskExecutor chatStreamExecutor,
+                          PlatformTransactionManager transactionManager) {
         this.sessionMapper = sessionMapper;
         this.messageMapper = messageMapper;
         this.apiConfigMapper = apiConfigMapper;
-        this.userMapper = userMapper;
         this.botTemplateMapper = botTemplateMapper;
         this.aiApiClient = aiApiClient;
-        this.complianceClient = complianceClient;
+        this.responseCache = responseCache;
+        this.complianceQueue = complianceQueue;
+        this.quotaLedger = quotaLedger;
+        this.contextCache = contextCache;
+        this.tokenEstimator = tokenEstimator;
+        this.chatStreamExecutor = chatStreamExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
+    /**
+     * 对话分三个阶段执行，大模型调用期间不持有数据库连接：
+     * 1. 占用配额（内存账本），事务内获取或创建会话、保存用户消息
+     * 2. 无事务：调用大模型
+     * 3. 事务内：保存AI回复、更新会话消息数；调用失败时归还配额
+     */
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public Map<String, Object> sendMessage(Long userId, ChatRequestDTO requestDTO) {
-        // 检查用户配额
-        SysUser user = userMapper.selectById(userId);
-        if (user == null) {
-            throw new RuntimeException("用户不存在");
+        ChatContext context = beginChat(userId, requestDTO);
+
+        // 调用AI API
+        long startTime = System.currentTimeMillis();
+        String aiResponse;
+        ChatMessage assistantMessage;
+
+        try {
+            aiResponse = context.cacheKey != null
+                    ? responseCache.getOrLoad(context.apiConfig, context.cacheKey, () -> callAiApi(context))
+                    : callAiApi(context);
+            long responseTime = System.currentTimeMillis() - startTime;
+
+            // 保存AI回复
+            assistantMessage = transactionTemplate.execute(
+                    status -> saveAssistantReply(context, aiResponse, responseTime));
+
+        } catch (Exception e) {
+            // 记录错误
+            quotaLedger.release(userId);
+            saveAssistantError(context, e);
+
+            throw new RuntimeException("调用AI服务失败: " + e.getMessage());
         }
 
-        // 检查配额是否需要重置
-        if (user.getQuotaResetTime() != null && LocalDateTime.now().isAfter(user.getQuotaResetTime())) {
-            user.setApiUsed(0);
-            user.setQuotaResetTime(LocalDateTime.now().plusDays(1));
-            userMapper.updateById(user);
+        // 返回结果
+        return buildResult(context, assistantMessage);
+    }
+
+    @Override
+    public SseEmitter streamMessage(Long userId, ChatRequestDTO requestDTO) {
+        ChatContext context = beginChat(userId, requestDTO);
+
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        try {
+            // 在独立线程中读取大模型的流式响应，请求线程立即返回
+            chatStreamExecutor.execute(() -> relayStream(context, emitter));
+        } catch (RejectedExecutionException e) {
+            quotaLedger.release(userId);
+            saveAssistantError(context, e);
+            throw new RuntimeException("当前对话请求过多，请稍后重试");
         }
 
-        if (user.getApiUsed() >= user.getApiQuota()) {
+        return emitter;
+    }
+
+    /**
+     * 转发流式响应：逐段推送增量内容，结束后保存AI回复并推送done事件
+     */
+    private void relayStream(ChatContext context, SseEmitter emitter) {
+        long startTime = System.currentTimeMillis();
+        try {
+            String content = loadStream(context, emitter);
+            long responseTime = System.currentTimeMillis() - startTime;
+
+            ChatMessage assistantMessage = transactionTemplate.execute(
+                    status -> saveAssistantReply(context, content, responseTime));
+            emitter.send(SseEmitter.event().name("done").data(buildResult(context, assistantMessage)));
+            emitter.complete();
+
+        } catch (Exception e) {
+            log.error("流式调用AI服务失败: sessionId={}, error={}", context.session.getId(), e.getMessage());
+            quotaLedger.release(context.userId);
+            saveAssistantError(context, e);
+            try {
+                emitter.send(SseEmitter.event().name("error")
+                        .data(Map.of("message", "调用AI服务失败: " + e.getMessage())));
+                emitter.complete();
+            } catch (Exception sendError) {
+                // 客户端已断开，无法再推送错误
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    /**
+     * 获取流式回复：开启回复缓存时与相同提示词的请求共享一次上游调用（single-flight），
+     * 发起调用的请求逐段推送，命中缓存或等待其他请求结果的一次性推送完整内容
+     */
+    private String loadStream(ChatContext context, SseEmitter emitter) throws IOException {
+        if (context.cacheKey == null) {
+            return streamAiApi(context, emitter);
+        }
+        boolean[] streamed = {false};
+        String aiResponse;
+        try {
+            aiResponse = responseCache.getOrLoad(context.apiConfig, context.cacheKey, () -> {
+                streamed[0] = true;
+                return streamAiApi(context, emitter);
+            });
+        } catch (RuntimeException e) {
+            if (streamed[0]) {
+                throw e;
+            }
+            // 等待的相同请求失败（如其客户端已断开），自行调用上游
+            log.warn("共享的流式请求失败，重新调用: sessionId={}, error={}", context.session.getId(), e.getMessage());
+            return streamAiApi(context, emitter);
+        }
+        if (!streamed[0]) {
+            emitter.send(SseEmitter.event().name("delta").data(Map.of("content", aiResponse)));
+        }
+        return aiResponse;
+    }
+
+    /**
+     * 调用大模型流式接口，逐段推送增量内容；API配置属于对冲组时在组内发送对冲请求
+     */
+    private String streamAiApi(ChatContext context, SseEmitter emitter) {
+        Consumer<String> onDelta = delta -> {
+            try {
+                emitter.send(SseEmitter.event().name("delta").data(Map.of("content", delta)));
+            } catch (IOException e) {
+                // 客户端已断开，中止读取以关闭上游连接
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            ApiConfig apiConfig = context.apiConfig;
+            if (StrUtil.isBlank(apiConfig.getHedgeGroup())) {
+                return aiApiClient.streamAiApi(apiConfig, context.messages, onDelta);
+            }
+            return aiApiClient.streamAiApiHedged(apiConfig.getHedgeGroup(),
+                    loadHedgeMembers(apiConfig), context.messages, onDelta);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 占用配额并执行前置事务，前置处理失败时归还配额
+     */
+    private ChatContext beginChat(Long userId, ChatRequestDTO requestDTO) {
+        // 检查用户配额（内存账本原子占用，每日重置由定时任务完成）
+        if (!quotaLedger.tryAcquire(userId)) {
             throw new RuntimeException("API调用次数已达上限");
         }
+        try {
+            return transactionTemplate.execute(status -> prepareChat(userId, requestDTO));
+        } catch (RuntimeException e) {
+            quotaLedger.release(userId);
+            throw e;
+        }
+    }
+
+    /**
+     * 对话前置处理：获取或创建会话、保存用户消息并构建发送给大模型的消息列表
+     */
+    private ChatContext prepareChat(Long userId, ChatRequestDTO requestDTO) {
 
         // 获取API配置
         ApiConfig apiConfig = apiConfigMapper.selectById(requestDTO.getApiConfigId());
@@ -75,6 +262,7 @@ public class ChatServiceImpl implements ChatService {
 
         // 获取或创建会话
         ChatSession session;
+        ChatSessionContextCache.SessionContext sessionContext;
         if (requestDTO.getSessionId() == null) {
             // 创建新会话
             session = new ChatSession();
@@ -88,22 +276,32 @@ public class ChatServiceImpl implements ChatService {
 
             // 设置机器人模板和系统消息
             session.setBotTemplateId(requestDTO.getBotTemplateId());
+            ChatBotTemplate template = findTemplate(session);
             if (StrUtil.isNotBlank(requestDTO.getSystemMessage())) {
                 session.setSystemMessage(requestDTO.getSystemMessage());
-            } else if (requestDTO.getBotTemplateId() != null) {
+            } else if (template != null) {
                 // 从模板中获取系统消息
-                ChatBotTemplate template = botTemplateMapper.selectById(requestDTO.getBotTemplateId());
-                if (template != null) {
-                    session.setSystemMessage(template.getSystemMessage());
-                }
+                session.setSystemMessage(template.getSystemMessage());
             }
 
             sessionMapper.insert(session);
+            sessionContext = contextCache.put(session, session.getSystemMessage(),
+                    isResponseCacheEnabled(template), Collections.emptyList());
         } else {
-            session = sessionMapper.selectById(requestDTO.getSessionId());
-            if (session == null || !session.getUserId().equals(userId)) {
+            // 热会话直接使用缓存的上下文，无需查询数据库
+            sessionContext = contextCache.get(requestDTO.getSessionId());
+            if (sessionContext == null) {
+                session = sessionMapper.selectById(requestDTO.getSessionId());
+                if (session == null || !session.getUserId().equals(userId)) {
+                    throw new RuntimeException("会话不存在或无权访问");
+                }
+                ChatBotTemplate template = findTemplate(session);
+                sessionContext = contextCache.put(session, resolveSystemMessage(session, template),
+                        isResponseCacheEnabled(template), loadRecentMessages(session.getId()));
+            } else if (!sessionContext.getSession().getUserId().equals(userId)) {
                 throw new RuntimeException("会话不存在或无权访问");
             }
+            session = sessionContext.getSession();
         }
 
         // 保存用户消息（使用displayMessage如果提供了，否则使用完整message）
@@ -118,79 +316,117 @@ public class ChatServiceImpl implements ChatService {
                 : requestDTO.getMessage());
         userMessage.setComplianceStatus(ComplianceStatus.UNCHECKED.name());
         messageMapper.insert(userMessage);
+        contextCache.append(userMessage);
         
         // 对用户消息进行合规检测（异步）
         checkMessageCompliance(userMessage);
 
-        // 获取会话历史（最近10条）
-        List<Map<String, String>> messages = buildMessageHistory(session.getId());
-        // 添加系统消息（优先级：请求中自定义 > 会话级 > 模板级）
-        if (StrUtil.isNotBlank(requestDTO.getSystemMessage())) {
-            // 使用请求中指定的系统消息
-            messages.add(0, Map.of("role", "system", "content", requestDTO.getSystemMessage()));
-        } else if (StrUtil.isNotBlank(session.getSystemMessage())) {
-            // 使用会话级系统消息
-            messages.add(0, Map.of("role", "system", "content", session.getSystemMessage()));
-        } else if (session.getBotTemplateId() != null) {
-            // 从模板中获取系统消息
-            ChatBotTemplate template = botTemplateMapper.selectById(session.getBotTemplateId());
-            if (template != null && StrUtil.isNotBlank(template.getSystemMessage())) {
-                messages.add(0, Map.of("role", "system", "content", template.getSystemMessage()));
+        // 系统消息（优先级：请求中自定义 > 会话级 > 模板级，后两者已在缓存中解析）
+        String systemMessage = StrUtil.isNotBlank(requestDTO.getSystemMessage())
+                ? requestDTO.getSystemMessage()
+                : sessionContext.getSystemMessage();
+        // 在token预算内构建消息列表
+        List<Map<String, String>> messages = buildMessageHistory(
+                sessionContext, apiConfig, systemMessage, requestDTO.getMessage(), userMessage.getId());
+
+        // 开启回复缓存时计算缓存key
+        String cacheKey = Integer.valueOf(1).equals(apiConfig.getResponseCacheEnabled())
+                && sessionContext.isResponseCacheEnabled()
+                ? responseCache.key(apiConfig, messages)
+                : null;
+
+        return new ChatContext(userId, requestDTO.getApiConfigId(), apiConfig, session, messages, cacheKey);
+    }
+
+    /**
+     * 回复缓存需要API配置和会话使用的机器人模板同时开启，模板的开关在构建会话上下文时读取并随上下文缓存
+     */
+    private static boolean isResponseCacheEnabled(ChatBotTemplate template) {
+        return template != null && Integer.valueOf(1).equals(template.getResponseCacheEnabled());
+    }
+
+    /**
+     * 调用大模型，API配置属于对冲组时在组内发送对冲请求
+     */
+    private String callAiApi(ChatContext context) {
+        try {
+            ApiConfig apiConfig = context.apiConfig;
+            if (StrUtil.isBlank(apiConfig.getHedgeGroup())) {
+                return aiApiClient.callAiApi(apiConfig, context.messages);
             }
+            return aiApiClient.callAiApiHedged(apiConfig.getHedgeGroup(),
+                    loadHedgeMembers(apiConfig), context.messages);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e.getMessage(), e);
         }
-        messages.add(Map.of("role", "user", "content", requestDTO.getMessage()));
+    }
 
-        // 调用AI API
-        long startTime = System.currentTimeMillis();
-        String aiResponse;
+    /**
+     * 加载对冲组内启用的API配置，当前配置排在第一位，其余按ID排序
+     */
+    private List<ApiConfig> loadHedgeMembers(ApiConfig primary) {
+        LambdaQueryWrapper<ApiConfig> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(ApiConfig::getHedgeGroup, primary.getHedgeGroup())
+                .eq(ApiConfig::getStatus, 1)
+                .ne(ApiConfig::getId, primary.getId())
+                .orderByAsc(ApiConfig::getId);
+
+        List<ApiConfig> members = new ArrayList<>();
+        members.add(primary);
+        members.addAll(apiConfigMapper.selectList(wrapper));
+        return members;
+    }
+
+    /**
+     * 保存AI回复并更新会话消息数
+     */
+    private ChatMessage saveAssistantReply(ChatContext context, String aiResponse, long responseTime) {
         ChatMessage assistantMessage = new ChatMessage();
+        assistantMessage.setSessionId(context.session.getId());
+        assistantMessage.setUserId(context.userId);
+        assistantMessage.setApiConfigId(context.apiConfigId);
+        assistantMessage.setRole("assistant");
+        assistantMessage.setContent(aiResponse);
+        assistantMessage.setResponseTime((int) responseTime);
+        assistantMessage.setComplianceStatus(ComplianceStatus.UNCHECKED.name());
+        messageMapper.insert(assistantMessage);
+        contextCache.append(assistantMessage);
         
-        try {
-            aiResponse = aiApiClient.callAiApi(apiConfig, messages);
-            long responseTime = System.currentTimeMillis() - startTime;
+        // 对AI回复进行合规检测（异步）
+        checkMessageCompliance(assistantMessage);
 
-            // 保存AI回复
-            assistantMessage.setSessionId(session.getId());
-            assistantMessage.setUserId(userId);
-            assistantMessage.setApiConfigId(requestDTO.getApiConfigId());
-            assistantMessage.setRole("assistant");
-            assistantMessage.setContent(aiResponse);
-            assistantMessage.setResponseTime((int) responseTime);
-            assistantMessage.setComplianceStatus(ComplianceStatus.UNCHECKED.name());
-            messageMapper.insert(assistantMessage);
-            
-            // 对AI回复进行合规检测（异步）
-            checkMessageCompliance(assistantMessage);
-
-            // 更新会话消息数量
-            session.setMessageCount(session.getMessageCount() + 2);
-            sessionMapper.updateById(session);
-
-            // 更新用户API使用次数
-            user.setApiUsed(user.getApiUsed() + 1);
-            userMapper.updateById(user);
+        // 更新会话消息数量（原子自增；缓存中的会话实体被并发请求共享，不能整行回写）
+        sessionMapper.incrementMessageCount(context.session.getId(), 2, LocalDateTime.now());
 
-        } catch (Exception e) {
-            // 记录错误
-            assistantMessage.setSessionId(session.getId());
-            assistantMessage.setUserId(userId);
-            assistantMessage.setApiConfigId(requestDTO.getApiConfigId());
-            assistantMessage.setRole("assistant");
-            assistantMessage.setContent("抱歉，调用AI服务时出现错误");
-            assistantMessage.setErrorMessage(e.getMessage());
-            messageMapper.insert(assistantMessage);
+        return assistantMessage;
+    }
 
-            throw new RuntimeException("调用AI服务失败: " + e.getMessage());
-        }
+    /**
+     * 记录AI调用失败的回复
+     */
+    private void saveAssistantError(ChatContext context, Exception e) {
+        ChatMessage assistantMessage = new ChatMessage();
+        assistantMessage.setSessionId(context.session.getId());
+        assistantMessage.setUserId(context.userId);
+        assistantMessage.setApiConfigId(context.apiConfigId);
+        assistantMessage.setRole("assistant");
+        assistantMessage.setContent("抱歉，调用AI服务时出现错误");
+        assistantMessage.setErrorMessage(e.getMessage());
+        messageMapper.insert(assistantMessage);
+        contextCache.append(assistantMessage);
+    }
 
-        // 返回结果
+    /**
+     * 构建返回给前端的结果
+     */
+    private Map<String, Object> buildResult(ChatContext context, ChatMessage assistantMessage) {
         Map<String, Object> result = new HashMap<>();
-        result.put("sessionId", session.getId());
+        result.put("sessionId", context.session.getId());
         result.put("messageId", assistantMessage.getId());
-        result.put("content", aiResponse);
+        result.put("content", assistantMessage.getContent());
         result.put("responseTime", assistantMessage.getResponseTime());
-        result.put("apiUsed", user.getApiUsed());
-        result.put("apiQuota", user.getApiQuota());
+        result.put("apiUsed", quotaLedger.getUsed(context.userId));
+        result.put("apiQuota", quotaLedger.getQuota(context.userId));
 
         return result;
     }
@@ -244,65 +480,138 @@ public class ChatServiceImpl implements ChatService {
         messageMapper.delete(wrapper);
 
         // 删除会话
-        return sessionMapper.deleteById(sessionId) > 0;
+        boolean deleted = sessionMapper.deleteById(sessionId) > 0;
+        contextCache.invalidate(sessionId);
+        return deleted;
     }
 
     /**
      * 构建消息历史（用于API调用）
+     * 预算 = 模型上下文窗口 - 回复预留(maxTokens) - 安全余量。
+     * 系统消息和本轮用户消息必须保留，历史消息从新到旧加入，
+     * 超出预算时截断或丢弃最早的消息
+     */
+    private List<Map<String, String>> buildMessageHistory(ChatSessionContextCache.SessionContext sessionContext,
+                                                          ApiConfig apiConfig,
+                                                          String systemMessage,
+                                                          String currentMessage,
+                                                          Long currentMessageId) {
+        String provider = apiConfig.getProvider();
+        int reserved = apiConfig.getMaxTokens() != null ? apiConfig.getMaxTokens() : 0;
+        int budget = tokenEstimator.contextWindow(apiConfig) - reserved - CONTEXT_SAFETY_MARGIN_TOKENS;
+
+        if (StrUtil.isNotBlank(systemMessage)) {
+            budget -= tokenEstimator.estimate(provider, systemMessage) + TokenEstimator.MESSAGE_OVERHEAD_TOKENS;
+        }
+
+        // 本轮用户消息超出预算时截断
+        int currentBudget = Math.max(budget, MIN_CURRENT_MESSAGE_TOKENS) - TokenEstimator.MESSAGE_OVERHEAD_TOKENS;
+        String current = tokenEstimator.truncate(provider, currentMessage, currentBudget, false);
+        budget -= tokenEstimator.estimate(provider, current) + TokenEstimator.MESSAGE_OVERHEAD_TOKENS;
+
+        // 历史消息从新到旧加入，直到预算用完
+        LinkedList<Map<String, String>> history = new LinkedList<>();
+        List<ChatMessage> recent = sessionContext.recentMessages();
+        for (int i = recent.size() - 1; i >= 0 && budget > 0; i--) {
+            ChatMessage msg = recent.get(i);
+            // 只包含成功的消息；本轮用户消息单独以完整内容发送
+            if (msg.getErrorMessage() != null || Objects.equals(msg.getId(), currentMessageId)) {
+                continue;
+            }
+            int tokens = tokenEstimator.estimate(provider, msg);
+            if (tokens <= budget) {
+                history.addFirst(Map.of("role", msg.getRole(), "content", msg.getContent()));
+                budget -= tokens;
+            } else {
+                if (budget >= MIN_TRUNCATED_TOKENS) {
+                    String truncated = tokenEstimator.truncate(provider, msg.getContent(),
+                            budget - TokenEstimator.MESSAGE_OVERHEAD_TOKENS, true);
+                    history.addFirst(Map.of("role", msg.getRole(), "content", truncated));
+                }
+                break;
+            }
+        }
+        // 历史必须以用户消息开头（部分提供商要求user/assistant交替）
+        while (!history.isEmpty() && !"user".equals(history.getFirst().get("role"))) {
+            history.removeFirst();
+        }
+
+        List<Map<String, String>> result = new ArrayList<>();
+        if (StrUtil.isNotBlank(systemMessage)) {
+            result.add(Map.of("role", "system", "content", systemMessage));
+        }
+        result.addAll(history);
+        result.add(Map.of("role", "user", "content", current));
+
+        return result;
+    }
+
+    /**
+     * 从数据库加载会话最近的消息（缓存未命中时使用）
      */
-    private List<Map<String, String>> buildMessageHistory(Long sessionId) {
+    private List<ChatMessage> loadRecentMessages(Long sessionId) {
         LambdaQueryWrapper<ChatMessage> wrapper = new LambdaQueryWrapper<>();
         wrapper.eq(ChatMessage::getSessionId, sessionId)
                 .orderByDesc(ChatMessage::getCreatedTime)
-                .last("LIMIT 10");
+                .last("LIMIT " + ChatSessionContextCache.HISTORY_LIMIT);
         
         List<ChatMessage> messages = messageMapper.selectList(wrapper);
         Collections.reverse(messages); // 按时间正序
+        return messages;
+    }
 
-        List<Map<String, String>> result = new ArrayList<>();
-        for (ChatMessage msg : messages) {
-            if (msg.getErrorMessage() == null) { // 只包含成功的消息
-                result.add(Map.of(
-                        "role", msg.getRole(),
-                        "content", msg.getContent()
-                ));
-            }
-        }
+    /**
+     * 会话使用的机器人模板，未使用模板或模板已删除时返回null
+     */
+    private ChatBotTemplate findTemplate(ChatSession session) {
+        return session.getBotTemplateId() != null ? botTemplateMapper.selectById(session.getBotTemplateId()) : null;
+    }
 
-        return result;
+    /**
+     * 解析会话的系统消息：会话级优先，其次是机器人模板
+     */
+    private String resolveSystemMessage(ChatSession session, ChatBotTemplate template) {
+        if (StrUtil.isNotBlank(session.getSystemMessage())) {
+            return session.getSystemMessage();
+        }
+        if (template != null && StrUtil.isNotBlank(template.getSystemMessage())) {
+            return template.getSystemMessage();
+        }
+        return null;
     }
     
     /**
      * 检测消息合规性
+     * 放入后台合规检测队列，不阻塞对话流程
      * 
      * @param message 待检测的消息
      */
     private void checkMessageCompliance(ChatMessage message) {
-        try {
-            // 调用Python合规检测服务
-            cn.hutool.json.JSONObject result = complianceClient.checkContent(message.getContent());
-            
-            // 如果检测服务返回 null，说明服务不可用，保持 UNCHECKED 状态
-            if (result == null) {
-                org.slf4j.LoggerFactory.getLogger(getClass())
-                        .warn("合规检测服务不可用: messageId={}, 保持未检测状态", message.getId());
-                // 不更新数据库，保持原有的 UNCHECKED 状态
-                return;
-            }
-            
-            // 更新消息的合规状态
-            String complianceResult = result.getStr("result", "UNCHECKED");
-            message.setComplianceStatus(complianceResult);
-            message.setComplianceResult(result.toString());
-            
-            // 更新到数据库
-            messageMapper.updateById(message);
-            
-        } catch (Exception e) {
-            // 检测失败时，保持未检测状态，不更新数据库
-            org.slf4j.LoggerFactory.getLogger(getClass())
-                    .error("合规检测失败: messageId={}, error={}, 保持未检测状态", 
-                           message.getId(), e.getMessage());
+        complianceQueue.submit(message);
+    }
+
+    /**
+     * 单次对话的上下文
+     */
+    private static class ChatContext {
+        private final Long userId;
+        private final Long apiConfigId;
+        private final ApiConfig apiConfig;
+        private final ChatSession session;
+        private final List<Map<String, String>> messages;
+        /**
+         * 回复缓存key，未开启缓存时为null
+         */
+        private final String cacheKey;
+
+        ChatContext(Long userId, Long apiConfigId, ApiConfig apiConfig,
+                    ChatSession session, List<Map<String, String>> messages, String cacheKey) {
+            this.userId = userId;
+            this.apiConfigId = apiConfigId;
+            this.apiConfig = apiConfig;
+            this.session = session;
+            this.messages = messages;
+            this.cacheKey = cacheKey;
         }
     }
 }
@@ -1,32 +1,64 @@
 package com.qna.platform.service.impl;
 
-import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.qna.platform.common.PageResult;
 import com.qna.platform.dto.BatchComplianceResult;
 import com.qna.platform.dto.ComplianceCheckDTO;
+import com.qna.platform.dto.ComplianceLogFilter;
 import com.qna.platform.entity.*;
 import com.qna.platform.mapper.*;
 import com.qna.platform.service.ComplianceService;
 import com.qna.platform.util.ComplianceClient;
+import com.qna.platform.util.ComplianceInstancePool;
+import com.qna.platform.util.CompliancePrefilter;
+import com.qna.platform.util.ComplianceRetryQueue;
+import com.qna.platform.util.ComplianceSampling;
+import com.qna.platform.util.ComplianceScanner;
+import com.qna.platform.util.ComplianceVerdictCache;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import jakarta.servlet.http.HttpServletResponse;
+
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * 合规检测服务实现
@@ -42,28 +74,104 @@ public class ComplianceServiceImpl implements ComplianceService {
     @Value("${app.compliance.timeout}")
     private int complianceTimeout;
 
+    /**
+     * 检测任务每块的消息数（一次批量检测请求）
+     */
+    @Value("${app.compliance.task.chunk-size:50}")
+    private int taskChunkSize;
+
+    /**
+     * 每个检测任务同时在途的检测请求数
+     */
+    @Value("${app.compliance.task.concurrency:4}")
+    private int taskConcurrency;
+
+    /**
+     * 检测任务进度写入数据库的间隔（毫秒）
+     */
+    @Value("${app.compliance.task.progress-flush-interval:2000}")
+    private long taskProgressFlushInterval;
+
+    /**
+     * 文件批量检测每个窗口读取的消息数
+     */
+    @Value("${app.compliance.batch-file.window-size:1000}")
+    private int batchFileWindowSize;
+
+    /**
+     * 文件批量检测接口直接返回的最大检测项数，完整结果使用流式接口获取
+     */
+    @Value("${app.compliance.batch-file.max-inline-items:2000}")
+    private int batchFileMaxInlineItems;
+
+    /**
+     * 抽样检测任务的最大样本量，超出时需放宽误差范围或缩小筛选范围
+     */
+    @Value("${app.compliance.sample.max-size:20000}")
+    private int sampleMaxSize;
+
+    /**
+     * 抽样时每次按ID游标读取的消息数
+     */
+    @Value("${app.compliance.sample.scan-page-size:5000}")
+    private int sampleScanPageSize;
+
+    /**
+     * 抽样检测结果摘要中保留的分层数（按违规率从高到低）
+     */
+    @Value("${app.compliance.sample.summary-strata:200}")
+    private int sampleSummaryStrata;
+
     private final ComplianceTaskMapper taskMapper;
     private final ComplianceResultMapper resultMapper;
     private final ChatMessageMapper messageMapper;
     private final SysUserMapper userMapper;
     private final OkHttpClient httpClient;
     private final ComplianceClient complianceClient;
+    private final ComplianceVerdictCache verdictCache;
+    private final CompliancePrefilter prefilter;
+    private final ComplianceScanner complianceScanner;
+    private final ComplianceInstancePool instancePool;
+    private final ComplianceRetryQueue retryQueue;
     private final ObjectMapper objectMapper;
+    private final ThreadPoolTaskExecutor complianceTaskExecutor;
+    private final ThreadPoolTaskExecutor complianceCheckExecutor;
+
+    /**
+     * 执行中的任务及其取消标记
+     */
+    private final Map<Long, AtomicBoolean> runningTasks = new ConcurrentHashMap<>();
 
     private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
 
+    private static final DateTimeFormatter LOG_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     public ComplianceServiceImpl(ComplianceTaskMapper taskMapper,
                                 ComplianceResultMapper resultMapper,
                                 ChatMessageMapper messageMapper,
                                 ComplianceClient complianceClient,
+                                ComplianceVerdictCache verdictCache,
+                                CompliancePrefilter prefilter,
+                                ComplianceScanner complianceScanner,
+                                ComplianceInstancePool instancePool,
+                                ComplianceRetryQueue retryQueue,
                                 ObjectMapper objectMapper,
-                                SysUserMapper userMapper) {
+                                SysUserMapper userMapper,
+                                @Qualifier("complianceTaskExecutor") ThreadPoolTaskExecutor complianceTaskExecutor,
+                                @Qualifier("complianceCheckExecutor") ThreadPoolTaskExecutor complianceCheckExecutor) {
         this.taskMapper = taskMapper;
         this.resultMapper = resultMapper;
         this.messageMapper = messageMapper;
         this.complianceClient = complianceClient;
+        this.verdictCache = verdictCache;
+        this.prefilter = prefilter;
+        this.complianceScanner = complianceScanner;
+        this.instancePool = instancePool;
+        this.retryQueue = retryQueue;
         this.objectMapper = objectMapper;
         this.userMapper = userMapper;
+        this.complianceTaskExecutor = complianceTaskExecutor;
+        this.complianceCheckExecutor = complianceCheckExecutor;
         this.httpClient = new OkHttpClient.Builder()
                 .connectTimeout(complianceTimeout, java.util.concurrent.TimeUnit.MILLISECONDS)
                 .readTimeout(complianceTimeout, java.util.concurrent.TimeUnit.MILLISECONDS)
@@ -91,13 +199,28 @@ public class ComplianceServiceImpl implements ComplianceService {
         task.setPassCount(0);
         task.setFailCount(0);
 
+        // 日志检测：保存筛选条件，待检测数量用COUNT统计，不加载消息
+        ComplianceLogFilter filter = null;
+        if ("LOG".equals(checkDTO.getTaskType())) {
+            filter = toLogFilter(checkDTO);
+            task.setFilterParams(JSONUtil.toJsonStr(filter));
+        } else if ("SAMPLE".equals(checkDTO.getTaskType())) {
+            // 抽样检测：按分层统计计算样本量，实际抽样在执行任务时进行
+            filter = toSampleFilter(checkDTO);
+            double z = ComplianceSampling.zScore(filter.getConfidence());
+            int sampleSize = countStrata(filter, z).values().stream().mapToInt(stratum -> stratum.sampleSize).sum();
+            if (sampleSize > sampleMaxSize) {
+                throw new RuntimeException("抽样数量" + sampleSize + "超过上限" + sampleMaxSize + "，请放宽误差范围或缩小筛选范围");
+            }
+            task.setTotalRecords(sampleSize);
+            task.setFilterParams(JSONUtil.toJsonStr(filter));
+        }
+
         taskMapper.insert(task);
 
         // 根据任务类型获取待检测的数据
         if ("LOG".equals(checkDTO.getTaskType())) {
-            // 从日志加载数据
-            List<ChatMessage> messages = loadMessagesFromLog(checkDTO);
-            task.setTotalRecords(messages.size());
+            task.setTotalRecords(Math.toIntExact(messageMapper.selectCount(buildLogWrapper(filter))));
             taskMapper.updateById(task);
         } else if ("FILE".equals(checkDTO.getTaskType())) {
             // 从文件加载数据（这里只是创建任务，实际加载在触发检测时进行）
@@ -135,107 +258,384 @@ public class ComplianceServiceImpl implements ComplianceService {
     }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public boolean triggerCheck(Long taskId) {
         ComplianceTask task = taskMapper.selectById(taskId);
         if (task == null) {
             throw new RuntimeException("任务不存在");
         }
 
-        if (!"PENDING".equals(task.getTaskStatus())) {
+        if (!"LOG".equals(task.getTaskType()) && !"SAMPLE".equals(task.getTaskType())) {
+            throw new RuntimeException("暂不支持该任务类型");
+        }
+
+        // 以状态为条件更新，避免同一任务被重复触发
+        boolean started = taskMapper.update(null, new LambdaUpdateWrapper<ComplianceTask>()
+                .eq(ComplianceTask::getId, taskId)
+                .eq(ComplianceTask::getTaskStatus, "PENDING")
+                .set(ComplianceTask::getTaskStatus, "PROCESSING")
+                .set(ComplianceTask::getStartedTime, LocalDateTime.now())) > 0;
+        if (!started) {
             throw new RuntimeException("任务状态不允许触发检测");
         }
 
-        // 更新任务状态
-        task.setTaskStatus("PROCESSING");
-        task.setStartedTime(LocalDateTime.now());
-        taskMapper.updateById(task);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        runningTasks.put(taskId, cancelled);
+        try {
+            complianceTaskExecutor.execute(() -> runTask(task, cancelled));
+        } catch (RejectedExecutionException e) {
+            runningTasks.remove(taskId);
+            taskMapper.update(null, new LambdaUpdateWrapper<ComplianceTask>()
+                    .eq(ComplianceTask::getId, taskId)
+                    .set(ComplianceTask::getTaskStatus, "PENDING")
+                    .set(ComplianceTask::getStartedTime, null));
+            throw new RuntimeException("当前检测任务过多，请稍后再试");
+        }
+        return true;
+    }
+
+    @Override
+    public boolean cancelTask(Long taskId, Long userId) {
+        ComplianceTask task = taskMapper.selectById(taskId);
+        if (task == null || !task.getUserId().equals(userId)) {
+            throw new RuntimeException("任务不存在或无权访问");
+        }
+        if (!"PROCESSING".equals(task.getTaskStatus())) {
+            throw new RuntimeException("只能取消处理中的任务");
+        }
+
+        AtomicBoolean cancelled = runningTasks.get(taskId);
+        if (cancelled != null) {
+            // 由任务线程在当前在途请求完成后结束任务
+            cancelled.set(true);
+            return true;
+        }
+        // 没有线程在执行（如服务重启前遗留的任务），直接标记为已取消
+        return taskMapper.update(null, new LambdaUpdateWrapper<ComplianceTask>()
+                .eq(ComplianceTask::getId, taskId)
+                .eq(ComplianceTask::getTaskStatus, "PROCESSING")
+                .set(ComplianceTask::getTaskStatus, "CANCELLED")
+                .set(ComplianceTask::getCompletedTime, LocalDateTime.now())) > 0;
+    }
 
+    /**
+     * 在后台执行检测任务
+     * 消息按块提交到检测线程池，同时在途的块不超过taskConcurrency；
+     * 每块完成后批量写回结果，任务进度按间隔合并写入
+     */
+    private void runTask(ComplianceTask task, AtomicBoolean cancelled) {
+        Long taskId = task.getId();
+        TaskProgress progress = new TaskProgress();
         try {
-            // 获取待检测的消息
-            List<ChatMessage> messages;
-            if ("LOG".equals(task.getTaskType())) {
-                LambdaQueryWrapper<ChatMessage> wrapper = new LambdaQueryWrapper<>();
-                wrapper.eq(ChatMessage::getUserId, task.getUserId())
-                        .orderByDesc(ChatMessage::getCreatedTime)
-                        .last("LIMIT 1000");
-                messages = messageMapper.selectList(wrapper);
+            Map<String, Object> summary = new HashMap<>();
+            if ("SAMPLE".equals(task.getTaskType())) {
+                runSample(task, cancelled, progress, summary);
             } else {
-                throw new RuntimeException("暂不支持该任务类型");
+                runLog(task, cancelled, progress, summary);
             }
 
-            // 批量调用Python服务进行检测
-            int passCount = 0;
-            int failCount = 0;
+            boolean wasCancelled = cancelled.get();
+            progress.flushIfDue(taskId, true);
 
-            for (ChatMessage message : messages) {
-                try {
-                    JSONObject checkResult = complianceClient.checkContent(message.getContent());
-                    
-                    // 保存检测结果
-                    ComplianceResult result = new ComplianceResult();
-                    result.setTaskId(taskId);
-                    result.setMessageId(message.getId());
-                    result.setContent(message.getContent());
-                    result.setDetailResult(JSONUtil.toJsonStr(checkResult));
-
-                    // 解析结果
-                    JSONObject resultJson=checkResult;
-                    String status = resultJson.getStr("result", "PASS");
-                    result.setCheckResult(status);
-                    result.setRiskLevel(resultJson.getStr("risk_level", "LOW"));
-                    result.setRiskCategories(resultJson.getStr("risk_categories", ""));
-                    result.setConfidenceScore(resultJson.getBigDecimal("confidence_score"));
-                    
-                    resultMapper.insert(result);
+            summary.put("checked", progress.checked);
+            summary.put("pass", progress.pass);
+            summary.put("fail", progress.fail);
+            summary.put("cancelled", wasCancelled);
 
-                    // 更新消息的合规状态
-                    message.setComplianceStatus(status);
-                    message.setComplianceResult(JSONUtil.toJsonStr(checkResult));
-                    messageMapper.updateById(message);
+            taskMapper.update(null, new LambdaUpdateWrapper<ComplianceTask>()
+                    .eq(ComplianceTask::getId, taskId)
+                    .set(ComplianceTask::getTaskStatus, wasCancelled ? "CANCELLED" : "COMPLETED")
+                    .set(ComplianceTask::getCompletedTime, LocalDateTime.now())
+                    .set(ComplianceTask::getResultSummary, JSONUtil.toJsonStr(summary)));
+            log.info("合规检测任务{}: taskId={}, 已检测={}, 通过={}, 不通过={}",
+                    wasCancelled ? "已取消" : "完成", taskId, progress.checked, progress.pass, progress.fail);
 
-                    if ("PASS".equals(status)) {
-                        passCount++;
-                    } else {
-                        failCount++;
-                    }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // 任务失败
+            log.error("合规检测任务失败: taskId={}", taskId, e);
+            progress.flushIfDue(taskId, true);
+            taskMapper.update(null, new LambdaUpdateWrapper<ComplianceTask>()
+                    .eq(ComplianceTask::getId, taskId)
+                    .set(ComplianceTask::getTaskStatus, "FAILED")
+                    .set(ComplianceTask::getCompletedTime, LocalDateTime.now()));
+        } finally {
+            runningTasks.remove(taskId);
+        }
+    }
 
-                } catch (Exception e) {
-                    failCount++;
-                    // 记录错误但继续处理其他消息
-                    System.err.println("检测消息失败: " + e.getMessage());
+    /**
+     * 日志检测：按筛选条件检测全部消息
+     */
+    private void runLog(ComplianceTask task, AtomicBoolean cancelled, TaskProgress progress,
+                        Map<String, Object> summary) throws InterruptedException {
+        Long taskId = task.getId();
+        // 按创建时保存的筛选条件扫描；旧任务没有保存条件，沿用原来的规则（任务创建者的消息）
+        ComplianceLogFilter filter;
+        int total;
+        if (task.getFilterParams() != null) {
+            filter = JSONUtil.toBean(task.getFilterParams(), ComplianceLogFilter.class);
+            total = task.getTotalRecords() != null ? task.getTotalRecords() : 0;
+        } else {
+            filter = new ComplianceLogFilter();
+            filter.setUserIds(List.of(task.getUserId()));
+            filter.setMaxMessageId(currentMaxMessageId());
+            total = Math.toIntExact(messageMapper.selectCount(buildLogWrapper(filter)));
+            taskMapper.update(null, new LambdaUpdateWrapper<ComplianceTask>()
+                    .eq(ComplianceTask::getId, taskId)
+                    .set(ComplianceTask::getTotalRecords, total));
+        }
+        log.info("合规检测任务开始: taskId={}, 消息数={}, 并发={}", taskId, total, taskConcurrency);
+
+        checkChunks(taskId, new KeysetChunks(filter), cancelled, progress, null);
+        summary.put("total", total);
+    }
+
+    /**
+     * 抽样检测：按分层抽取样本并检测，结果摘要中保存各分层及总体违规率的估计和置信区间
+     */
+    private void runSample(ComplianceTask task, AtomicBoolean cancelled, TaskProgress progress,
+                           Map<String, Object> summary) throws InterruptedException {
+        Long taskId = task.getId();
+        ComplianceLogFilter filter = JSONUtil.toBean(task.getFilterParams(), ComplianceLogFilter.class);
+        double z = ComplianceSampling.zScore(filter.getConfidence());
+
+        Map<String, Stratum> strata = countStrata(filter, z);
+        List<Long> sampleIds = drawSample(filter, strata, cancelled);
+        log.info("合规抽样检测开始: taskId={}, 分层数={}, 样本数={}, 并发={}",
+                taskId, strata.size(), sampleIds.size(), taskConcurrency);
+
+        String stratifyBy = filter.getStratifyBy();
+        checkChunks(taskId, new IdChunks(sampleIds), cancelled, progress, (chunk, results) -> {
+            for (int i = 0; i < chunk.size(); i++) {
+                Stratum stratum = strata.get(stratumKey(chunk.get(i), stratifyBy));
+                JSONObject checkResult = results.get(i);
+                // 检测服务不可用的消息不计入估计
+                if (stratum == null || checkResult == null) {
+                    continue;
+                }
+                stratum.checked++;
+                if (!"PASS".equals(checkResult.getStr("result", "PASS"))) {
+                    stratum.violations++;
                 }
+            }
+        });
+
+        summary.put("total", sampleIds.size());
+        summary.put("stratifyBy", stratifyBy);
+        summary.put("confidence", filter.getConfidence());
+        summary.put("margin", filter.getMargin());
+        summary.putAll(sampleEstimates(strata, z));
+    }
 
-                // 更新进度
-                task.setCheckedRecords(task.getCheckedRecords() + 1);
-                taskMapper.updateById(task);
+    /**
+     * 把消息分块提交检测，直到数据源没有更多消息或任务被取消
+     *
+     * @param source 每次返回下一块消息，返回空列表表示没有更多
+     * @param onChunk 每块检测完成并写回后的回调，可为null
+     */
+    private void checkChunks(Long taskId, Supplier<List<ChatMessage>> source, AtomicBoolean cancelled,
+                             TaskProgress progress, BiConsumer<List<ChatMessage>, List<JSONObject>> onChunk)
+            throws InterruptedException {
+        CompletionService<List<JSONObject>> completion = new ExecutorCompletionService<>(complianceCheckExecutor);
+        Map<Future<List<JSONObject>>, List<ChatMessage>> inFlight = new HashMap<>();
+        boolean exhausted = false;
+        while (!exhausted || !inFlight.isEmpty()) {
+            // 补足在途的块，取消后不再提交
+            while (!cancelled.get() && !exhausted && inFlight.size() < taskConcurrency) {
+                List<ChatMessage> chunk = source.get();
+                if (chunk.isEmpty()) {
+                    exhausted = true;
+                    break;
+                }
+                List<String> contents = new ArrayList<>(chunk.size());
+                for (ChatMessage message : chunk) {
+                    contents.add(message.getContent());
+                }
+                inFlight.put(completion.submit(() -> complianceClient.checkBatch(contents)), chunk);
+            }
+            if (inFlight.isEmpty()) {
+                break;
             }
 
-            // 完成任务
-            task.setTaskStatus("COMPLETED");
-            task.setPassCount(passCount);
-            task.setFailCount(failCount);
-            task.setCompletedTime(LocalDateTime.now());
-            
-            Map<String, Object> summary = new HashMap<>();
-            summary.put("total", messages.size());
-            summary.put("pass", passCount);
-            summary.put("fail", failCount);
-            task.setResultSummary(JSONUtil.toJsonStr(summary));
-            
-            taskMapper.updateById(task);
+            Future<List<JSONObject>> done = completion.take();
+            List<ChatMessage> chunk = inFlight.remove(done);
+            List<JSONObject> results;
+            try {
+                results = done.get();
+            } catch (ExecutionException e) {
+                log.error("合规检测块执行失败: taskId={}, error={}", taskId, e.getCause().getMessage());
+                results = Collections.nCopies(chunk.size(), null);
+            }
+            saveChunkResults(taskId, chunk, results, progress);
+            if (onChunk != null) {
+                onChunk.accept(chunk, results);
+            }
+            progress.flushIfDue(taskId, false);
+        }
+    }
 
-            return true;
+    /**
+     * 按ID游标分块读取符合筛选条件的消息
+     */
+    private class KeysetChunks implements Supplier<List<ChatMessage>> {
+        private final ComplianceLogFilter filter;
+        private long lastId;
+        private boolean exhausted;
 
-        } catch (Exception e) {
-            // 任务失败
-            task.setTaskStatus("FAILED");
-            task.setCompletedTime(LocalDateTime.now());
-            taskMapper.updateById(task);
-            throw new RuntimeException("检测任务失败: " + e.getMessage());
+        KeysetChunks(ComplianceLogFilter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public List<ChatMessage> get() {
+            if (exhausted) {
+                return Collections.emptyList();
+            }
+            List<ChatMessage> chunk = messageMapper.selectList(buildLogWrapper(filter)
+                    .select(ChatMessage::getId, ChatMessage::getContent)
+                    .gt(ChatMessage::getId, lastId)
+                    .orderByAsc(ChatMessage::getId)
+                    .last("LIMIT " + taskChunkSize));
+            if (chunk.size() < taskChunkSize) {
+                exhausted = true;
+            }
+            if (!chunk.isEmpty()) {
+                lastId = chunk.get(chunk.size() - 1).getId();
+            }
+            return chunk;
         }
     }
 
+    /**
+     * 按主键分块读取抽中的消息
+     */
+    private class IdChunks implements Supplier<List<ChatMessage>> {
+        private final List<Long> ids;
+        private int next;
+
+        IdChunks(List<Long> ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public List<ChatMessage> get() {
+            if (next >= ids.size()) {
+                return Collections.emptyList();
+            }
+            List<Long> chunkIds = ids.subList(next, Math.min(next + taskChunkSize, ids.size()));
+            next += chunkIds.size();
+            return messageMapper.selectList(new LambdaQueryWrapper<ChatMessage>()
+                    .select(ChatMessage::getId, ChatMessage::getContent, ChatMessage::getUserId,
+                            ChatMessage::getRole, ChatMessage::getApiConfigId)
+                    .in(ChatMessage::getId, chunkIds)
+                    .orderByAsc(ChatMessage::getId));
+        }
+    }
+
+    /**
+     * 写回一块消息的检测结果：逐条保存检测记录，消息的合规状态用一条UPDATE批量更新
+     */
+    private void saveChunkResults(Long taskId, List<ChatMessage> chunk, List<JSONObject> results, TaskProgress progress) {
+        List<ChatMessage> updates = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            ChatMessage message = chunk.get(i);
+            JSONObject checkResult = results.get(i);
+            progress.checked++;
+            if (checkResult == null) {
+                // 检测服务不可用，计为不通过，消息保持原状态
+                progress.fail++;
+                continue;
+            }
+            try {
+                // 保存检测结果
+                ComplianceResult result = new ComplianceResult();
+                result.setTaskId(taskId);
+                result.setMessageId(message.getId());
+                result.setContent(message.getContent());
+                result.setDetailResult(JSONUtil.toJsonStr(checkResult));
+
+                // 解析结果
+                String status = checkResult.getStr("result", "PASS");
+                result.setCheckResult(status);
+                result.setRiskLevel(checkResult.getStr("risk_level", "LOW"));
+                result.setRiskCategories(checkResult.getStr("risk_categories", ""));
+                result.setConfidenceScore(checkResult.getBigDecimal("confidence_score"));
+
+                resultMapper.insert(result);
+
+                ChatMessage update = new ChatMessage();
+                update.setId(message.getId());
+                update.setComplianceStatus(status);
+                update.setComplianceResult(JSONUtil.toJsonStr(checkResult));
+                updates.add(update);
+
+                if ("PASS".equals(status)) {
+                    progress.pass++;
+                } else {
+                    progress.fail++;
+                }
+            } catch (Exception e) {
+                progress.fail++;
+                // 记录错误但继续处理其他消息
+                log.error("保存检测结果失败: taskId={}, messageId={}, error={}", taskId, message.getId(), e.getMessage());
+            }
+        }
+        if (!updates.isEmpty()) {
+            // 更新消息的合规状态
+            messageMapper.batchUpdateCompliance(updates);
+        }
+    }
+
+    /**
+     * 检测任务的进度计数，按间隔合并写入数据库
+     */
+    private class TaskProgress {
+        private int checked;
+        private int pass;
+        private int fail;
+        private long lastFlushTime = System.currentTimeMillis();
+
+        void flushIfDue(Long taskId, boolean force) {
+            long now = System.currentTimeMillis();
+            if (!force && now - lastFlushTime < taskProgressFlushInterval) {
+                return;
+            }
+            lastFlushTime = now;
+            taskMapper.update(null, new LambdaUpdateWrapper<ComplianceTask>()
+                    .eq(ComplianceTask::getId, taskId)
+                    .set(ComplianceTask::getCheckedRecords, checked)
+                    .set(ComplianceTask::getPassCount, pass)
+                    .set(ComplianceTask::getFailCount, fail));
+        }
+    }
+
+    @Override
+    public Map<String, Object> getVerdictCacheStats() {
+        return verdictCache.stats();
+    }
+
+    @Override
+    public Map<String, Object> getPrefilterStats() {
+        return prefilter.stats();
+    }
+
+    @Override
+    public Map<String, Object> getScannerStats() {
+        return complianceScanner.stats();
+    }
+
+    @Override
+    public List<Map<String, Object>> getInstanceStats() {
+        return instancePool.stats();
+    }
+
+    @Override
+    public Map<String, Object> getRetryQueueStats() {
+        return retryQueue.stats();
+    }
+
     @Override
     public String checkSingleMessage(String content) {
         JSONObject checkResult = complianceClient.checkContent(content);
@@ -277,21 +677,19 @@ public class ComplianceServiceImpl implements ComplianceService {
 //    }
 
     /**
-     * 从日志加载消息
+     * 把创建任务的参数转换为日志筛选条件，消息ID上界取当前最大ID
      */
-    private List<ChatMessage> loadMessagesFromLog(ComplianceCheckDTO checkDTO) {
-        LambdaQueryWrapper<ChatMessage> wrapper = new LambdaQueryWrapper<>();
+    private ComplianceLogFilter toLogFilter(ComplianceCheckDTO checkDTO) {
+        ComplianceLogFilter filter = new ComplianceLogFilter();
 
-        // 时间范围
+        // 时间范围（创建时校验格式）
         if (checkDTO.getStartTime() != null && !checkDTO.getStartTime().isEmpty()) {
-            LocalDateTime startTime = LocalDateTime.parse(checkDTO.getStartTime(), 
-                    DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            wrapper.ge(ChatMessage::getCreatedTime, startTime);
+            LocalDateTime.parse(checkDTO.getStartTime(), LOG_TIME_FORMATTER);
+            filter.setStartTime(checkDTO.getStartTime());
         }
         if (checkDTO.getEndTime() != null && !checkDTO.getEndTime().isEmpty()) {
-            LocalDateTime endTime = LocalDateTime.parse(checkDTO.getEndTime(), 
-                    DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            wrapper.le(ChatMessage::getCreatedTime, endTime);
+            LocalDateTime.parse(checkDTO.getEndTime(), LOG_TIME_FORMATTER);
+            filter.setEndTime(checkDTO.getEndTime());
         }
 
         // 用户ID
@@ -301,85 +699,483 @@ public class ComplianceServiceImpl implements ComplianceService {
             for (String userId : userIdArray) {
                 userIds.add(Long.parseLong(userId.trim()));
             }
-            wrapper.in(ChatMessage::getUserId, userIds);
+            filter.setUserIds(userIds);
+        }
+
+        filter.setMaxMessageId(currentMaxMessageId());
+        return filter;
+    }
+
+    /**
+     * 按日志筛选条件构建查询
+     */
+    private LambdaQueryWrapper<ChatMessage> buildLogWrapper(ComplianceLogFilter filter) {
+        return applyLogFilter(new LambdaQueryWrapper<>(), filter);
+    }
+
+    /**
+     * 把日志筛选条件加到查询上
+     */
+    private LambdaQueryWrapper<ChatMessage> applyLogFilter(LambdaQueryWrapper<ChatMessage> wrapper, ComplianceLogFilter filter) {
+        // 时间范围
+        if (filter.getStartTime() != null) {
+            wrapper.ge(ChatMessage::getCreatedTime, LocalDateTime.parse(filter.getStartTime(), LOG_TIME_FORMATTER));
+        }
+        if (filter.getEndTime() != null) {
+            wrapper.le(ChatMessage::getCreatedTime, LocalDateTime.parse(filter.getEndTime(), LOG_TIME_FORMATTER));
+        }
+
+        // 用户ID
+        if (filter.getUserIds() != null && !filter.getUserIds().isEmpty()) {
+            wrapper.in(ChatMessage::getUserId, filter.getUserIds());
         }
 
-        wrapper.orderByDesc(ChatMessage::getCreatedTime);
-        wrapper.last("LIMIT 1000");
+        wrapper.le(ChatMessage::getId, filter.getMaxMessageId() != null ? filter.getMaxMessageId() : 0L);
+        return wrapper;
+    }
 
-        return messageMapper.selectList(wrapper);
+    /**
+     * 当前最大的消息ID，没有消息时为0
+     */
+    private long currentMaxMessageId() {
+        ChatMessage latest = messageMapper.selectOne(new LambdaQueryWrapper<ChatMessage>()
+                .select(ChatMessage::getId)
+                .orderByDesc(ChatMessage::getId)
+                .last("LIMIT 1"));
+        return latest != null ? latest.getId() : 0L;
+    }
+
+    /**
+     * 把创建抽样任务的参数转换为筛选条件
+     */
+    private ComplianceLogFilter toSampleFilter(ComplianceCheckDTO checkDTO) {
+        String stratifyBy = checkDTO.getStratifyBy() != null ? checkDTO.getStratifyBy() : "USER";
+        if (!"USER".equals(stratifyBy) && !"ROLE".equals(stratifyBy) && !"API_CONFIG".equals(stratifyBy)) {
+            throw new RuntimeException("不支持的分层维度: " + stratifyBy);
+        }
+        double confidence = checkDTO.getConfidence() != null ? checkDTO.getConfidence() : 0.95;
+        if (confidence < 0.5 || confidence >= 1) {
+            throw new RuntimeException("置信水平需在0.5到1之间");
+        }
+        double margin = checkDTO.getMargin() != null ? checkDTO.getMargin() : 0.05;
+        if (margin <= 0 || margin >= 0.5) {
+            throw new RuntimeException("误差范围需在0到0.5之间");
+        }
+
+        ComplianceLogFilter filter = toLogFilter(checkDTO);
+        filter.setStratifyBy(stratifyBy);
+        filter.setConfidence(confidence);
+        filter.setMargin(margin);
+        return filter;
+    }
+
+    /**
+     * 按分层维度统计符合筛选条件的消息数，并计算每个分层的样本量
+     */
+    private Map<String, Stratum> countStrata(ComplianceLogFilter filter, double z) {
+        String column = stratumColumn(filter.getStratifyBy());
+        QueryWrapper<ChatMessage> query = new QueryWrapper<>();
+        query.select(column + " AS stratum", "COUNT(*) AS population");
+        // lambda()与query共用查询条件
+        applyLogFilter(query.lambda(), filter);
+        query.groupBy(column);
+
+        Map<String, Stratum> strata = new LinkedHashMap<>();
+        for (Map<String, Object> row : messageMapper.selectMaps(query)) {
+            String key = String.valueOf(row.get("stratum"));
+            long population = ((Number) row.get("population")).longValue();
+            strata.put(key, new Stratum(key, population,
+                    ComplianceSampling.sampleSize(population, z, filter.getMargin())));
+        }
+        return strata;
+    }
+
+    /**
+     * 抽取样本：按ID游标顺序扫描一遍符合条件的消息，每个分层用顺序抽样（Knuth算法S）
+     * 以 剩余需要数/剩余总数 的概率选中当前消息，每个分层恰好得到计划数量的简单随机样本；
+     * 所有分层抽满后提前结束扫描
+     *
+     * @return 抽中的消息ID（升序）
+     */
+    private List<Long> drawSample(ComplianceLogFilter filter, Map<String, Stratum> strata, AtomicBoolean cancelled) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long needed = 0;
+        for (Stratum stratum : strata.values()) {
+            needed += stratum.sampleSize;
+        }
+        List<Long> ids = new ArrayList<>((int) needed);
+        long lastId = 0;
+        while (needed > 0 && !cancelled.get()) {
+            List<ChatMessage> page = messageMapper.selectList(buildLogWrapper(filter)
+                    .select(ChatMessage::getId, ChatMessage::getUserId, ChatMessage::getRole, ChatMessage::getApiConfigId)
+                    .gt(ChatMessage::getId, lastId)
+                    .orderByAsc(ChatMessage::getId)
+                    .last("LIMIT " + sampleScanPageSize));
+            for (ChatMessage message : page) {
+                Stratum stratum = strata.get(stratumKey(message, filter.getStratifyBy()));
+                if (stratum == null || stratum.remainingNeeded == 0) {
+                    continue;
+                }
+                if (stratum.remainingPopulation <= stratum.remainingNeeded
+                        || random.nextLong(stratum.remainingPopulation) < stratum.remainingNeeded) {
+                    ids.add(message.getId());
+                    stratum.remainingNeeded--;
+                    needed--;
+                }
+                stratum.remainingPopulation--;
+            }
+            if (page.size() < sampleScanPageSize) {
+                break;
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+        return ids;
+    }
+
+    /**
+     * 根据样本检测结果估计各分层和总体的违规率
+     * 总体违规率按各分层消息数加权，方差含有限总体校正，区间使用按有效样本量计算的Wilson区间
+     */
+    private Map<String, Object> sampleEstimates(Map<String, Stratum> strata, double z) {
+        long population = 0;
+        long coveredPopulation = 0;
+        long checked = 0;
+        for (Stratum stratum : strata.values()) {
+            population += stratum.population;
+            if (stratum.checked > 0) {
+                coveredPopulation += stratum.population;
+                checked += stratum.checked;
+            }
+        }
+
+        double rate = 0;
+        double variance = 0;
+        for (Stratum stratum : strata.values()) {
+            if (stratum.checked == 0) {
+                continue;
+            }
+            double weight = (double) stratum.population / coveredPopulation;
+            double p = stratum.rate();
+            rate += weight * p;
+            double fpc = 1 - (double) stratum.checked / stratum.population;
+            variance += weight * weight * fpc * p * (1 - p) / stratum.checked;
+        }
+
+        Map<String, Object> overall = new LinkedHashMap<>();
+        overall.put("population", population);
+        overall.put("checked", checked);
+        overall.put("rate", round(rate));
+        if (checked > 0) {
+            double[] interval;
+            if (checked >= coveredPopulation) {
+                interval = new double[]{rate, rate};
+            } else {
+                double effectiveSize = variance > 0 ? rate * (1 - rate) / variance : checked;
+                interval = ComplianceSampling.wilson(rate, effectiveSize, z);
+            }
+            overall.put("ciLower", round(interval[0]));
+            overall.put("ciUpper", round(interval[1]));
+        }
+
+        // 违规率高的分层在前，摘要中只保留前sampleSummaryStrata个
+        List<Stratum> sorted = new ArrayList<>(strata.values());
+        sorted.sort(Comparator.comparingDouble(Stratum::rate).reversed()
+                .thenComparing(Comparator.comparingLong((Stratum stratum) -> stratum.population).reversed()));
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (Stratum stratum : sorted.subList(0, Math.min(sampleSummaryStrata, sorted.size()))) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("stratum", stratum.key);
+            item.put("population", stratum.population);
+            item.put("sampleSize", stratum.sampleSize);
+            item.put("checked", stratum.checked);
+            item.put("violations", stratum.violations);
+            item.put("rate", round(stratum.rate()));
+            double[] interval = ComplianceSampling.wilsonInterval(stratum.violations, stratum.checked, stratum.population, z);
+            item.put("ciLower", round(interval[0]));
+            item.put("ciUpper", round(interval[1]));
+            items.add(item);
+        }
+
+        Map<String, Object> estimates = new LinkedHashMap<>();
+        estimates.put("population", population);
+        estimates.put("overall", overall);
+        estimates.put("strataCount", strata.size());
+        estimates.put("strataTruncated", strata.size() > items.size());
+        estimates.put("strata", items);
+        return estimates;
+    }
+
+    private static String stratumColumn(String stratifyBy) {
+        if ("ROLE".equals(stratifyBy)) {
+            return "role";
+        }
+        if ("API_CONFIG".equals(stratifyBy)) {
+            return "api_config_id";
+        }
+        return "user_id";
+    }
+
+    private static String stratumKey(ChatMessage message, String stratifyBy) {
+        if ("ROLE".equals(stratifyBy)) {
+            return String.valueOf(message.getRole());
+        }
+        if ("API_CONFIG".equals(stratifyBy)) {
+            return String.valueOf(message.getApiConfigId());
+        }
+        return String.valueOf(message.getUserId());
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10000) / 10000.0;
+    }
+
+    /**
+     * 抽样检测的一个分层
+     */
+    private static class Stratum {
+        private final String key;
+        private final long population;
+        private final int sampleSize;
+        private long remainingPopulation;
+        private long remainingNeeded;
+        private int checked;
+        private int violations;
+
+        Stratum(String key, long population, int sampleSize) {
+            this.key = key;
+            this.population = population;
+            this.sampleSize = sampleSize;
+            this.remainingPopulation = population;
+            this.remainingNeeded = sampleSize;
+        }
+
+        double rate() {
+            return checked == 0 ? 0.0 : (double) violations / checked;
+        }
     }
     
     @Override
     public BatchComplianceResult batchCheckFromFile(MultipartFile file, Long userId) {
         try {
-            String filename = file.getOriginalFilename();
-            log.info("开始批量检测，文件名：{}", filename);
-            
-            List<ChatMessage> messages;
-            
-            // 根据文件类型解析
-            if (filename.endsWith(".json")) {
-                messages = parseJsonFile(file);
-            } else if (filename.endsWith(".csv")) {
-                messages = parseCsvFile(file);
-            } else {
-                throw new RuntimeException("不支持的文件格式，请上传JSON或CSV文件");
-            }
-            
-            if (messages.isEmpty()) {
-                throw new RuntimeException("文件中没有有效的消息数据");
-            }
-            
-            log.info("解析到 {} 条消息，开始批量检测", messages.size());
-            
-            // 批量检测
-            return performBatchCheck(messages);
-            
+            log.info("开始批量检测，文件名：{}", file.getOriginalFilename());
+
+            // 返回给前端的检测项有上限，完整结果请使用流式接口
+            List<BatchComplianceResult.ComplianceItem> items = new ArrayList<>();
+            BatchComplianceResult result = processFile(file, item -> {
+                if (items.size() < batchFileMaxInlineItems) {
+                    items.add(item);
+                }
+            });
+            result.setItems(items);
+            result.setTruncated(result.getTotal() > items.size());
+            return result;
+
         } catch (Exception e) {
             log.error("批量检测失败", e);
             throw new RuntimeException("批量检测失败：" + e.getMessage(), e);
         }
     }
-    
+
+    @Override
+    public void batchCheckFromFileToResponse(MultipartFile file, Long userId, HttpServletResponse response) {
+        log.info("开始流式批量检测，文件名：{}", file.getOriginalFilename());
+        response.setContentType("application/x-ndjson;charset=UTF-8");
+        response.setCharacterEncoding("UTF-8");
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8))) {
+            try {
+                // 每个检测项一行，最后一行为汇总（type=summary）
+                BatchComplianceResult summary = processFile(file, item -> writeLine(writer, item));
+                Map<String, Object> line = new LinkedHashMap<>();
+                line.put("type", "summary");
+                line.put("total", summary.getTotal());
+                line.put("passedCount", summary.getPassedCount());
+                line.put("failedCount", summary.getFailedCount());
+                line.put("uncheckedCount", summary.getUncheckedCount());
+                writeLine(writer, line);
+            } catch (Exception e) {
+                log.error("流式批量检测失败", e);
+                Map<String, Object> line = new LinkedHashMap<>();
+                line.put("type", "error");
+                line.put("message", "批量检测失败：" + e.getMessage());
+                writeLine(writer, line);
+            }
+        } catch (IOException e) {
+            log.error("写入批量检测结果失败: {}", e.getMessage());
+        }
+    }
+
+    private void writeLine(Writer writer, Object value) {
+        try {
+            writer.write(objectMapper.writeValueAsString(value));
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
-     * 解析JSON文件
+     * 流式读取上传文件并分窗口检测
+     * 每次读取最多batchFileWindowSize条消息，窗口内按会话分组配对后批量检测，检测项逐个交给sink；
+     * 会话在窗口末尾的用户消息顺延到下一个窗口，以便与其后的AI响应配对
+     *
+     * @return 汇总结果（不含检测项）
      */
-    private List<ChatMessage> parseJsonFile(MultipartFile file) throws IOException {
-        String content = new String(file.getBytes(), StandardCharsets.UTF_8);
-        JSONArray jsonArray = JSONUtil.parseArray(content);
-        
-        List<ChatMessage> messages = new ArrayList<>();
-        for (Object obj : jsonArray) {
-            JSONObject json = (JSONObject) obj;
-            ChatMessage message = new ChatMessage();
-            message.setId(json.getLong("id"));
-            message.setSessionId(json.getLong("sessionId"));
-            message.setUserId(json.getLong("userId"));
-            message.setRole(json.getStr("role"));
-            message.setContent(json.getStr("content"));
-            messages.add(message);
+    private BatchComplianceResult processFile(MultipartFile file, Consumer<BatchComplianceResult.ComplianceItem> sink)
+            throws IOException {
+        BatchCounter counter = new BatchCounter();
+        long records = 0;
+        try (MessageReader reader = openReader(file)) {
+            List<ChatMessage> carry = new ArrayList<>();
+            Set<ChatMessage> carried = Collections.newSetFromMap(new IdentityHashMap<>());
+            boolean eof = false;
+            while (!eof) {
+                List<ChatMessage> window = new ArrayList<>(carry);
+                carry.clear();
+                int read = 0;
+                while (read < batchFileWindowSize) {
+                    ChatMessage message = reader.next();
+                    if (message == null) {
+                        eof = true;
+                        break;
+                    }
+                    window.add(message);
+                    read++;
+                }
+                records += read;
+                if (window.isEmpty()) {
+                    break;
+                }
+
+                // 按会话分组，配对用户消息和AI响应
+                Map<Long, List<ChatMessage>> sessionMessages = new LinkedHashMap<>();
+                for (ChatMessage message : window) {
+                    sessionMessages.computeIfAbsent(message.getSessionId(), k -> new ArrayList<>()).add(message);
+                }
+                for (List<ChatMessage> sessionMsgs : sessionMessages.values()) {
+                    // 按时间排序
+                    sessionMsgs.sort(Comparator.comparing(ChatMessage::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+                    ChatMessage last = sessionMsgs.get(sessionMsgs.size() - 1);
+                    // 每条消息最多顺延一次，避免没有回复的用户消息一直滞留
+                    if (!eof && "user".equals(last.getRole()) && carried.add(last)) {
+                        sessionMsgs.remove(sessionMsgs.size() - 1);
+                        carry.add(last);
+                    }
+                }
+                performBatchCheck(sessionMessages, counter, sink);
+                for (List<ChatMessage> sessionMsgs : sessionMessages.values()) {
+                    sessionMsgs.forEach(carried::remove);
+                }
+            }
         }
-        
-        return messages;
+
+        if (records == 0) {
+            throw new RuntimeException("文件中没有有效的消息数据");
+        }
+        log.info("批量检测完成：消息 {} 条，检测项 {} 个", records, counter.total);
+
+        return BatchComplianceResult.builder()
+                .total(counter.total)
+                .passedCount(counter.passed)
+                .failedCount(counter.failed)
+                .uncheckedCount(counter.unchecked)
+                .build();
     }
-    
+
     /**
-     * 解析CSV文件
+     * 根据文件类型打开消息读取器
      */
-    private List<ChatMessage> parseCsvFile(MultipartFile file) throws IOException {
-        List<ChatMessage> messages = new ArrayList<>();
-        
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
-            
-            // 跳过BOM和标题行
-            String line = reader.readLine();
-            if (line != null && line.startsWith("\uFEFF")) {
-                line = line.substring(1);
+    private MessageReader openReader(MultipartFile file) throws IOException {
+        String filename = file.getOriginalFilename();
+        if (filename == null) {
+            throw new RuntimeException("不支持的文件格式，请上传JSON、NDJSON或CSV文件");
+        }
+        if (filename.endsWith(".json") || filename.endsWith(".ndjson") || filename.endsWith(".jsonl")) {
+            return new JsonMessageReader(file.getInputStream());
+        } else if (filename.endsWith(".csv")) {
+            return new CsvMessageReader(file.getInputStream());
+        }
+        throw new RuntimeException("不支持的文件格式，请上传JSON、NDJSON或CSV文件");
+    }
+
+    /**
+     * 逐条读取上传文件中的消息
+     */
+    private interface MessageReader extends Closeable {
+        /**
+         * 读取下一条消息，读完时返回null
+         */
+        ChatMessage next() throws IOException;
+    }
+
+    /**
+     * JSON读取器：支持顶层为数组的JSON文件，以及每行一个对象的NDJSON文件，逐个对象解析
+     */
+    private class JsonMessageReader implements MessageReader {
+        private final JsonParser parser;
+        private final boolean array;
+        private boolean done;
+
+        JsonMessageReader(InputStream in) throws IOException {
+            this.parser = objectMapper.createParser(in);
+            JsonToken first = parser.nextToken();
+            this.array = first == JsonToken.START_ARRAY;
+            this.done = first == null;
+        }
+
+        @Override
+        public ChatMessage next() throws IOException {
+            while (!done) {
+                // 数组模式下移动到下一个元素；NDJSON模式下第一次已位于对象开头
+                JsonToken token = array || parser.currentToken() == null ? parser.nextToken() : parser.currentToken();
+                if (token == null || token == JsonToken.END_ARRAY) {
+                    done = true;
+                    return null;
+                }
+                JsonNode json = parser.readValueAsTree();
+                if (!array) {
+                    parser.nextToken();
+                }
+                if (json == null || !json.isObject()) {
+                    continue;
+                }
+                ChatMessage message = new ChatMessage();
+                message.setId(longOrNull(json, "id"));
+                message.setSessionId(longOrNull(json, "sessionId"));
+                message.setUserId(longOrNull(json, "userId"));
+                message.setRole(json.path("role").asText(null));
+                message.setContent(json.path("content").asText(null));
+                return message;
             }
-            
-            // 读取数据行
+            return null;
+        }
+
+        private Long longOrNull(JsonNode json, String field) {
+            JsonNode node = json.get(field);
+            return node == null || node.isNull() ? null : node.asLong();
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+
+    /**
+     * CSV读取器：跳过BOM和标题行，逐行解析
+     */
+    private class CsvMessageReader implements MessageReader {
+        private final BufferedReader reader;
+
+        CsvMessageReader(InputStream in) throws IOException {
+            this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            // 跳过标题行
+            reader.readLine();
+        }
+
+        @Override
+        public ChatMessage next() throws IOException {
+            String line;
             while ((line = reader.readLine()) != null) {
                 String[] fields = parseCsvLine(line);
                 if (fields.length >= 5) {
@@ -389,12 +1185,16 @@ public class ComplianceServiceImpl implements ComplianceService {
                     message.setUserId(Long.parseLong(fields[2]));
                     message.setRole(fields[3]);
                     message.setContent(fields[4]);
-                    messages.add(message);
+                    return message;
                 }
             }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
         }
-        
-        return messages;
     }
     
     /**
@@ -423,92 +1223,99 @@ public class ComplianceServiceImpl implements ComplianceService {
     }
     
     /**
-     * 执行批量检测
+     * 检测一个窗口内按会话分组的消息，检测项依次交给sink
      */
-    private BatchComplianceResult performBatchCheck(List<ChatMessage> messages) {
+    private void performBatchCheck(Map<Long, List<ChatMessage>> sessionMessages, BatchCounter counter,
+                                   Consumer<BatchComplianceResult.ComplianceItem> sink) {
         List<BatchComplianceResult.ComplianceItem> items = new ArrayList<>();
-        int passedCount = 0;
-        int failedCount = 0;
-        int uncheckedCount = 0;
-        
-        // 按会话分组，配对用户消息和AI响应
-        Map<Long, List<ChatMessage>> sessionMessages = new HashMap<>();
-        for (ChatMessage message : messages) {
-            sessionMessages.computeIfAbsent(message.getSessionId(), k -> new ArrayList<>()).add(message);
-        }
-        
-        int index = 1;
+
+        // 先配对出所有待检测的条目，再一次性批量检测
+        List<ChatMessage[]> pairs = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
         for (Map.Entry<Long, List<ChatMessage>> entry : sessionMessages.entrySet()) {
             List<ChatMessage> sessionMsgs = entry.getValue();
             
-            // 按时间排序
-            sessionMsgs.sort(Comparator.comparing(ChatMessage::getId));
-            
-            // 配对用户消息和AI响应
+            // 配对用户消息和AI响应（已按时间排序）
             for (int i = 0; i < sessionMsgs.size(); i++) {
                 ChatMessage msg = sessionMsgs.get(i);
                 
                 if ("user".equals(msg.getRole())) {
                     BatchComplianceResult.ComplianceItem item = new BatchComplianceResult.ComplianceItem();
-                    item.setIndex(index++);
+                    item.setIndex(++counter.index);
                     item.setSessionId(msg.getSessionId());
                     item.setMessageId(msg.getId());
                     item.setUserContent(msg.getContent());
                     item.setTimestamp(System.currentTimeMillis());
-                    
-                    // 检测用户消息
-                    JSONObject userResult = complianceClient.checkContent(msg.getContent());
-                    if (userResult != null) {
-                        item.setUserResult(userResult.getStr("result"));
-                        item.setUserRiskLevel(userResult.getStr("risk_level"));
-                        item.setUserRiskCategories(userResult.getStr("risk_categories"));
-                    } else {
-                        item.setUserResult("UNCHECKED");
-                        item.setUserRiskLevel("UNKNOWN");
-                        uncheckedCount++;
-                    }
+                    contents.add(msg.getContent());
                     
                     // 查找对应的AI响应
+                    ChatMessage assistantMsg = null;
                     if (i + 1 < sessionMsgs.size() && "assistant".equals(sessionMsgs.get(i + 1).getRole())) {
-                        ChatMessage assistantMsg = sessionMsgs.get(i + 1);
+                        assistantMsg = sessionMsgs.get(i + 1);
                         item.setAssistantContent(assistantMsg.getContent());
-                        
-                        // 检测AI响应
-                        JSONObject assistantResult = complianceClient.checkContent(assistantMsg.getContent());
-                        if (assistantResult != null) {
-                            item.setAssistantResult(assistantResult.getStr("result"));
-                            item.setAssistantRiskLevel(assistantResult.getStr("risk_level"));
-                            item.setAssistantRiskCategories(assistantResult.getStr("risk_categories"));
-                        } else {
-                            item.setAssistantResult("UNCHECKED");
-                            item.setAssistantRiskLevel("UNKNOWN");
-                            uncheckedCount++;
-                        }
-                        
+                        contents.add(assistantMsg.getContent());
                         i++; // 跳过已处理的assistant消息
                     }
                     
-                    // 统计结果
-                    boolean hasFail = "FAIL".equals(item.getUserResult()) || "FAIL".equals(item.getAssistantResult());
-                    boolean hasPass = "PASS".equals(item.getUserResult()) || "PASS".equals(item.getAssistantResult());
-                    
-                    if (hasFail) {
-                        failedCount++;
-                    } else if (hasPass) {
-                        passedCount++;
-                    }
-                    
+                    pairs.add(new ChatMessage[]{msg, assistantMsg});
                     items.add(item);
                 }
             }
         }
-        
-        return BatchComplianceResult.builder()
-                .items(items)
-                .total(items.size())
-                .passedCount(passedCount)
-                .failedCount(failedCount)
-                .uncheckedCount(uncheckedCount)
-                .build();
+
+        List<JSONObject> results = complianceClient.checkBatch(contents);
+        int resultIndex = 0;
+        for (int i = 0; i < items.size(); i++) {
+            BatchComplianceResult.ComplianceItem item = items.get(i);
+
+            // 用户消息的检测结果
+            JSONObject userResult = results.get(resultIndex++);
+            if (userResult != null) {
+                item.setUserResult(userResult.getStr("result"));
+                item.setUserRiskLevel(userResult.getStr("risk_level"));
+                item.setUserRiskCategories(userResult.getStr("risk_categories"));
+            } else {
+                item.setUserResult("UNCHECKED");
+                item.setUserRiskLevel("UNKNOWN");
+                counter.unchecked++;
+            }
+
+            // AI响应的检测结果
+            if (pairs.get(i)[1] != null) {
+                JSONObject assistantResult = results.get(resultIndex++);
+                if (assistantResult != null) {
+                    item.setAssistantResult(assistantResult.getStr("result"));
+                    item.setAssistantRiskLevel(assistantResult.getStr("risk_level"));
+                    item.setAssistantRiskCategories(assistantResult.getStr("risk_categories"));
+                } else {
+                    item.setAssistantResult("UNCHECKED");
+                    item.setAssistantRiskLevel("UNKNOWN");
+                    counter.unchecked++;
+                }
+            }
+
+            // 统计结果
+            boolean hasFail = "FAIL".equals(item.getUserResult()) || "FAIL".equals(item.getAssistantResult());
+            boolean hasPass = "PASS".equals(item.getUserResult()) || "PASS".equals(item.getAssistantResult());
+
+            if (hasFail) {
+                counter.failed++;
+            } else if (hasPass) {
+                counter.passed++;
+            }
+            counter.total++;
+            sink.accept(item);
+        }
+    }
+
+    /**
+     * 文件批量检测的累计计数
+     */
+    private static class BatchCounter {
+        private int index;
+        private int total;
+        private int passed;
+        private int failed;
+        private int unchecked;
     }
 }
@@ -15,6 +15,9 @@ import com.qna.platform.mapper.LlmComplianceTaskMapper;
 import com.qna.platform.mapper.LlmComplianceResultMapper;
 import com.qna.platform.service.LlmComplianceService;
 import com.qna.platform.service.SystemConfigService;
+import com.qna.platform.util.ApiKeyPool;
+import com.qna.platform.util.ApiRateLimiter;
+import com.qna.platform.util.LlmJsonCodec;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
@@ -42,13 +45,13 @@ public class LlmComplianceServiceImpl implements LlmComplianceService {
     private final LlmComplianceResultMapper resultMapper;
     private final ApiConfigMapper apiConfigMapper;
     private final SystemConfigService configService;
+    private final ApiRateLimiter rateLimiter;
+    private final ApiKeyPool keyPool;
     private final OkHttpClient httpClient = new OkHttpClient.Builder()
             .connectTimeout(Duration.ofSeconds(30))
             .readTimeout(Duration.ofSeconds(60))
             .build();
 
-    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
-
     @Override
     public List<ApiConfig> getAvailableApiConfigs() {
         LambdaQueryWrapper<ApiConfig> wrapper = new LambdaQueryWrapper<>();
@@ -263,56 +266,46 @@ public class LlmComplianceServiceImpl implements LlmComplianceService {
             throw new RuntimeException("API密钥未配置");
         }
 
-        // 构建请求
-        JSONObject requestBody = new JSONObject();
-        requestBody.set("model", apiConfig.getModelName());
-        
-        JSONArray messages = new JSONArray();
-        JSONObject message = new JSONObject();
-        message.set("role", "user");
-        message.set("content", question);
-        messages.add(message);
-        requestBody.set("messages", messages);
-
-        // 可选参数
-        if (apiConfig.getMaxTokens() != null) {
-            requestBody.set("max_tokens", apiConfig.getMaxTokens());
-        }
-        if (apiConfig.getTemperature() != null) {
-            requestBody.set("temperature", apiConfig.getTemperature());
-        }
-
-        // 使用API配置中的endpoint
-        String endpoint = apiConfig.getApiEndpoint();
-        if (endpoint == null || endpoint.isEmpty()) {
-            // 兼容旧配置，使用默认的OpenAI endpoint
-            endpoint = "https://api.openai.com/v1/chat/completions";
-        }
+        List<Map<String, String>> messages = List.of(Map.of("role", "user", "content", question));
 
-        Request request = new Request.Builder()
-                .url(endpoint)
-                .post(RequestBody.create(requestBody.toString(), JSON_MEDIA_TYPE))
-                .addHeader("Content-Type", "application/json")
-                .addHeader("Authorization", "Bearer " + apiKey)
-                .build();
+        // 与对话共用该API配置的准入控制和密钥池；取得许可后的任何异常都要归还许可和密钥
+        ApiRateLimiter.Permit permit = rateLimiter.acquire(apiConfig);
+        ApiKeyPool.Lease lease = null;
+        try {
+            lease = keyPool.acquire(apiConfig);
 
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("LLM调用失败: " + response.code() + " - " + response.body().string());
+            // 使用密钥池选出的endpoint
+            String endpoint = lease.getEndpoint();
+            if (endpoint == null || endpoint.isEmpty()) {
+                // 兼容旧配置，使用默认的OpenAI endpoint
+                endpoint = "https://api.openai.com/v1/chat/completions";
             }
 
-            String responseBody = response.body().string();
-            JSONObject responseJson = JSONUtil.parseObj(responseBody);
-            
-            // 提取回答
-            JSONArray choices = responseJson.getJSONArray("choices");
-            if (choices != null && choices.size() > 0) {
-                JSONObject choice = choices.getJSONObject(0);
-                JSONObject messageObj = choice.getJSONObject("message");
-                return messageObj.getStr("content");
-            }
+            Request request = new Request.Builder()
+                    .url(endpoint)
+                    .post(LlmJsonCodec.chatRequest(apiConfig, messages, false))
+                    .addHeader("Authorization", "Bearer " + lease.getApiKey())
+                    .build();
+
+            try (Response response = httpClient.newCall(request).execute()) {
+                permit.responded(response.code(), lease.responded(response.code(), -1));
+                if (!response.isSuccessful()) {
+                    throw new IOException("LLM调用失败: " + response.code() + " - " + response.body().string());
+                }
 
-            throw new IOException("LLM返回格式错误");
+                // 从响应流中提取回答
+                String content = LlmJsonCodec.readChatContent(apiConfig.getProvider(), response.body().byteStream());
+                if (content != null) {
+                    return content;
+                }
+
+                throw new IOException("LLM返回格式错误");
+            }
+        } finally {
+            permit.release();
+            if (lease != null) {
+                lease.release();
+            }
         }
     }
 
@@ -323,13 +316,9 @@ public class LlmComplianceServiceImpl implements LlmComplianceService {
         String endpoint = configService.getConfigValue("python.compliance.endpoint", 
                 "http://localhost:5000/api/compliance/check");
 
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("content", content);
-
         Request request = new Request.Builder()
                 .url(endpoint)
-                .post(RequestBody.create(JSONUtil.toJsonStr(requestBody), JSON_MEDIA_TYPE))
-                .addHeader("Content-Type", "application/json")
+                .post(LlmJsonCodec.complianceRequest(content))
                 .build();
 
         try (Response response = httpClient.newCall(request).execute()) {
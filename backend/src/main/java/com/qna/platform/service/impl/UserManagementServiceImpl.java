@@ -7,6 +7,7 @@ import com.qna.platform.entity.SysUser;
 import com.qna.platform.mapper.RoleMapper;
 import com.qna.platform.mapper.SysUserMapper;
 import com.qna.platform.service.UserManagementService;
+import com.qna.platform.util.ApiQuotaLedger;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -29,6 +30,7 @@ public class UserManagementServiceImpl implements UserManagementService {
     
     private final SysUserMapper userMapper;
     private final RoleMapper roleMapper;
+    private final ApiQuotaLedger quotaLedger;
     private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
     
     @Override
@@ -91,6 +93,7 @@ public class UserManagementServiceImpl implements UserManagementService {
         
         user.setApiQuota(quota);
         userMapper.updateById(user);
+        quotaLedger.updateQuota(userId, quota);
     }
     
     @Override
@@ -184,7 +187,8 @@ public class UserManagementServiceImpl implements UserManagementService {
         dto.setRoleCode(user.getRole());
         dto.setStatus(user.getStatus());
         dto.setApiQuota(user.getApiQuota());
-        dto.setApiUsed(user.getApiUsed());
+        // 已使用次数以内存账本为准，数据库中的值在写回前会滞后
+        dto.setApiUsed(quotaLedger.getUsed(user));
         dto.setHasCompliancePermission(user.getHasCompliancePermission());
         dto.setCreatedTime(user.getCreatedTime() != null ? user.getCreatedTime().toString() : null);
         
@@ -9,6 +9,7 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.qna.platform.mapper.RoleMapper;
 import com.qna.platform.mapper.SysUserMapper;
 import com.qna.platform.service.UserProfileService;
+import com.qna.platform.util.ApiQuotaLedger;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -32,6 +33,7 @@ public class UserProfileServiceImpl implements UserProfileService {
     private final SysUserMapper userMapper;
     private final RoleMapper roleMapper;
     private final BCryptPasswordEncoder passwordEncoder;
+    private final ApiQuotaLedger quotaLedger;
     
     @Override
     public UserProfileDTO getUserProfile(Long userId) {
@@ -42,8 +44,6 @@ public class UserProfileServiceImpl implements UserProfileService {
         
         // 获取用户角色
         SysRole role = roleMapper.selectByUserId(userId);
-        // 检查是否需要重置API配额
-        checkAndResetApiQuota(user);
         
         return UserProfileDTO.builder()
                 .userId(user.getId())
@@ -53,7 +53,7 @@ public class UserProfileServiceImpl implements UserProfileService {
                 .roleCode(role != null ? role.getRoleCode() : "USER")
                 .status(user.getStatus())
                 .apiQuota(user.getApiQuota())
-                .apiUsed(user.getApiUsed())
+                .apiUsed(quotaLedger.getUsed(user))
                 .hasCompliancePermission(user.getHasCompliancePermission())
                 .createdAt(user.getCreatedTime())
                 .lastLoginTime(user.getUpdatedTime())  // 使用更新时间作为最后活动时间
@@ -124,61 +124,34 @@ public class UserProfileServiceImpl implements UserProfileService {
             throw new RuntimeException("用户不存在");
         }
         
+        int apiUsed = quotaLedger.getUsed(user);
         Map<String, Object> usage = new HashMap<>();
         usage.put("apiQuota", user.getApiQuota());
-        usage.put("apiUsed", user.getApiUsed());
-        usage.put("remaining", user.getApiQuota() - user.getApiUsed());
+        usage.put("apiUsed", apiUsed);
+        usage.put("remaining", user.getApiQuota() - apiUsed);
         usage.put("usagePercent", user.getApiQuota() > 0 ? 
-            (double) user.getApiUsed() / user.getApiQuota() * 100 : 0);
+            (double) apiUsed / user.getApiQuota() * 100 : 0);
         
         return usage;
     }
 
     @Override
-    @Transactional
     public Map<String, Object> checkAndResetApiQuota(Long userId) {
         SysUser user = userMapper.selectById(userId);
         if (user == null) {
             throw new RuntimeException("用户不存在");
         }
         
+        // 配额由ApiQuotaLedger在每日零点统一重置，这里只返回当前状态
+        int apiUsed = quotaLedger.getUsed(user);
         Map<String, Object> result = new HashMap<>();
-        boolean wasReset = false;
-        
-        // 检查是否需要重置
-        if (user.getApiUsed() != null && user.getApiUsed() > 0
-                && user.getQuotaResetTime() != null
-                && LocalDateTime.now().isAfter(user.getQuotaResetTime())) {
-            
-            // 重置配额
-            user.setApiUsed(0);
-            // 将重置时间设置为今天的24:00（即明天的00:00）
-            user.setQuotaResetTime(LocalDateTime.of(LocalDate.now().plusDays(1), LocalTime.MIDNIGHT));
-            userMapper.updateById(user);
-            wasReset = true;
-        }
-        
-        // 返回详细信息
-        result.put("reset", wasReset);
+        result.put("reset", false);
         result.put("apiQuota", user.getApiQuota());
-        result.put("apiUsed", user.getApiUsed());
-        result.put("remaining", user.getApiQuota() - user.getApiUsed());
-        result.put("nextResetTime", user.getQuotaResetTime());
-        result.put("message", wasReset ? "配额已重置" : "配额无需重置");
+        result.put("apiUsed", apiUsed);
+        result.put("remaining", user.getApiQuota() - apiUsed);
+        result.put("nextResetTime", LocalDateTime.of(LocalDate.now().plusDays(1), LocalTime.MIDNIGHT));
+        result.put("message", "配额无需重置");
         
         return result;
     }
-
-
-    private void checkAndResetApiQuota(SysUser user) {
-        if (user.getApiUsed() != null && user.getApiUsed() > 0
-                && user.getQuotaResetTime() != null
-                && LocalDateTime.now().isAfter(user.getQuotaResetTime())) {
-
-            user.setApiUsed(0);
-            // 将重置时间设置为今天的24:00（即明天的00:00）
-            user.setQuotaResetTime(LocalDateTime.of(LocalDate.now().plusDays(1), LocalTime.MIDNIGHT));
-            userMapper.updateById(user);
-        }
-    }
 }
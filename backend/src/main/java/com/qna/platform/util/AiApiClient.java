@@ -1,78 +1,788 @@
 package com.qna.platform.util;
 
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 import com.qna.platform.entity.ApiConfig;
+import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
+import okio.BufferedSource;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
 import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * AI API客户端 - 统一调用各种大模型API
  *
  * @author QnA Platform
  */
+@Slf4j
 @Component
 public class AiApiClient {
 
-    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
+    private final AiHttpClientRegistry clientRegistry;
+    private final AiHedgeStats hedgeStats;
+    private final ApiRateLimiter rateLimiter;
+    private final ApiCircuitBreaker circuitBreaker;
+    private final ApiKeyPool keyPool;
 
     /**
-     * 调用AI API
+     * 流式对冲的统计组名后缀（按首段内容耗时计算对冲延迟，与非流式分开统计）
+     */
+    private static final String STREAM_HEDGE_SUFFIX = ":stream";
+
+    /**
+     * 最大重试次数（不含首次调用）
+     */
+    @Value("${app.api.max-retries:3}")
+    private int maxRetries;
+
+    /**
+     * 重试退避的基础延迟和上限（毫秒）
+     */
+    @Value("${app.api.retry.base-delay:500}")
+    private long retryBaseDelayMs;
+
+    @Value("${app.api.retry.max-delay:10000}")
+    private long retryMaxDelayMs;
+
+    /**
+     * Retry-After超过该值（毫秒）时不再重试，直接失败
+     */
+    @Value("${app.api.retry.max-retry-after:30000}")
+    private long maxRetryAfterMs;
+
+    /**
+     * 阻塞调用的整体等待上限（毫秒，含排队和重试），超过后取消请求
+     */
+    @Value("${app.api.max-call-time:300000}")
+    private long maxCallTimeMs;
+
+    public AiApiClient(AiHttpClientRegistry clientRegistry, AiHedgeStats hedgeStats,
+                       ApiRateLimiter rateLimiter, ApiCircuitBreaker circuitBreaker, ApiKeyPool keyPool) {
+        this.clientRegistry = clientRegistry;
+        this.hedgeStats = hedgeStats;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.keyPool = keyPool;
+    }
+
+    /**
+     * 调用AI API（阻塞）
+     * 网络错误、超时、408/429/5xx按抖动退避重试（遵循Retry-After），熔断中直接失败
      *
      * @param apiConfig API配置
      * @param messages 消息列表
      * @return AI响应内容
      */
     public String callAiApi(ApiConfig apiConfig, List<Map<String, String>> messages) throws IOException {
-        OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(Duration.ofSeconds(apiConfig.getTimeout()))
-                .readTimeout(Duration.ofSeconds(apiConfig.getTimeout()))
-                .writeTimeout(Duration.ofSeconds(apiConfig.getTimeout()))
-                .build();
-
-        // 构建最终的API URL（支持模型名称占位符）
-        String finalUrl = buildFinalUrl(apiConfig);
-        
-        // 根据不同的provider构建请求
-        String requestBody = buildRequestBody(apiConfig, messages);
+        CompletableFuture<String> future = callAiApiAsync(apiConfig, messages, Duration.ofMillis(maxCallTimeMs));
+        try {
+            return future.get(maxCallTimeMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("API调用被中断");
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new SocketTimeoutException("API调用超时: " + maxCallTimeMs + "ms");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw new SocketTimeoutException("API调用超时: " + maxCallTimeMs + "ms");
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 异步调用AI API
+     * 基于OkHttp的enqueue，排队、等待响应和重试退避期间都不占用调用方线程。
+     * 取消返回的future会取消正在进行的HTTP请求；超过deadline时future以TimeoutException结束
+     *
+     * @param apiConfig API配置
+     * @param messages 消息列表
+     * @param deadline 整体截止时间（含排队和重试），为null表示不限制
+     * @return AI响应内容
+     */
+    public CompletableFuture<String> callAiApiAsync(ApiConfig apiConfig, List<Map<String, String>> messages,
+                                                    Duration deadline) {
+        AsyncCall asyncCall = new AsyncCall(apiConfig, messages);
+        if (deadline != null) {
+            asyncCall.result.orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        // 结果已确定（取消、超时）时中止进行中的请求
+        asyncCall.result.whenComplete((content, error) -> {
+            if (error != null) {
+                asyncCall.abort();
+            }
+        });
+        asyncCall.attempt(0);
+        return asyncCall.result;
+    }
+
+    /**
+     * 一次异步调用（含重试）的状态
+     */
+    private class AsyncCall {
+        private final ApiConfig apiConfig;
+        private final List<Map<String, String>> messages;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private volatile CompletableFuture<ApiRateLimiter.Permit> pendingPermit;
+        private volatile Call currentCall;
+
+        AsyncCall(ApiConfig apiConfig, List<Map<String, String>> messages) {
+            this.apiConfig = apiConfig;
+            this.messages = messages;
+        }
+
+        void attempt(int attempt) {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                circuitBreaker.check(apiConfig);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            CompletableFuture<ApiRateLimiter.Permit> permitFuture = rateLimiter.acquireAsync(apiConfig);
+            pendingPermit = permitFuture;
+            permitFuture.whenComplete((permit, error) -> {
+                if (error != null) {
+                    circuitBreaker.recordIgnored(apiConfig);
+                    result.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+                    return;
+                }
+                if (result.isDone()) {
+                    permit.release();
+                    circuitBreaker.recordIgnored(apiConfig);
+                    return;
+                }
+                send(permit, attempt);
+            });
+        }
+
+        private void send(ApiRateLimiter.Permit permit, int attempt) {
+            // 在准入回调中执行，抛出的异常不会传给调用方，取密钥、构建请求失败时须在这里结束调用并归还许可
+            ApiKeyPool.Lease lease = null;
+            Call call;
+            try {
+                lease = keyPool.acquire(apiConfig);
+                call = clientRegistry.getClient(apiConfig).newCall(buildRequest(apiConfig, lease, messages, false));
+            } catch (RuntimeException e) {
+                permit.release();
+                if (lease != null) {
+                    lease.release();
+                }
+                circuitBreaker.recordIgnored(apiConfig);
+                log.error("API请求构建失败: apiConfigId={}, error={}", apiConfig.getId(), e.getMessage());
+                result.completeExceptionally(e);
+                return;
+            }
+            ApiKeyPool.Lease leased = lease;
+            currentCall = call;
+            call.enqueue(new Callback() {
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) {
+                    responded(permit, leased, response);
+                    String content;
+                    try (response) {
+                        if (!response.isSuccessful()) {
+                            throw ApiHttpException.of(response);
+                        }
+                        content = LlmJsonCodec.readChatContent(apiConfig.getProvider(), response.body().byteStream());
+                    } catch (IOException e) {
+                        release(permit, leased);
+                        onError(call, e, attempt);
+                        return;
+                    } catch (Exception e) {
+                        release(permit, leased);
+                        onError(call, new IOException(e.getMessage(), e), attempt);
+                        return;
+                    }
+                    release(permit, leased);
+                    circuitBreaker.recordSuccess(apiConfig);
+                    result.complete(content);
+                }
+
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    release(permit, leased);
+                    onError(call, e, attempt);
+                }
+            });
+            if (result.isDone()) {
+                call.cancel();
+            }
+        }
+
+        private void onError(Call call, IOException e, int attempt) {
+            if (call.isCanceled() || result.isDone()) {
+                circuitBreaker.recordIgnored(apiConfig);
+                return;
+            }
+            recordFailure(apiConfig, e);
+
+            long delay = retryDelay(e, attempt);
+            if (delay < 0) {
+                result.completeExceptionally(e);
+                return;
+            }
+            log.warn("API调用失败，{}ms后重试({}/{}): apiConfigId={}, error={}",
+                    delay, attempt + 1, maxRetries, apiConfig.getId(), e.getMessage());
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> attempt(attempt + 1));
+        }
+
+        void abort() {
+            CompletableFuture<ApiRateLimiter.Permit> permitFuture = pendingPermit;
+            if (permitFuture != null) {
+                permitFuture.cancel(false);
+            }
+            Call call = currentCall;
+            if (call != null) {
+                call.cancel();
+            }
+        }
+    }
+
+    /**
+     * 在一组等价的API配置上发送对冲请求
+     * 先调用第一个配置，超过对冲延迟仍未返回时把同一请求发给下一个配置，
+     * 取最先成功的结果并取消其余请求；某个请求失败时立即改用下一个配置。
+     * 熔断中的配置会被跳过，对冲本身即起到重试的作用，因此单个请求不再重试
+     *
+     * @param group 对冲组名称
+     * @param members 组内启用的API配置，第一个为主配置
+     * @param messages 消息列表
+     * @return AI响应内容
+     */
+    public String callAiApiHedged(String group, List<ApiConfig> members,
+                                  List<Map<String, String>> messages) throws IOException {
+        if (members.size() == 1) {
+            return callAiApi(members.get(0), messages);
+        }
+        hedgeStats.recordRequest(group);
+        long hedgeDelay = hedgeStats.hedgeDelay(group);
+
+        BlockingQueue<HedgeOutcome> outcomes = new LinkedBlockingQueue<>();
+        List<Call> calls = new ArrayList<>(members.size());
+        int pending = 0;
+        IOException lastError = null;
+        try {
+            // 第一个请求：依次跳过熔断中的配置
+            while (pending == 0 && calls.size() < members.size()) {
+                if (launchHedge(members.get(calls.size()), true, calls, messages, outcomes)) {
+                    pending++;
+                }
+            }
+            if (pending == 0) {
+                throw new RuntimeException("对冲组内的API服务暂时均不可用，请稍后重试");
+            }
+
+            while (pending > 0) {
+                HedgeOutcome outcome = calls.size() < members.size()
+                        ? outcomes.poll(hedgeDelay, TimeUnit.MILLISECONDS)
+                        : outcomes.take();
+
+                if (outcome == null) {
+                    // 超过对冲延迟仍未返回，发出对冲请求；对冲目标熔断中或已达准入上限时不排队，直接跳过
+                    if (launchHedge(members.get(calls.size()), false, calls, messages, outcomes)) {
+                        hedgeStats.recordHedgeFired(group);
+                        pending++;
+                    }
+                    continue;
+                }
+
+                pending--;
+                if (outcome.error == null) {
+                    hedgeStats.recordLatency(group, outcome.latencyMs);
+                    if (outcome.index > 0) {
+                        hedgeStats.recordHedgeWon(group);
+                    }
+                    return outcome.content;
+                }
+
+                lastError = outcome.error;
+                // 请求失败，立即改用下一个可用的配置
+                while (calls.size() < members.size()) {
+                    if (launchHedge(members.get(calls.size()), true, calls, messages, outcomes)) {
+                        hedgeStats.recordFailover(group);
+                        pending++;
+                        break;
+                    }
+                }
+            }
+            throw lastError;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("对冲请求被中断");
+        } finally {
+            // 取消尚未完成的请求
+            calls.stream().filter(Objects::nonNull).forEach(Call::cancel);
+        }
+    }
+
+    /**
+     * 发出对冲组中的一个请求，无法发出时在calls中占位null
+     *
+     * @param wait 是否在准入控制中排队等待
+     * @return 是否已发出
+     */
+    private boolean launchHedge(ApiConfig apiConfig, boolean wait, List<Call> calls,
+                                List<Map<String, String>> messages, BlockingQueue<HedgeOutcome> outcomes) {
+        if (!circuitBreaker.tryAcquire(apiConfig)) {
+            calls.add(null);
+            return false;
+        }
+        ApiRateLimiter.Permit permit;
+        try {
+            permit = wait ? rateLimiter.acquire(apiConfig) : rateLimiter.tryAcquire(apiConfig);
+        } catch (RuntimeException e) {
+            circuitBreaker.recordIgnored(apiConfig);
+            throw e;
+        }
+        if (permit == null) {
+            circuitBreaker.recordIgnored(apiConfig);
+            calls.add(null);
+            return false;
+        }
+        calls.add(enqueueHedge(apiConfig, permit, calls.size(), messages, outcomes));
+        return true;
+    }
+
+    /**
+     * 异步发出对冲组中的一个请求，结果放入outcomes
+     */
+    private Call enqueueHedge(ApiConfig apiConfig, ApiRateLimiter.Permit permit, int index,
+                              List<Map<String, String>> messages, BlockingQueue<HedgeOutcome> outcomes) {
+        long startTime = System.currentTimeMillis();
+        ApiKeyPool.Lease lease = null;
+        Call call;
+        try {
+            lease = keyPool.acquire(apiConfig);
+            call = clientRegistry.getClient(apiConfig).newCall(buildRequest(apiConfig, lease, messages, false));
+        } catch (RuntimeException e) {
+            permit.release();
+            if (lease != null) {
+                lease.release();
+            }
+            circuitBreaker.recordIgnored(apiConfig);
+            throw e;
+        }
+        ApiKeyPool.Lease leased = lease;
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                responded(permit, leased, response);
+                try (response) {
+                    if (!response.isSuccessful()) {
+                        throw ApiHttpException.of(response);
+                    }
+                    String content = LlmJsonCodec.readChatContent(apiConfig.getProvider(), response.body().byteStream());
+                    circuitBreaker.recordSuccess(apiConfig);
+                    outcomes.offer(new HedgeOutcome(index, content, null, System.currentTimeMillis() - startTime));
+                } catch (IOException e) {
+                    onError(call, e);
+                } catch (Exception e) {
+                    onError(call, new IOException(e.getMessage(), e));
+                } finally {
+                    release(permit, leased);
+                }
+            }
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                release(permit, leased);
+                onError(call, e);
+            }
+
+            private void onError(Call call, IOException e) {
+                if (call.isCanceled()) {
+                    circuitBreaker.recordIgnored(apiConfig);
+                } else {
+                    recordFailure(apiConfig, e);
+                }
+                outcomes.offer(new HedgeOutcome(index, null, e, 0));
+            }
+        });
+        return call;
+    }
+
+    /**
+     * 以流式模式调用AI API
+     * 开启提供商的stream参数，逐行读取SSE响应，每收到一段增量内容就回调onDelta。
+     * 只有在尚未推送任何内容时才会重试
+     *
+     * @param apiConfig API配置
+     * @param messages 消息列表
+     * @param onDelta 增量内容回调
+     * @return 完整的AI响应内容
+     */
+    public String streamAiApi(ApiConfig apiConfig, List<Map<String, String>> messages,
+                              Consumer<String> onDelta) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int attempt = 0; ; attempt++) {
+            circuitBreaker.check(apiConfig);
+            try {
+                streamOnce(apiConfig, messages, content, onDelta);
+                circuitBreaker.recordSuccess(apiConfig);
+                return content.toString();
+            } catch (IOException e) {
+                recordFailure(apiConfig, e);
+                if (content.length() > 0) {
+                    // 已经推送了部分内容，重试会导致内容重复
+                    throw e;
+                }
+                backoffOrThrow(apiConfig, e, attempt);
+            } catch (RuntimeException e) {
+                circuitBreaker.recordIgnored(apiConfig);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 发送一次流式请求，增量内容追加到content
+     */
+    private void streamOnce(ApiConfig apiConfig, List<Map<String, String>> messages,
+                            StringBuilder content, Consumer<String> onDelta) throws IOException {
+        OkHttpClient client = clientRegistry.getClient(apiConfig);
+
+        ApiRateLimiter.Permit permit = rateLimiter.acquire(apiConfig);
+        ApiKeyPool.Lease lease = null;
+        try {
+            lease = keyPool.acquire(apiConfig);
+            readStream(client.newCall(buildRequest(apiConfig, lease, messages, true)), permit, lease,
+                    apiConfig, content, onDelta);
+        } finally {
+            permit.release();
+            if (lease != null) {
+                lease.release();
+            }
+        }
+    }
+
+    /**
+     * 执行流式请求并逐行读取SSE响应
+     */
+    private void readStream(Call call, ApiRateLimiter.Permit permit, ApiKeyPool.Lease lease, ApiConfig apiConfig,
+                            StringBuilder content, Consumer<String> onDelta) throws IOException {
+        try (Response response = call.execute()) {
+            responded(permit, lease, response);
+            if (!response.isSuccessful()) {
+                throw ApiHttpException.of(response);
+            }
+
+            BufferedSource source = response.body().source();
+            String delta;
+            while ((delta = nextDelta(source, apiConfig.getProvider())) != null) {
+                content.append(delta);
+                onDelta.accept(delta);
+            }
+        }
+    }
+
+    /**
+     * 读取SSE响应中的下一段增量内容，流结束时返回null
+     */
+    private static String nextDelta(BufferedSource source, String provider) throws IOException {
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            // SSE格式：只处理 data: 行，忽略 event:、注释和空行
+            if (!line.startsWith("data:")) {
+                continue;
+            }
+            String data = line.substring(5).trim();
+            if (data.isEmpty()) {
+                continue;
+            }
+            if ("[DONE]".equals(data)) {
+                return null;
+            }
+
+            String delta = LlmJsonCodec.readStreamDelta(provider, data);
+            if (delta != null && !delta.isEmpty()) {
+                return delta;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在一组等价的API配置上以流式模式发送对冲请求
+     * 与 {@link #callAiApiHedged} 相同的发出和切换规则，以收到第一段增量内容为准：
+     * 最先收到首段内容的请求胜出，其余请求立即取消，之后在调用方线程中继续读取胜出的流。
+     * 对冲延迟按首段内容的耗时单独统计（统计组名为 对冲组名 + ":stream"）；
+     * 已推送内容后出错不再切换，直接失败
+     *
+     * @param group 对冲组名称
+     * @param members 组内启用的API配置，第一个为主配置
+     * @param messages 消息列表
+     * @param onDelta 增量内容回调
+     * @return 完整的AI响应内容
+     */
+    public String streamAiApiHedged(String group, List<ApiConfig> members, List<Map<String, String>> messages,
+                                    Consumer<String> onDelta) throws IOException {
+        if (members.size() == 1) {
+            return streamAiApi(members.get(0), messages, onDelta);
+        }
+        String statsGroup = group + STREAM_HEDGE_SUFFIX;
+        hedgeStats.recordRequest(statsGroup);
+        long hedgeDelay = hedgeStats.hedgeDelay(statsGroup);
+
+        BlockingQueue<StreamHedge> opened = new LinkedBlockingQueue<>();
+        List<StreamHedge> hedges = new ArrayList<>(members.size());
+        StreamHedge winner = null;
+        int pending = 0;
+        IOException lastError = null;
+        try {
+            // 第一个请求：依次跳过熔断中的配置
+            while (pending == 0 && hedges.size() < members.size()) {
+                if (launchStreamHedge(members.get(hedges.size()), true, hedges, messages, opened)) {
+                    pending++;
+                }
+            }
+            if (pending == 0) {
+                throw new RuntimeException("对冲组内的API服务暂时均不可用，请稍后重试");
+            }
+
+            while (winner == null && pending > 0) {
+                StreamHedge hedge = hedges.size() < members.size()
+                        ? opened.poll(hedgeDelay, TimeUnit.MILLISECONDS)
+                        : opened.take();
+
+                if (hedge == null) {
+                    // 超过对冲延迟仍未收到首段内容，发出对冲请求；对冲目标熔断中或已达准入上限时跳过
+                    if (launchStreamHedge(members.get(hedges.size()), false, hedges, messages, opened)) {
+                        hedgeStats.recordHedgeFired(statsGroup);
+                        pending++;
+                    }
+                    continue;
+                }
+
+                pending--;
+                if (hedge.error == null) {
+                    winner = hedge;
+                    hedgeStats.recordLatency(statsGroup, hedge.firstDeltaMs);
+                    if (hedge.index > 0) {
+                        hedgeStats.recordHedgeWon(statsGroup);
+                    }
+                    break;
+                }
+
+                lastError = hedge.error;
+                // 请求失败，立即改用下一个可用的配置
+                while (hedges.size() < members.size()) {
+                    if (launchStreamHedge(members.get(hedges.size()), true, hedges, messages, opened)) {
+                        hedgeStats.recordFailover(statsGroup);
+                        pending++;
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("对冲请求被中断");
+        } finally {
+            // 取消未胜出的请求
+            for (StreamHedge hedge : hedges) {
+                if (hedge != null && hedge != winner) {
+                    hedge.cancel();
+                }
+            }
+        }
+        if (winner == null) {
+            throw lastError;
+        }
+        return winner.readRest(onDelta);
+    }
+
+    /**
+     * 发出对冲组中的一个流式请求，无法发出时在hedges中占位null
+     *
+     * @param wait 是否在准入控制中排队等待
+     * @return 是否已发出
+     */
+    private boolean launchStreamHedge(ApiConfig apiConfig, boolean wait, List<StreamHedge> hedges,
+                                      List<Map<String, String>> messages, BlockingQueue<StreamHedge> opened) {
+        if (!circuitBreaker.tryAcquire(apiConfig)) {
+            hedges.add(null);
+            return false;
+        }
+        ApiRateLimiter.Permit permit;
+        try {
+            permit = wait ? rateLimiter.acquire(apiConfig) : rateLimiter.tryAcquire(apiConfig);
+        } catch (RuntimeException e) {
+            circuitBreaker.recordIgnored(apiConfig);
+            throw e;
+        }
+        if (permit == null) {
+            circuitBreaker.recordIgnored(apiConfig);
+            hedges.add(null);
+            return false;
+        }
+        ApiKeyPool.Lease lease = null;
+        Call call;
+        try {
+            lease = keyPool.acquire(apiConfig);
+            call = clientRegistry.getClient(apiConfig).newCall(buildRequest(apiConfig, lease, messages, true));
+        } catch (RuntimeException e) {
+            permit.release();
+            if (lease != null) {
+                lease.release();
+            }
+            circuitBreaker.recordIgnored(apiConfig);
+            throw e;
+        }
+        StreamHedge hedge = new StreamHedge(apiConfig, permit, lease, call, hedges.size());
+        hedges.add(hedge);
+        hedge.open(opened);
+        return true;
+    }
+
+    /**
+     * 把响应状态记入准入控制和密钥池（收到响应头时调用）
+     */
+    private static void responded(ApiRateLimiter.Permit permit, ApiKeyPool.Lease lease, Response response) {
+        boolean keyThrottled = lease.responded(response.code(),
+                ApiHttpException.parseRetryAfter(response.header("Retry-After")));
+        permit.responded(response.code(), keyThrottled);
+    }
+
+    private static void release(ApiRateLimiter.Permit permit, ApiKeyPool.Lease lease) {
+        permit.release();
+        lease.release();
+    }
+
+    /**
+     * 按失败类型更新熔断器：网络错误、超时和5xx计为提供商故障，其余（4xx、429）说明提供商仍在响应
+     */
+    private void recordFailure(ApiConfig apiConfig, IOException e) {
+        if (e instanceof ApiHttpException) {
+            int status = ((ApiHttpException) e).statusCode;
+            if (status >= 500 || status == 408) {
+                circuitBreaker.recordFailure(apiConfig);
+            } else {
+                circuitBreaker.recordSuccess(apiConfig);
+            }
+        } else {
+            circuitBreaker.recordFailure(apiConfig);
+        }
+    }
+
+    /**
+     * 可重试时按退避时间等待，否则抛出原异常
+     */
+    private void backoffOrThrow(ApiConfig apiConfig, IOException e, int attempt) throws IOException {
+        long delay = retryDelay(e, attempt);
+        if (delay < 0) {
+            throw e;
+        }
+        log.warn("API调用失败，{}ms后重试({}/{}): apiConfigId={}, error={}",
+                delay, attempt + 1, maxRetries, apiConfig.getId(), e.getMessage());
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("重试等待被中断");
+        }
+    }
+
+    /**
+     * 计算重试前的等待时间，不应重试时返回-1
+     * 退避时间 = [0, min(上限, 基础延迟 * 2^attempt)] 内的随机值（full jitter），
+     * 响应带Retry-After时不少于该值
+     */
+    private long retryDelay(IOException e, int attempt) {
+        if (attempt >= maxRetries || !isRetryable(e)) {
+            return -1;
+        }
+        long ceiling = Math.min(retryMaxDelayMs, retryBaseDelayMs << Math.min(attempt, 20));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        if (e instanceof ApiHttpException && ((ApiHttpException) e).retryAfterMs >= 0) {
+            long retryAfter = ((ApiHttpException) e).retryAfterMs;
+            if (retryAfter > maxRetryAfterMs) {
+                return -1;
+            }
+            delay = Math.max(delay, retryAfter);
+        }
+        return delay;
+    }
+
+    /**
+     * 网络错误、超时、408、429和5xx可以重试；其余4xx说明请求本身有问题，重试无意义
+     */
+    private boolean isRetryable(IOException e) {
+        if (e instanceof ApiHttpException) {
+            int status = ((ApiHttpException) e).statusCode;
+            return status == 408 || status == 429 || status >= 500;
+        }
+        return !(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException;
+    }
+
+    /**
+     * 构建HTTP请求（URL、请求体和认证头）
+     */
+    private Request buildRequest(ApiConfig apiConfig, ApiKeyPool.Lease lease,
+                                 List<Map<String, String>> messages, boolean stream) {
+        // 构建最终的API URL（支持模型名称占位符），密钥和端点取自密钥池
+        String finalUrl = buildFinalUrl(lease.getEndpoint(), apiConfig.getModelName());
+        String apiKey = lease.getApiKey();
         
+        // 根据不同的provider构建请求（请求体在发送时直接写入连接）
         Request.Builder requestBuilder = new Request.Builder()
                 .url(finalUrl)
-                .post(RequestBody.create(requestBody, JSON_MEDIA_TYPE));
+                .post(LlmJsonCodec.chatRequest(apiConfig, messages, stream));
+
+        if (stream) {
+            requestBuilder.addHeader("Accept", "text/event-stream");
+        }
 
         // 添加认证头
-        if (apiConfig.getApiKey() != null && !apiConfig.getApiKey().isEmpty()) {
+        if (apiKey != null && !apiKey.isEmpty()) {
             switch (apiConfig.getProvider().toUpperCase()) {
                 case "OPENAI":
                 case "DEEPSEEK":  // DeepSeek兼容OpenAI格式
-                    requestBuilder.addHeader("Authorization", "Bearer " + apiConfig.getApiKey());
+                    requestBuilder.addHeader("Authorization", "Bearer " + apiKey);
                     break;
                 case "ANTHROPIC":
-                    requestBuilder.addHeader("x-api-key", apiConfig.getApiKey());
+                    requestBuilder.addHeader("x-api-key", apiKey);
                     requestBuilder.addHeader("anthropic-version", "2023-06-01");
                     break;
                 default:
-                    requestBuilder.addHeader("Authorization", "Bearer " + apiConfig.getApiKey());
+                    requestBuilder.addHeader("Authorization", "Bearer " + apiKey);
             }
         }
 
-        Request request = requestBuilder.build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("API调用失败: " + response.code() + " - " + response.message());
-            }
-
-            String responseBody = response.body().string();
-            return parseResponse(apiConfig.getProvider(), responseBody);
-        }
+        return requestBuilder.build();
     }
 
     /**
@@ -81,10 +791,7 @@ public class AiApiClient {
      * 1. URL中包含{model}占位符：https://api.example.com/v1/chat/{model}
      * 2. 标准URL：https://api.openai.com/v1/chat/completions
      */
-    private String buildFinalUrl(ApiConfig apiConfig) {
-        String url = apiConfig.getApiEndpoint();
-        String modelName = apiConfig.getModelName();
-        
+    private String buildFinalUrl(String url, String modelName) {
         // 如果URL中包含{model}或{modelName}占位符，替换为实际的模型名称
         if (url.contains("{model}")) {
             return url.replace("{model}", modelName);
@@ -102,90 +809,214 @@ public class AiApiClient {
     }
 
     /**
-     * 构建请求体
+     * 对冲组中的一个流式请求
+     * 在OkHttp回调中读到首段内容（或出错）后放入队列；胜出的请求由调用方线程继续读取，
+     * 其余请求被取消。许可、密钥和熔断结果只结算一次
      */
-    private String buildRequestBody(ApiConfig apiConfig, List<Map<String, String>> messages) {
-        Map<String, Object> requestBody = new HashMap<>();
-        
-        // 判断URL中是否已包含模型名称（避免重复）
-        boolean modelInUrl = apiConfig.getApiEndpoint().contains("{model}") 
-                          || apiConfig.getApiEndpoint().contains("{modelName}");
-
-        switch (apiConfig.getProvider().toUpperCase()) {
-            case "OPENAI":
-            case "DEEPSEEK":  // DeepSeek兼容OpenAI格式
-            case "LOCAL":
-                // 只有当模型名称不在URL中时，才添加到请求体
-                if (!modelInUrl) {
-                    requestBody.put("model", apiConfig.getModelName());
-                }
-                requestBody.put("messages", messages);
-                requestBody.put("max_tokens", apiConfig.getMaxTokens());
-                requestBody.put("temperature", apiConfig.getTemperature());
-                break;
-
-            case "ANTHROPIC":
-                // Claude通常不使用URL路径模式
-                requestBody.put("model", apiConfig.getModelName());
-                requestBody.put("max_tokens", apiConfig.getMaxTokens());
-                requestBody.put("temperature", apiConfig.getTemperature());
-                
-                // Claude使用不同的消息格式
-                List<Map<String, String>> claudeMessages = new ArrayList<>();
-                String systemMessage = null;
-                
-                for (Map<String, String> msg : messages) {
-                    if ("system".equals(msg.get("role"))) {
-                        systemMessage = msg.get("content");
-                    } else {
-                        claudeMessages.add(msg);
+    private class StreamHedge {
+        private final ApiConfig apiConfig;
+        private final ApiRateLimiter.Permit permit;
+        private final ApiKeyPool.Lease lease;
+        private final Call call;
+        private final int index;
+        private final long startTime = System.currentTimeMillis();
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private volatile Response response;
+        /**
+         * 回调已读完首段内容，之后响应由调用方线程读取或关闭
+         */
+        private volatile boolean handedOver;
+        /**
+         * 首段内容，流中没有任何内容时为空字符串
+         */
+        private String firstDelta;
+        private long firstDeltaMs;
+        private IOException error;
+
+        StreamHedge(ApiConfig apiConfig, ApiRateLimiter.Permit permit, ApiKeyPool.Lease lease, Call call, int index) {
+            this.apiConfig = apiConfig;
+            this.permit = permit;
+            this.lease = lease;
+            this.call = call;
+            this.index = index;
+        }
+
+        void open(BlockingQueue<StreamHedge> opened) {
+            call.enqueue(new Callback() {
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response httpResponse) {
+                    response = httpResponse;
+                    if (finished.get()) {
+                        // 已被取消
+                        httpResponse.close();
+                        return;
+                    }
+                    responded(permit, lease, httpResponse);
+                    try {
+                        if (!httpResponse.isSuccessful()) {
+                            throw ApiHttpException.of(httpResponse);
+                        }
+                        String delta = nextDelta(httpResponse.body().source(), apiConfig.getProvider());
+                        firstDelta = delta != null ? delta : "";
+                        firstDeltaMs = System.currentTimeMillis() - startTime;
+                    } catch (IOException e) {
+                        failed(e, opened);
+                        return;
+                    } catch (Exception e) {
+                        failed(new IOException(e.getMessage(), e), opened);
+                        return;
+                    }
+                    handedOver = true;
+                    if (finished.get()) {
+                        // 读取首段内容期间已被取消
+                        httpResponse.close();
+                        return;
                     }
+                    opened.offer(StreamHedge.this);
                 }
-                
-                requestBody.put("messages", claudeMessages);
-                if (systemMessage != null) {
-                    requestBody.put("system", systemMessage);
+
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    failed(e, opened);
                 }
-                break;
+            });
+        }
 
-            default:
-                // 默认使用OpenAI格式
-                if (!modelInUrl) {
-                    requestBody.put("model", apiConfig.getModelName());
+        private void failed(IOException e, BlockingQueue<StreamHedge> opened) {
+            closeResponse();
+            if (finish()) {
+                if (call.isCanceled()) {
+                    circuitBreaker.recordIgnored(apiConfig);
+                } else {
+                    recordFailure(apiConfig, e);
                 }
-                requestBody.put("messages", messages);
-                requestBody.put("max_tokens", apiConfig.getMaxTokens());
-                requestBody.put("temperature", apiConfig.getTemperature());
+            }
+            error = e;
+            opened.offer(this);
         }
 
-        return JSONUtil.toJsonStr(requestBody);
+        /**
+         * 在调用方线程中推送首段内容并读取剩余的流
+         */
+        String readRest(Consumer<String> onDelta) throws IOException {
+            StringBuilder content = new StringBuilder(firstDelta);
+            try {
+                if (!firstDelta.isEmpty()) {
+                    onDelta.accept(firstDelta);
+                    String delta;
+                    while ((delta = nextDelta(response.body().source(), apiConfig.getProvider())) != null) {
+                        content.append(delta);
+                        onDelta.accept(delta);
+                    }
+                }
+            } catch (IOException e) {
+                if (finish()) {
+                    recordFailure(apiConfig, e);
+                }
+                throw e;
+            } catch (RuntimeException e) {
+                if (finish()) {
+                    circuitBreaker.recordIgnored(apiConfig);
+                }
+                throw e;
+            } finally {
+                closeResponse();
+            }
+            if (finish()) {
+                circuitBreaker.recordSuccess(apiConfig);
+            }
+            return content.toString();
+        }
+
+        /**
+         * 取消请求；回调仍在读取首段内容时由回调自行关闭响应，不在这里并发关闭
+         */
+        void cancel() {
+            if (finish()) {
+                circuitBreaker.recordIgnored(apiConfig);
+            }
+            call.cancel();
+            if (handedOver) {
+                closeResponse();
+            }
+        }
+
+        /**
+         * 归还许可和密钥，只有第一次调用返回true
+         */
+        private boolean finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return false;
+            }
+            release(permit, lease);
+            return true;
+        }
+
+        private void closeResponse() {
+            Response current = response;
+            if (current != null) {
+                current.close();
+            }
+        }
     }
 
     /**
-     * 解析响应
+     * 对冲组中单个请求的结果
      */
-    private String parseResponse(String provider, String responseBody) {
-        JSONObject jsonResponse = JSONUtil.parseObj(responseBody);
+    private static class HedgeOutcome {
+        private final int index;
+        private final String content;
+        private final IOException error;
+        private final long latencyMs;
 
-        switch (provider.toUpperCase()) {
-            case "OPENAI":
-            case "DEEPSEEK":  // DeepSeek使用OpenAI响应格式
-            case "LOCAL":
-                return jsonResponse.getByPath("choices[0].message.content", String.class);
+        HedgeOutcome(int index, String content, IOException error, long latencyMs) {
+            this.index = index;
+            this.content = content;
+            this.error = error;
+            this.latencyMs = latencyMs;
+        }
+    }
 
-            case "ANTHROPIC":
-                return jsonResponse.getByPath("content[0].text", String.class);
+    /**
+     * 提供商返回的非2xx响应
+     */
+    private static class ApiHttpException extends IOException {
+        private final int statusCode;
+        /**
+         * Retry-After头指定的等待时间（毫秒），没有时为-1
+         */
+        private final long retryAfterMs;
 
-            default:
-                // 尝试多种可能的路径
-                String content = jsonResponse.getByPath("choices[0].message.content", String.class);
-                if (content == null) {
-                    content = jsonResponse.getByPath("content[0].text", String.class);
-                }
-                if (content == null) {
-                    content = jsonResponse.getStr("content");
-                }
-                return content;
+        ApiHttpException(String message, int statusCode, long retryAfterMs) {
+            super(message);
+            this.statusCode = statusCode;
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        static ApiHttpException of(Response response) {
+            return new ApiHttpException("API调用失败: " + response.code() + " - " + response.message(),
+                    response.code(), parseRetryAfter(response.header("Retry-After")));
+        }
+
+        /**
+         * 解析Retry-After：秒数或HTTP日期
+         */
+        private static long parseRetryAfter(String value) {
+            if (value == null || value.isBlank()) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(value.trim()) * 1000;
+            } catch (NumberFormatException ignored) {
+                // 不是秒数，按HTTP日期解析
+            }
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+            } catch (Exception ignored) {
+                return -1;
+            }
         }
     }
 }
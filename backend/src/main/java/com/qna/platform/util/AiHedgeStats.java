@@ -0,0 +1,146 @@
+package com.qna.platform.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对冲请求统计
+ * 按对冲组记录最近的成功响应耗时，用其p95作为对冲延迟（限制在最小/最大值之间），
+ * 并统计对冲发出次数和对冲请求胜出次数
+ *
+ * @author QnA Platform
+ */
+@Component
+public class AiHedgeStats {
+
+    /**
+     * 每组保留的耗时样本数
+     */
+    private static final int WINDOW_SIZE = 256;
+
+    /**
+     * 样本数不足时使用初始延迟
+     */
+    private static final int MIN_SAMPLES = 20;
+
+    private final long initialDelayMs;
+    private final long minDelayMs;
+    private final long maxDelayMs;
+
+    private final Map<String, GroupStats> groups = new ConcurrentHashMap<>();
+
+    public AiHedgeStats(
+            @Value("${app.api.hedge.initial-delay:3000}") long initialDelayMs,
+            @Value("${app.api.hedge.min-delay:500}") long minDelayMs,
+            @Value("${app.api.hedge.max-delay:30000}") long maxDelayMs) {
+        this.initialDelayMs = initialDelayMs;
+        this.minDelayMs = minDelayMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * 当前的对冲延迟（毫秒）
+     */
+    public long hedgeDelay(String group) {
+        long p95 = get(group).p95();
+        if (p95 < 0) {
+            return initialDelayMs;
+        }
+        return Math.max(minDelayMs, Math.min(maxDelayMs, p95));
+    }
+
+    public void recordRequest(String group) {
+        get(group).requests.increment();
+    }
+
+    /**
+     * 记录一次成功响应的耗时（从该请求发出时算起）
+     */
+    public void recordLatency(String group, long latencyMs) {
+        get(group).record(latencyMs);
+    }
+
+    public void recordHedgeFired(String group) {
+        get(group).hedgesFired.increment();
+    }
+
+    public void recordHedgeWon(String group) {
+        get(group).hedgesWon.increment();
+    }
+
+    public void recordFailover(String group) {
+        get(group).failovers.increment();
+    }
+
+    /**
+     * 各对冲组的统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        groups.forEach((group, stats) -> {
+            long requests = stats.requests.sum();
+            long fired = stats.hedgesFired.sum();
+            long won = stats.hedgesWon.sum();
+
+            Map<String, Object> item = new HashMap<>();
+            item.put("requests", requests);
+            item.put("hedgesFired", fired);
+            item.put("hedgesWon", won);
+            item.put("failovers", stats.failovers.sum());
+            item.put("hedgeRate", requests == 0 ? 0.0 : (double) fired / requests);
+            item.put("hedgeWinRate", fired == 0 ? 0.0 : (double) won / fired);
+            item.put("p95Ms", stats.p95());
+            item.put("hedgeDelayMs", hedgeDelay(group));
+            result.put(group, item);
+        });
+        return result;
+    }
+
+    private GroupStats get(String group) {
+        return groups.computeIfAbsent(group, g -> new GroupStats());
+    }
+
+    /**
+     * 单个对冲组的统计
+     */
+    private static class GroupStats {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder hedgesFired = new LongAdder();
+        private final LongAdder hedgesWon = new LongAdder();
+        private final LongAdder failovers = new LongAdder();
+
+        /**
+         * 最近的耗时样本（环形缓冲）
+         */
+        private final long[] latencies = new long[WINDOW_SIZE];
+        private int count;
+        private int next;
+
+        synchronized void record(long latencyMs) {
+            latencies[next] = latencyMs;
+            next = (next + 1) % WINDOW_SIZE;
+            if (count < WINDOW_SIZE) {
+                count++;
+            }
+        }
+
+        /**
+         * 最近样本的p95，样本不足时返回-1
+         */
+        synchronized long p95() {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(count * 0.95) - 1];
+        }
+    }
+}
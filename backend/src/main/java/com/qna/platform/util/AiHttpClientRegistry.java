@@ -0,0 +1,180 @@
+package com.qna.platform.util;
+
+import com.qna.platform.entity.ApiConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大模型HTTP客户端注册表
+ * 按API配置ID缓存OkHttpClient，所有客户端共享同一个连接池和调度器，
+ * 避免每次对话都新建连接池并重新进行TLS握手
+ *
+ * @author QnA Platform
+ */
+@Slf4j
+@Component
+public class AiHttpClientRegistry {
+
+    /**
+     * 连接池最大空闲连接数
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 50;
+
+    /**
+     * 空闲连接保活时间（分钟）
+     */
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    /**
+     * HTTP/2 心跳间隔，保持长连接不被中间设备断开
+     */
+    private static final Duration PING_INTERVAL = Duration.ofSeconds(30);
+
+    private final OkHttpClient baseClient;
+
+    private final Map<Long, CachedClient> clients = new ConcurrentHashMap<>();
+
+    @Value("${app.api.default-timeout:30000}")
+    private int defaultTimeoutMillis;
+
+    public AiHttpClientRegistry() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(256);
+        dispatcher.setMaxRequestsPerHost(64);
+
+        this.baseClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .pingInterval(PING_INTERVAL)
+                .retryOnConnectionFailure(true)
+                .build();
+    }
+
+    /**
+     * 获取API配置对应的HTTP客户端
+     * 超时时间变化时重新构建，其余情况复用已有客户端
+     *
+     * @param apiConfig API配置
+     * @return HTTP客户端
+     */
+    public OkHttpClient getClient(ApiConfig apiConfig) {
+        Duration timeout = resolveTimeout(apiConfig);
+
+        // 未保存的配置（没有ID）不缓存，但仍共享连接池
+        if (apiConfig.getId() == null) {
+            return buildClient(timeout);
+        }
+
+        CachedClient cached = clients.compute(apiConfig.getId(), (id, existing) ->
+                existing != null && existing.timeout.equals(timeout)
+                        ? existing
+                        : new CachedClient(timeout, buildClient(timeout)));
+        return cached.client;
+    }
+
+    /**
+     * 使API配置对应的客户端失效，下次调用时重新构建
+     *
+     * @param apiConfigId API配置ID
+     */
+    public void invalidate(Long apiConfigId) {
+        if (apiConfigId != null && clients.remove(apiConfigId) != null) {
+            log.info("API客户端已失效，将在下次调用时重建: apiConfigId={}", apiConfigId);
+        }
+    }
+
+    /**
+     * 预热连接：向API端点所在主机发送一个HEAD请求，
+     * 提前完成DNS解析、TCP连接和TLS握手，连接随后留在连接池中供对话复用
+     *
+     * @param apiConfig API配置
+     */
+    public void warmUp(ApiConfig apiConfig) {
+        HttpUrl origin = resolveOrigin(apiConfig.getApiEndpoint());
+        if (origin == null) {
+            log.warn("API端点无法解析，跳过预热: apiConfigId={}", apiConfig.getId());
+            return;
+        }
+
+        Request request = new Request.Builder().url(origin).head().build();
+        getClient(apiConfig).newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                log.debug("API连接预热完成: {} -> {}", origin, response.protocol());
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                log.warn("API连接预热失败: {} - {}", origin, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 关闭调度器线程并释放连接
+     */
+    @PreDestroy
+    public void shutdown() {
+        baseClient.dispatcher().executorService().shutdown();
+        baseClient.connectionPool().evictAll();
+    }
+
+    private OkHttpClient buildClient(Duration timeout) {
+        // newBuilder() 共享 baseClient 的连接池和调度器
+        return baseClient.newBuilder()
+                .connectTimeout(timeout)
+                .readTimeout(timeout)
+                .writeTimeout(timeout)
+                .build();
+    }
+
+    private Duration resolveTimeout(ApiConfig apiConfig) {
+        if (apiConfig.getTimeout() != null && apiConfig.getTimeout() > 0) {
+            return Duration.ofSeconds(apiConfig.getTimeout());
+        }
+        return Duration.ofMillis(defaultTimeoutMillis);
+    }
+
+    /**
+     * 取端点的协议、主机和端口部分（去掉模型名称占位符和路径）
+     */
+    private HttpUrl resolveOrigin(String endpoint) {
+        if (endpoint == null || endpoint.isEmpty()) {
+            return null;
+        }
+        HttpUrl url = HttpUrl.parse(endpoint.replace("{model}", "").replace("{modelName}", ""));
+        if (url == null) {
+            return null;
+        }
+        return new HttpUrl.Builder()
+                .scheme(url.scheme())
+                .host(url.host())
+                .port(url.port())
+                .build();
+    }
+
+    /**
+     * 缓存的客户端及其超时时间
+     */
+    private static class CachedClient {
+        private final Duration timeout;
+        private final OkHttpClient client;
+
+        CachedClient(Duration timeout, OkHttpClient client) {
+            this.timeout = timeout;
+            this.client = client;
+        }
+    }
+}
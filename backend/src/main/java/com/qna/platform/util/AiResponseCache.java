@@ -0,0 +1,245 @@
+package com.qna.platform.util;
+
+import cn.hutool.crypto.SecureUtil;
+import com.qna.platform.entity.ApiConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 大模型回复缓存（精确匹配）
+ * 按API配置开启，key为 配置ID、提供商、模型、温度、最大token数和规范化后消息列表的哈希，
+ * 按条数和字节数做LRU淘汰，条目按API配置的TTL过期。
+ * 相同提示词的并发请求只发起一次上游调用（single-flight），其余请求等待共享结果
+ *
+ * @author QnA Platform
+ */
+@Slf4j
+@Component
+public class AiResponseCache {
+
+    /**
+     * 未配置TTL时的默认有效期（秒）
+     */
+    private static final int DEFAULT_TTL_SECONDS = 3600;
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    /**
+     * 正在进行的上游调用，key同缓存key
+     */
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public AiResponseCache(
+            @Value("${app.api.response-cache.max-entries:5000}") int maxEntries,
+            @Value("${app.api.response-cache.max-bytes:67108864}") long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 计算缓存key
+     */
+    public String key(ApiConfig apiConfig, List<Map<String, String>> messages) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(apiConfig.getId()).append('\n')
+                .append(apiConfig.getProvider()).append('\n')
+                .append(apiConfig.getModelName()).append('\n')
+                .append(apiConfig.getTemperature() != null ? apiConfig.getTemperature().stripTrailingZeros().toPlainString() : "")
+                .append('\n')
+                .append(apiConfig.getMaxTokens()).append('\n');
+        for (Map<String, String> message : messages) {
+            sb.append(message.get("role")).append('\u0001')
+                    .append(normalize(message.get("content"))).append('\u0002');
+        }
+        return SecureUtil.sha256(sb.toString());
+    }
+
+    /**
+     * 读取缓存，未命中或已过期时返回null（不计入统计）
+     */
+    public synchronized String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt < System.currentTimeMillis()) {
+            remove(key);
+            return null;
+        }
+        return entry.content;
+    }
+
+    /**
+     * 读取缓存，未命中时调用loader并写入缓存；相同key的并发调用共享同一次loader结果
+     *
+     * @param apiConfig API配置（用于TTL和按配置失效）
+     * @param key 缓存key
+     * @param loader 上游调用
+     * @return 回复内容
+     */
+    public String getOrLoad(ApiConfig apiConfig, String key, Supplier<String> loader) {
+        String cached = get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            // 已有相同请求在调用上游，等待其结果
+            coalesced.increment();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause()
+                        : new RuntimeException(e.getCause());
+            }
+        }
+
+        misses.increment();
+        try {
+            String content = loader.get();
+            put(apiConfig, key, content);
+            future.complete(content);
+            return content;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 写入缓存
+     */
+    public synchronized void put(ApiConfig apiConfig, String key, String content) {
+        if (content == null || content.isEmpty()) {
+            return;
+        }
+        long size = (long) content.length() * 2 + key.length() * 2L;
+        if (size > maxBytes) {
+            return;
+        }
+        int ttl = apiConfig.getResponseCacheTtl() != null && apiConfig.getResponseCacheTtl() > 0
+                ? apiConfig.getResponseCacheTtl()
+                : DEFAULT_TTL_SECONDS;
+
+        remove(key);
+        entries.put(key, new Entry(apiConfig.getId(), content, size, System.currentTimeMillis() + ttl * 1000L));
+        totalBytes += size;
+
+        // 按条数和字节数淘汰最久未访问的条目
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalBytes > maxBytes) && iterator.hasNext()) {
+            totalBytes -= iterator.next().getValue().size;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 清除某个API配置的所有缓存（配置修改或删除时使用）
+     */
+    public synchronized void invalidate(Long apiConfigId) {
+        entries.entrySet().removeIf(e -> {
+            if (e.getValue().apiConfigId != null && e.getValue().apiConfigId.equals(apiConfigId)) {
+                totalBytes -= e.getValue().size;
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * 定期清理过期条目
+     */
+    @Scheduled(fixedDelay = 60000)
+    public synchronized void evictExpired() {
+        long now = System.currentTimeMillis();
+        entries.entrySet().removeIf(e -> {
+            if (e.getValue().expireAt < now) {
+                totalBytes -= e.getValue().size;
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * 缓存统计
+     */
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long coalescedCount = coalesced.sum();
+        long total = hitCount + missCount + coalescedCount;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("coalesced", coalescedCount);
+        stats.put("hitRate", total == 0 ? 0.0 : (double) (hitCount + coalescedCount) / total);
+        synchronized (this) {
+            stats.put("entries", entries.size());
+            stats.put("bytes", totalBytes);
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("maxBytes", maxBytes);
+        stats.put("inFlight", inFlight.size());
+        return stats;
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.size;
+        }
+    }
+
+    /**
+     * 规范化消息内容：去掉首尾空白，连续空白合并为一个空格
+     */
+    private static String normalize(String content) {
+        if (content == null) {
+            return "";
+        }
+        return content.trim().replaceAll("\\s+", " ");
+    }
+
+    private static class Entry {
+        private final Long apiConfigId;
+        private final String content;
+        private final long size;
+        private final long expireAt;
+
+        Entry(Long apiConfigId, String content, long size, long expireAt) {
+            this.apiConfigId = apiConfigId;
+            this.content = content;
+            this.size = size;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.qna.platform.util;
+
+import com.qna.platform.entity.ApiConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * API熔断器
+ * 按API配置统计连续失败（网络错误、超时、5xx），达到阈值后熔断，熔断期间直接失败而不再等待超时；
+ * 熔断时间过后进入半开状态，只放行一个探测请求，成功则恢复，失败则重新熔断
+ *
+ * @author QnA Platform
+ */
+@Slf4j
+@Component
+public class ApiCircuitBreaker {
+
+    /**
+     * 熔断器状态
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationMs;
+
+    private final Map<Long, Breaker> breakers = new ConcurrentHashMap<>();
+
+    public ApiCircuitBreaker(
+            @Value("${app.api.circuit-breaker.failure-threshold:5}") int failureThreshold,
+            @Value("${app.api.circuit-breaker.open-duration:30000}") long openDurationMs) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = openDurationMs;
+    }
+
+    /**
+     * 检查是否允许调用，熔断中时抛出异常
+     * 允许后必须以 recordSuccess / recordFailure / recordIgnored 之一结束
+     */
+    public void check(ApiConfig apiConfig) {
+        if (!tryAcquire(apiConfig)) {
+            Breaker breaker = breakers.get(apiConfig.getId());
+            long remaining = breaker != null ? breaker.remainingOpenMs() : 0;
+            throw new RuntimeException("API服务暂时不可用，请在" + Math.max(1, (remaining + 999) / 1000) + "秒后重试");
+        }
+    }
+
+    /**
+     * 尝试获取调用资格，熔断中返回false；半开状态下只有第一个调用者获得探测资格
+     */
+    public boolean tryAcquire(ApiConfig apiConfig) {
+        if (apiConfig.getId() == null) {
+            return true;
+        }
+        return breakers.computeIfAbsent(apiConfig.getId(), Breaker::new).tryAcquire();
+    }
+
+    /**
+     * 记录一次成功调用（提供商正常响应，包括4xx等客户端错误）
+     */
+    public void recordSuccess(ApiConfig apiConfig) {
+        Breaker breaker = get(apiConfig);
+        if (breaker != null) {
+            breaker.onSuccess();
+        }
+    }
+
+    /**
+     * 记录一次提供商故障（网络错误、超时、5xx）
+     */
+    public void recordFailure(ApiConfig apiConfig) {
+        Breaker breaker = get(apiConfig);
+        if (breaker != null) {
+            breaker.onFailure();
+        }
+    }
+
+    /**
+     * 调用未得到结论（被取消、限流排队失败、客户端断开等），只释放半开状态的探测资格
+     */
+    public void recordIgnored(ApiConfig apiConfig) {
+        Breaker breaker = get(apiConfig);
+        if (breaker != null) {
+            breaker.onIgnored();
+        }
+    }
+
+    /**
+     * API配置修改或删除后重置熔断状态
+     */
+    public void reset(Long apiConfigId) {
+        breakers.remove(apiConfigId);
+    }
+
+    /**
+     * 各API配置的熔断状态
+     */
+    public Map<Long, Object> stats() {
+        Map<Long, Object> result = new LinkedHashMap<>();
+        breakers.forEach((id, breaker) -> result.put(id, breaker.stats()));
+        return result;
+    }
+
+    private Breaker get(ApiConfig apiConfig) {
+        return apiConfig.getId() == null ? null : breakers.get(apiConfig.getId());
+    }
+
+    /**
+     * 单个API配置的熔断器
+     */
+    private class Breaker {
+        private final Long apiConfigId;
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean probing;
+        private long totalFailures;
+        private long rejected;
+        private LocalDateTime lastStateChange = LocalDateTime.now();
+
+        Breaker(Long apiConfigId) {
+            this.apiConfigId = apiConfigId;
+        }
+
+        synchronized boolean tryAcquire() {
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (System.currentTimeMillis() - openedAt < openDurationMs) {
+                        rejected++;
+                        return false;
+                    }
+                    transition(State.HALF_OPEN);
+                    probing = true;
+                    return true;
+                case HALF_OPEN:
+                default:
+                    if (probing) {
+                        rejected++;
+                        return false;
+                    }
+                    probing = true;
+                    return true;
+            }
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            probing = false;
+            if (state != State.CLOSED) {
+                transition(State.CLOSED);
+            }
+        }
+
+        synchronized void onFailure() {
+            totalFailures++;
+            consecutiveFailures++;
+            probing = false;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                openedAt = System.currentTimeMillis();
+                transition(State.OPEN);
+            }
+        }
+
+        synchronized void onIgnored() {
+            probing = false;
+        }
+
+        synchronized long remainingOpenMs() {
+            return state == State.OPEN ? Math.max(0, openDurationMs - (System.currentTimeMillis() - openedAt)) : 0;
+        }
+
+        private void transition(State next) {
+            log.info("API熔断器状态变更: apiConfigId={}, {} -> {}", apiConfigId, state, next);
+            state = next;
+            lastStateChange = LocalDateTime.now();
+        }
+
+        synchronized Map<String, Object> stats() {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("state", state.name());
+            stats.put("consecutiveFailures", consecutiveFailures);
+            stats.put("totalFailures", totalFailures);
+            stats.put("rejected", rejected);
+            stats.put("remainingOpenMs", remainingOpenMs());
+            stats.put("lastStateChange", lastStateChange.toString());
+            return stats;
+        }
+    }
+}
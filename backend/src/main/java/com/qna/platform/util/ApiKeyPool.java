@@ -0,0 +1,284 @@
+package com.qna.platform.util;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.qna.platform.entity.ApiConfig;
+import com.qna.platform.entity.ApiConfigKey;
+import com.qna.platform.mapper.ApiConfigKeyMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * API密钥池
+ * 一个API配置的密钥池由配置本身的密钥（已填写时）和 api_config_key 表中启用的密钥组成。
+ * 每次调用选择进行中请求最少的密钥（相同时轮流），收到429或401/403后把该密钥暂时移出轮换，
+ * 到期后自动恢复；所有密钥都被移出时仍选择最早恢复的那个，由提供商决定是否接受
+ *
+ * @author QnA Platform
+ */
+@Slf4j
+@Component
+public class ApiKeyPool {
+
+    private final ApiConfigKeyMapper keyMapper;
+    private final long throttleEjectMs;
+    private final long authEjectMs;
+
+    private final Map<Long, Pool> pools = new ConcurrentHashMap<>();
+
+    public ApiKeyPool(ApiConfigKeyMapper keyMapper,
+                      @Value("${app.api.key-pool.throttle-eject:30000}") long throttleEjectMs,
+                      @Value("${app.api.key-pool.auth-eject:300000}") long authEjectMs) {
+        this.keyMapper = keyMapper;
+        this.throttleEjectMs = throttleEjectMs;
+        this.authEjectMs = authEjectMs;
+    }
+
+    /**
+     * 为一次调用选择密钥
+     *
+     * @param apiConfig API配置
+     * @return 租约，调用结束后必须调用 {@link Lease#release()}
+     */
+    public Lease acquire(ApiConfig apiConfig) {
+        if (apiConfig.getId() == null) {
+            // 未保存的配置不参与统计
+            return new Lease(null, null, apiConfig.getApiKey(), apiConfig.getApiEndpoint());
+        }
+        Pool pool = pools.computeIfAbsent(apiConfig.getId(), id -> load(id, apiConfig));
+        KeyState key = pool.select();
+        key.outstanding.incrementAndGet();
+        key.requests.increment();
+        // 配置自身的密钥和端点以调用时的配置为准
+        String apiKey = key.apiKey != null ? key.apiKey : apiConfig.getApiKey();
+        String endpoint = key.endpoint != null ? key.endpoint : apiConfig.getApiEndpoint();
+        return new Lease(pool, key, apiKey, endpoint);
+    }
+
+    /**
+     * API配置或其密钥变更后重新加载密钥池
+     */
+    public void invalidate(Long apiConfigId) {
+        pools.remove(apiConfigId);
+    }
+
+    /**
+     * 各API配置下每个密钥的使用统计
+     */
+    public Map<Long, Object> stats() {
+        Map<Long, Object> result = new LinkedHashMap<>();
+        pools.forEach((id, pool) -> {
+            List<Map<String, Object>> items = new ArrayList<>();
+            for (KeyState key : pool.keys) {
+                items.add(key.stats());
+            }
+            result.put(id, items);
+        });
+        return result;
+    }
+
+    private Pool load(Long apiConfigId, ApiConfig apiConfig) {
+        LambdaQueryWrapper<ApiConfigKey> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(ApiConfigKey::getApiConfigId, apiConfigId)
+                .eq(ApiConfigKey::getStatus, 1)
+                .orderByAsc(ApiConfigKey::getId);
+        List<ApiConfigKey> rows = keyMapper.selectList(wrapper);
+
+        List<KeyState> keys = new ArrayList<>(rows.size() + 1);
+        if (apiConfig.getApiKey() != null && !apiConfig.getApiKey().isBlank()) {
+            keys.add(new KeyState(null, "默认密钥", null, null));
+        }
+        for (ApiConfigKey row : rows) {
+            String endpoint = row.getApiEndpoint() != null && !row.getApiEndpoint().isBlank()
+                    ? row.getApiEndpoint() : null;
+            keys.add(new KeyState(row.getId(), row.getKeyName(), row.getApiKey(), endpoint));
+        }
+        if (keys.isEmpty()) {
+            throw new RuntimeException("API密钥未配置");
+        }
+        if (keys.size() > 1) {
+            log.info("加载API密钥池: apiConfigId={}, 密钥数={}", apiConfigId, keys.size());
+        }
+        return new Pool(keys);
+    }
+
+    /**
+     * 一次调用所使用的密钥和端点
+     */
+    public class Lease {
+        private final Pool pool;
+        private final KeyState key;
+        private final String apiKey;
+        private final String endpoint;
+        private boolean released;
+
+        Lease(Pool pool, KeyState key, String apiKey, String endpoint) {
+            this.pool = pool;
+            this.key = key;
+            this.apiKey = apiKey;
+            this.endpoint = endpoint;
+        }
+
+        public String getApiKey() {
+            return apiKey;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * 记录提供商的响应状态，429和401/403时暂时移出该密钥
+         *
+         * @param httpStatus HTTP状态码
+         * @param retryAfterMs Retry-After指定的等待时间（毫秒），没有时为-1
+         * @return 429已由移出该密钥处理（池中还有其他可用密钥），不需要下调整个配置的并发上限
+         */
+        public boolean responded(int httpStatus, long retryAfterMs) {
+            if (key == null) {
+                return false;
+            }
+            if (httpStatus == 429) {
+                key.throttled.increment();
+                key.eject(retryAfterMs > 0 ? retryAfterMs : throttleEjectMs, httpStatus);
+                return pool.hasAvailable();
+            } else if (httpStatus == 401 || httpStatus == 403) {
+                key.unauthorized.increment();
+                key.eject(authEjectMs, httpStatus);
+            } else if (httpStatus >= 200 && httpStatus < 300) {
+                key.successes.increment();
+            } else {
+                key.errors.increment();
+            }
+            return false;
+        }
+
+        /**
+         * 调用结束后归还密钥
+         */
+        public synchronized void release() {
+            if (released || key == null) {
+                return;
+            }
+            released = true;
+            key.outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * 单个API配置的密钥池
+     */
+    private static class Pool {
+        private final List<KeyState> keys;
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        Pool(List<KeyState> keys) {
+            this.keys = keys;
+        }
+
+        /**
+         * 是否还有未被移出的密钥
+         */
+        boolean hasAvailable() {
+            long now = System.currentTimeMillis();
+            for (KeyState key : keys) {
+                if (key.ejectedUntil <= now) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 选择未被移出且进行中请求最少的密钥，相同时从轮转位置开始取第一个
+         */
+        KeyState select() {
+            int size = keys.size();
+            if (size == 1) {
+                return keys.get(0);
+            }
+            long now = System.currentTimeMillis();
+            int start = Math.floorMod(cursor.getAndIncrement(), size);
+            KeyState best = null;
+            KeyState earliest = null;
+            for (int i = 0; i < size; i++) {
+                KeyState key = keys.get((start + i) % size);
+                if (key.ejectedUntil > now) {
+                    if (earliest == null || key.ejectedUntil < earliest.ejectedUntil) {
+                        earliest = key;
+                    }
+                    continue;
+                }
+                if (best == null || key.outstanding.get() < best.outstanding.get()) {
+                    best = key;
+                }
+            }
+            return best != null ? best : earliest;
+        }
+    }
+
+    /**
+     * 单个密钥的状态和计数
+     */
+    private static class KeyState {
+        private final Long keyId;
+        private final String name;
+        /**
+         * 为null时使用API配置自身的密钥/端点
+         */
+        private final String apiKey;
+        private final String endpoint;
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+        private final LongAdder unauthorized = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder ejections = new LongAdder();
+        private volatile long ejectedUntil;
+
+        KeyState(Long keyId, String name, String apiKey, String endpoint) {
+            this.keyId = keyId;
+            this.name = name;
+            this.apiKey = apiKey;
+            this.endpoint = endpoint;
+        }
+
+        synchronized void eject(long durationMs, int httpStatus) {
+            long until = System.currentTimeMillis() + durationMs;
+            if (until > ejectedUntil) {
+                if (ejectedUntil <= System.currentTimeMillis()) {
+                    ejections.increment();
+                    log.warn("API密钥暂时移出轮换: keyId={}, name={}, status={}, {}ms",
+                            keyId, name, httpStatus, durationMs);
+                }
+                ejectedUntil = until;
+            }
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("keyId", keyId);
+            stats.put("name", name);
+            stats.put("outstanding", outstanding.get());
+            stats.put("requests", requests.sum());
+            stats.put("successes", successes.sum());
+            stats.put("throttled", throttled.sum());
+            stats.put("unauthorized", unauthorized.sum());
+            stats.put("errors", errors.sum());
+            stats.put("ejections", ejections.sum());
+            stats.put("ejectedRemainingMs", Math.max(0, ejectedUntil - System.currentTimeMillis()));
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.qna.platform.util;
+
+import com.qna.platform.entity.SysUser;
+import com.qna.platform.mapper.SysUserMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * API配额账本
+ * 在内存中按用户维护原子计数器并执行配额检查，增量定期批量写回sys_user，
+ * 每日零点由定时任务统一重置，对话时不再逐条读改写用户记录
+ *
+ * @author QnA Platform
+ */
+@Slf4j
+@Component
+public class ApiQuotaLedger {
+
+    private final SysUserMapper userMapper;
+
+    private final Map<Long, UserQuota> quotas = new ConcurrentHashMap<>();
+
+    public ApiQuotaLedger(SysUserMapper userMapper) {
+        this.userMapper = userMapper;
+    }
+
+    /**
+     * 启动时补做停机期间错过的重置
+     */
+    @PostConstruct
+    public void resetMissedQuotas() {
+        try {
+            int count = userMapper.resetExpiredApiUsed(LocalDateTime.now(), nextResetTime());
+            if (count > 0) {
+                log.info("已重置过期的API配额: {}个用户", count);
+            }
+        } catch (Exception e) {
+            log.warn("重置过期API配额失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 尝试占用一次API调用额度
+     *
+     * @param userId 用户ID
+     * @return true-占用成功，false-已达上限
+     */
+    public boolean tryAcquire(Long userId) {
+        UserQuota quota = getOrLoad(userId);
+        while (true) {
+            int used = quota.used.get();
+            if (used >= quota.limit) {
+                return false;
+            }
+            if (quota.used.compareAndSet(used, used + 1)) {
+                quota.pending.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 归还一次额度（调用失败时使用）
+     *
+     * @param userId 用户ID
+     */
+    public void release(Long userId) {
+        UserQuota quota = quotas.get(userId);
+        if (quota != null) {
+            quota.used.decrementAndGet();
+            quota.pending.decrement();
+        }
+    }
+
+    /**
+     * 获取用户当前已使用次数（包含尚未写回数据库的部分）
+     */
+    public int getUsed(Long userId) {
+        return getOrLoad(userId).used.get();
+    }
+
+    /**
+     * 获取用户配额
+     */
+    public int getQuota(Long userId) {
+        return getOrLoad(userId).limit;
+    }
+
+    /**
+     * 获取用户当前已使用次数，账本中没有该用户时使用数据库中的值
+     */
+    public int getUsed(SysUser user) {
+        UserQuota quota = quotas.get(user.getId());
+        if (quota != null) {
+            return quota.used.get();
+        }
+        return user.getApiUsed() != null ? user.getApiUsed() : 0;
+    }
+
+    /**
+     * 管理员修改配额后同步到账本
+     */
+    public void updateQuota(Long userId, Integer limit) {
+        UserQuota quota = quotas.get(userId);
+        if (quota != null) {
+            quota.limit = limit != null ? limit : 0;
+        }
+    }
+
+    /**
+     * 定期把各用户的增量批量写回数据库
+     */
+    @Scheduled(fixedDelayString = "${app.api.quota-flush-interval:5000}")
+    public synchronized void flush() {
+        Map<Long, Integer> deltas = new HashMap<>();
+        quotas.forEach((userId, quota) -> {
+            int delta = (int) quota.pending.sumThenReset();
+            if (delta != 0) {
+                deltas.put(userId, delta);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            userMapper.batchIncrementApiUsed(deltas);
+            log.debug("API使用次数已写回: {}个用户", deltas.size());
+        } catch (Exception e) {
+            // 写回失败时把增量加回去，下次重试
+            log.error("API使用次数写回失败: {}", e.getMessage());
+            deltas.forEach((userId, delta) -> {
+                UserQuota quota = quotas.get(userId);
+                if (quota != null) {
+                    quota.pending.add(delta);
+                }
+            });
+        }
+    }
+
+    /**
+     * 每日零点重置所有用户的API使用次数
+     */
+    @Scheduled(cron = "0 0 0 * * ?")
+    public synchronized void resetDaily() {
+        // 重置前的未写回增量属于前一天，直接丢弃
+        quotas.values().forEach(quota -> {
+            quota.pending.reset();
+            quota.used.set(0);
+        });
+        int count = userMapper.resetAllApiUsed(nextResetTime());
+        log.info("每日API配额已重置: {}个用户", count);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private UserQuota getOrLoad(Long userId) {
+        UserQuota quota = quotas.computeIfAbsent(userId, id -> {
+            SysUser user = userMapper.selectById(id);
+            if (user == null) {
+                return null;
+            }
+            return new UserQuota(
+                    user.getApiUsed() != null ? user.getApiUsed() : 0,
+                    user.getApiQuota() != null ? user.getApiQuota() : 0);
+        });
+        if (quota == null) {
+            throw new RuntimeException("用户不存在");
+        }
+        return quota;
+    }
+
+    private LocalDateTime nextResetTime() {
+        return LocalDateTime.of(LocalDate.now().plusDays(1), LocalTime.MIDNIGHT);
+    }
+
+    /**
+     * 单个用户的配额计数
+     */
+    private static class UserQuota {
+        /**
+         * 已使用次数（用于配额检查）
+         */
+        private final AtomicInteger used;
+
+        /**
+         * 尚未写回数据库的增量
+         */
+        private final LongAdder pending = new LongAdder();
+
+        /**
+         * 每日配额
+         */
+        private volatile int limit;
+
+        UserQuota(int used, int limit) {
+            this.used = new AtomicInteger(used);
+            this.limit = limit;
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package com.qna.platform.util;
+
+import com.qna.platform.entity.ApiConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * API准入控制
+ * 按API配置限制发往提供商的请求：令牌桶限制每秒请求数，并发上限按AIMD自适应
+ * （整个配置被限流时减半，一个采样窗口内首字节耗时的平均值明显高于基线时小幅下调，
+ * 正常返回时逐步上调，不超过配置的最大并发）。只影响单个密钥的429由密钥池移出该密钥处理，不下调并发上限。
+ * 超出限制的请求在有界队列中等待，队列已满或等待超时时返回"繁忙，请N秒后重试"
+ *
+ * @author QnA Platform
+ */
+@Slf4j
+@Component
+public class ApiRateLimiter {
+
+    /**
+     * 两次429减半之间的最小间隔，避免一批并发的429把并发上限连续压到底
+     */
+    private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 响应耗时超过基线的倍数时视为拥塞
+     */
+    private static final double LATENCY_CONGESTION_FACTOR = 2.0;
+
+    /**
+     * 每个延迟采样窗口的最少样本数，单个慢响应（长输出、冷启动）不会触发下调
+     */
+    private static final int MIN_WINDOW_SAMPLES = 10;
+
+    private final int defaultMaxConcurrency;
+    private final int defaultMaxQueue;
+    private final long maxWaitNanos;
+
+    private final Map<Long, Limiter> limiters = new ConcurrentHashMap<>();
+
+    public ApiRateLimiter(
+            @Value("${app.api.admission.default-max-concurrency:32}") int defaultMaxConcurrency,
+            @Value("${app.api.admission.default-max-queue:100}") int defaultMaxQueue,
+            @Value("${app.api.admission.max-wait:30000}") long maxWaitMs) {
+        this.defaultMaxConcurrency = defaultMaxConcurrency;
+        this.defaultMaxQueue = defaultMaxQueue;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+    }
+
+    /**
+     * 获取一个调用许可，必要时排队等待
+     *
+     * @param apiConfig API配置
+     * @return 许可，调用结束后必须调用 {@link Permit#release()}
+     * @throws RuntimeException 队列已满或等待超时
+     */
+    public Permit acquire(ApiConfig apiConfig) {
+        CompletableFuture<Permit> future = acquireAsync(apiConfig);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("请求被中断");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * 异步获取调用许可，排队期间不占用线程；队列已满或等待超时时future以异常结束。
+     * 取消返回的future即放弃排队
+     */
+    public CompletableFuture<Permit> acquireAsync(ApiConfig apiConfig) {
+        return getLimiter(apiConfig).acquireAsync(maxWaitNanos);
+    }
+
+    /**
+     * 尝试立即获取许可（不排队），无法获取时返回null
+     */
+    public Permit tryAcquire(ApiConfig apiConfig) {
+        return getLimiter(apiConfig).tryAcquire();
+    }
+
+    /**
+     * API配置修改或删除后重建限流器
+     */
+    public void invalidate(Long apiConfigId) {
+        limiters.remove(apiConfigId);
+    }
+
+    /**
+     * 各API配置的准入状态
+     */
+    public Map<Long, Object> stats() {
+        Map<Long, Object> result = new LinkedHashMap<>();
+        limiters.forEach((id, limiter) -> result.put(id, limiter.stats()));
+        return result;
+    }
+
+    private Limiter getLimiter(ApiConfig apiConfig) {
+        if (apiConfig.getId() == null) {
+            return newLimiter(apiConfig);
+        }
+        return limiters.computeIfAbsent(apiConfig.getId(), id -> newLimiter(apiConfig));
+    }
+
+    private Limiter newLimiter(ApiConfig apiConfig) {
+        double rps = apiConfig.getRateLimitRps() != null ? apiConfig.getRateLimitRps().doubleValue() : 0;
+        int maxConcurrency = apiConfig.getMaxConcurrency() != null && apiConfig.getMaxConcurrency() > 0
+                ? apiConfig.getMaxConcurrency()
+                : defaultMaxConcurrency;
+        int maxQueue = apiConfig.getMaxQueue() != null && apiConfig.getMaxQueue() >= 0
+                ? apiConfig.getMaxQueue()
+                : defaultMaxQueue;
+        return new Limiter(apiConfig.getId(), rps, maxConcurrency, maxQueue);
+    }
+
+    /**
+     * 调用许可
+     */
+    public static class Permit {
+        private final Limiter limiter;
+        private final long startNanos = System.nanoTime();
+        private long responseNanos = -1;
+        private int httpStatus;
+        private boolean keyThrottled;
+        private boolean released;
+
+        Permit(Limiter limiter) {
+            this.limiter = limiter;
+        }
+
+        /**
+         * 记录收到响应头的时间和状态码（流式响应以此计算延迟，而不是整个流的时长）
+         */
+        public void responded(int httpStatus) {
+            responded(httpStatus, false);
+        }
+
+        /**
+         * 记录收到响应头的时间和状态码
+         *
+         * @param keyThrottled 429只针对所用的密钥且密钥池中还有其他可用密钥，此时不下调整个配置的并发上限
+         */
+        public synchronized void responded(int httpStatus, boolean keyThrottled) {
+            if (responseNanos < 0) {
+                this.responseNanos = System.nanoTime() - startNanos;
+                this.httpStatus = httpStatus;
+                this.keyThrottled = keyThrottled;
+            }
+        }
+
+        /**
+         * 调用结束后归还许可，未收到响应（网络错误等）时不影响并发上限的调整
+         */
+        public synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            limiter.release(httpStatus, keyThrottled,
+                    responseNanos >= 0 ? responseNanos : System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * 单个API配置的限流器
+     * 排队的请求按先后顺序保存在waiters中，许可归还或令牌生成时依次准入
+     */
+    private static class Limiter {
+        private final Long apiConfigId;
+        private final double rps;
+        private final double burst;
+        private final int maxConcurrency;
+        private final int maxQueue;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+        /**
+         * 自适应并发上限
+         */
+        private double limit;
+        private int inFlight;
+        private long lastDecreaseNanos;
+        /**
+         * 是否已安排在下一个令牌生成时准入排队请求
+         */
+        private boolean drainScheduled;
+        /**
+         * 各采样窗口平均首字节耗时的指数移动平均（纳秒），作为延迟基线
+         */
+        private double latencyBaseline;
+        /**
+         * 当前采样窗口内成功响应的首字节耗时之和与样本数
+         */
+        private double windowLatencySum;
+        private int windowSamples;
+
+        private long admitted;
+        private long rejected;
+        private long throttled;
+
+        Limiter(Long apiConfigId, double rps, int maxConcurrency, int maxQueue) {
+            this.apiConfigId = apiConfigId;
+            this.rps = rps;
+            this.burst = Math.max(1, rps);
+            this.tokens = burst;
+            this.maxConcurrency = maxConcurrency;
+            this.maxQueue = maxQueue;
+            this.limit = maxConcurrency;
+        }
+
+        /**
+         * 获取许可，排队期间不占用线程
+         */
+        CompletableFuture<Permit> acquireAsync(long maxWaitNanos) {
+            Waiter waiter;
+            lock.lock();
+            try {
+                if (waiters.isEmpty() && tryAdmit() == 0) {
+                    return CompletableFuture.completedFuture(admit());
+                }
+                if (waiters.size() >= maxQueue) {
+                    rejected++;
+                    return CompletableFuture.failedFuture(busy());
+                }
+                waiter = new Waiter();
+                waiters.addLast(waiter);
+                scheduleDrainIfWaitingForToken();
+            } finally {
+                lock.unlock();
+            }
+            // 队首可能是已取消的请求，清理后新请求也许可以立即准入
+            drain();
+
+            // 等待超时后移出队列
+            CompletableFuture.delayedExecutor(maxWaitNanos, TimeUnit.NANOSECONDS).execute(() -> {
+                RuntimeException error;
+                lock.lock();
+                try {
+                    if (!waiters.remove(waiter)) {
+                        return;
+                    }
+                    rejected++;
+                    error = busy();
+                } finally {
+                    lock.unlock();
+                }
+                waiter.future.completeExceptionally(error);
+            });
+            return waiter.future;
+        }
+
+        /**
+         * 立即获取许可，需要排队时返回null
+         */
+        Permit tryAcquire() {
+            lock.lock();
+            try {
+                return waiters.isEmpty() && tryAdmit() == 0 ? admit() : null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release(int httpStatus, boolean keyThrottled, long latencyNanos) {
+            lock.lock();
+            try {
+                inFlight--;
+                long now = System.nanoTime();
+                if (httpStatus == 429) {
+                    throttled++;
+                    if (!keyThrottled) {
+                        decrease(now, 0.5);
+                    }
+                } else if (httpStatus >= 200 && httpStatus < 300) {
+                    // 加性增：约每个窗口增加1
+                    limit = Math.min(maxConcurrency, limit + 1.0 / Math.max(1, limit));
+                    sampleLatency(now, latencyNanos);
+                }
+            } finally {
+                lock.unlock();
+            }
+            drain();
+        }
+
+        /**
+         * 累计一个窗口（至少MIN_WINDOW_SAMPLES个、且不少于当前并发上限个成功响应）后比较平均首字节耗时和基线，
+         * 持续变慢才下调，再把窗口平均值计入基线
+         */
+        private void sampleLatency(long now, long latencyNanos) {
+            windowLatencySum += latencyNanos;
+            windowSamples++;
+            if (windowSamples < Math.max(MIN_WINDOW_SAMPLES, (int) limit)) {
+                return;
+            }
+            double windowAverage = windowLatencySum / windowSamples;
+            windowLatencySum = 0;
+            windowSamples = 0;
+            if (latencyBaseline > 0 && windowAverage > latencyBaseline * LATENCY_CONGESTION_FACTOR) {
+                decrease(now, 0.9);
+            }
+            latencyBaseline = latencyBaseline == 0
+                    ? windowAverage
+                    : latencyBaseline * 0.9 + windowAverage * 0.1;
+        }
+
+        /**
+         * 按顺序准入排队的请求，直到并发或令牌不足
+         * 在锁外完成future，避免调用方的回调在锁内执行
+         */
+        private void drain() {
+            List<Map.Entry<Waiter, Permit>> granted = new ArrayList<>();
+            lock.lock();
+            try {
+                while (!waiters.isEmpty()) {
+                    Waiter head = waiters.peekFirst();
+                    if (head.future.isDone()) {
+                        // 调用方已取消
+                        waiters.pollFirst();
+                        continue;
+                    }
+                    if (tryAdmit() != 0) {
+                        scheduleDrainIfWaitingForToken();
+                        break;
+                    }
+                    waiters.pollFirst();
+                    granted.add(Map.entry(head, admit()));
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (Map.Entry<Waiter, Permit> entry : granted) {
+                if (!entry.getKey().future.complete(entry.getValue())) {
+                    // 完成前被取消，归还许可
+                    entry.getValue().release();
+                }
+            }
+        }
+
+        /**
+         * 并发未满但令牌不足时，安排在下一个令牌生成时再次准入
+         */
+        private void scheduleDrainIfWaitingForToken() {
+            long tokenWait = tryAdmit();
+            if (tokenWait > 0 && !drainScheduled) {
+                drainScheduled = true;
+                CompletableFuture.delayedExecutor(tokenWait, TimeUnit.NANOSECONDS).execute(() -> {
+                    lock.lock();
+                    try {
+                        drainScheduled = false;
+                    } finally {
+                        lock.unlock();
+                    }
+                    drain();
+                });
+            }
+        }
+
+        /**
+         * 尝试准入：返回0表示可以立即准入，正数表示需等待下一个令牌的纳秒数，-1表示并发已满
+         */
+        private long tryAdmit() {
+            if (inFlight >= (int) limit) {
+                return -1;
+            }
+            if (rps <= 0) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefillNanos) * rps / TimeUnit.SECONDS.toNanos(1));
+            lastRefillNanos = now;
+            if (tokens >= 1) {
+                return 0;
+            }
+            return Math.max(1, (long) ((1 - tokens) / rps * TimeUnit.SECONDS.toNanos(1)));
+        }
+
+        private Permit admit() {
+            if (rps > 0) {
+                tokens -= 1;
+            }
+            inFlight++;
+            admitted++;
+            return new Permit(this);
+        }
+
+        private void decrease(long now, double factor) {
+            if (now - lastDecreaseNanos < DECREASE_INTERVAL_NANOS) {
+                return;
+            }
+            lastDecreaseNanos = now;
+            double previous = limit;
+            limit = Math.max(1, limit * factor);
+            if ((int) previous != (int) limit) {
+                log.info("下调API并发上限: apiConfigId={}, {} -> {}", apiConfigId, (int) previous, (int) limit);
+            }
+        }
+
+        /**
+         * 估算排队请求全部完成所需的秒数，作为重试建议
+         */
+        private RuntimeException busy() {
+            double throughput = rps > 0 ? rps : 0;
+            if (latencyBaseline > 0) {
+                double concurrencyThroughput = limit / (latencyBaseline / TimeUnit.SECONDS.toNanos(1));
+                throughput = throughput > 0 ? Math.min(throughput, concurrencyThroughput) : concurrencyThroughput;
+            }
+            long retryAfter = throughput > 0 ? (long) Math.ceil((waiters.size() + 1) / throughput) : 1;
+            return new RuntimeException("当前模型繁忙，请在" + Math.max(1, retryAfter) + "秒后重试");
+        }
+
+        Map<String, Object> stats() {
+            lock.lock();
+            try {
+                Map<String, Object> stats = new HashMap<>();
+                stats.put("rateLimitRps", rps);
+                stats.put("maxConcurrency", maxConcurrency);
+                stats.put("currentLimit", (int) limit);
+                stats.put("inFlight", inFlight);
+                stats.put("waiting", waiters.size());
+                stats.put("maxQueue", maxQueue);
+                stats.put("admitted", admitted);
+                stats.put("rejected", rejected);
+                stats.put("throttled", throttled);
+                stats.put("latencyBaselineMs", (long) (latencyBaseline / TimeUnit.MILLISECONDS.toNanos(1)));
+                return stats;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 排队中的请求
+     */
+    private static class Waiter {
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+    }
+}
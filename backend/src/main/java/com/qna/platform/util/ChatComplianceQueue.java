@@ -0,0 +1,179 @@
+package com.qna.platform.util;
+
+import cn.hutool.json.JSONObject;
+import com.qna.platform.entity.ChatMessage;
+import com.qna.platform.mapper.ChatMessageMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 对话消息合规检测队列
+ * 对话流程只负责把消息放入有界队列，由后台工作线程按小批次取出、一次请求调用批量合规检测接口，
+ * 再用一条UPDATE语句批量回写检测结果。队列满或检测服务不可用时消息记入补检队列，服务恢复后补检
+ *
+ * @author QnA Platform
+ */
+@Slf4j
+@Component
+public class ChatComplianceQueue {
+
+    private final ComplianceClient complianceClient;
+    private final ChatMessageMapper messageMapper;
+    private final ComplianceRetryQueue retryQueue;
+
+    @Value("${app.compliance.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.compliance.workers:4}")
+    private int workerCount;
+
+    @Value("${app.compliance.batch-size:20}")
+    private int batchSize;
+
+    private BlockingQueue<ChatMessage> queue;
+    private ExecutorService workers;
+    private volatile boolean running = true;
+
+    public ChatComplianceQueue(ComplianceClient complianceClient, ChatMessageMapper messageMapper,
+                               ComplianceRetryQueue retryQueue) {
+        this.complianceClient = complianceClient;
+        this.messageMapper = messageMapper;
+        this.retryQueue = retryQueue;
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger threadIndex = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "compliance-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::drainLoop);
+        }
+        log.info("合规检测队列已启动: capacity={}, workers={}, batchSize={}", queueCapacity, workerCount, batchSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workers.shutdownNow();
+    }
+
+    /**
+     * 提交消息进行合规检测
+     * 如果当前处于事务中，在事务提交后再入队，保证工作线程能读到已提交的消息
+     *
+     * @param message 已保存的消息（需要有ID和内容）
+     */
+    public void submit(ChatMessage message) {
+        if (message.getId() == null || message.getContent() == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    offer(message);
+                }
+            });
+        } else {
+            offer(message);
+        }
+    }
+
+    /**
+     * 当前队列中等待检测的消息数
+     */
+    public int pendingCount() {
+        return queue.size();
+    }
+
+    private void offer(ChatMessage message) {
+        if (!queue.offer(message)) {
+            // 队列已满：不阻塞对话，消息记入补检队列
+            log.warn("合规检测队列已满，跳过检测: messageId={}, 记入补检队列", message.getId());
+            retryQueue.enqueue(List.of(message.getId()), "合规检测队列已满");
+        }
+    }
+
+    /**
+     * 工作线程主循环：阻塞等待第一条消息，再取出最多batchSize条组成一批
+     */
+    private void drainLoop() {
+        List<ChatMessage> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                ChatMessage first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                processBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("合规检测批次处理失败: size={}, error={}", batch.size(), e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 检测一批消息并批量回写结果
+     */
+    private void processBatch(List<ChatMessage> batch) {
+        List<String> contents = new ArrayList<>(batch.size());
+        for (ChatMessage message : batch) {
+            contents.add(message.getContent());
+        }
+        List<JSONObject> results = complianceClient.checkBatch(contents);
+
+        List<ChatMessage> checked = new ArrayList<>(batch.size());
+        List<Long> unavailable = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            ChatMessage message = batch.get(i);
+            JSONObject result = results.get(i);
+
+            // 如果检测服务返回 null，说明服务不可用，保持 UNCHECKED 状态，记入补检队列
+            if (result == null) {
+                unavailable.add(message.getId());
+                continue;
+            }
+
+            ChatMessage update = new ChatMessage();
+            update.setId(message.getId());
+            update.setComplianceStatus(result.getStr("result", "UNCHECKED"));
+            update.setComplianceResult(result.toString());
+            checked.add(update);
+        }
+
+        if (!checked.isEmpty()) {
+            messageMapper.batchUpdateCompliance(checked);
+            log.debug("合规检测结果已回写: {}条", checked.size());
+        }
+        if (!unavailable.isEmpty()) {
+            log.warn("合规检测服务不可用: {}条消息保持未检测状态", unavailable.size());
+            retryQueue.enqueue(unavailable, "检测服务不可用");
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.qna.platform.util;
+
+import com.qna.platform.entity.ChatMessage;
+import com.qna.platform.entity.ChatSession;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 活跃会话上下文缓存
+ * 每个会话缓存会话实体、解析后的系统消息、模板的回复缓存开关和最近若干条消息（环形缓冲），
+ * 消息保存（事务提交）后追加，热会话构建提示词时无需查询数据库。
+ * 按会话数量（LRU）和空闲时间淘汰
+ *
+ * @author QnA Platform
+ */
+@Slf4j
+@Component
+public class ChatSessionContextCache {
+
+    /**
+     * 每个会话保留的最近消息数（实际发送多少条由token预算决定）
+     */
+    public static final int HISTORY_LIMIT = 20;
+
+    private final int maxSessions;
+    private final long idleMillis;
+
+    private final LinkedHashMap<Long, SessionContext> contexts;
+
+    public ChatSessionContextCache(
+            @Value("${app.chat.context-cache.max-sessions:10000}") int maxSessions,
+            @Value("${app.chat.context-cache.idle-minutes:30}") long idleMinutes) {
+        this.maxSessions = maxSessions;
+        this.idleMillis = idleMinutes * 60 * 1000;
+        // accessOrder=true：按访问顺序排列，超出容量时淘汰最久未访问的会话
+        this.contexts = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, SessionContext> eldest) {
+                return size() > ChatSessionContextCache.this.maxSessions;
+            }
+        };
+    }
+
+    /**
+     * 获取会话上下文，未缓存时返回null
+     */
+    public synchronized SessionContext get(Long sessionId) {
+        SessionContext context = contexts.get(sessionId);
+        if (context != null) {
+            context.touch();
+        }
+        return context;
+    }
+
+    /**
+     * 缓存会话上下文
+     *
+     * @param session 会话实体
+     * @param systemMessage 解析后的系统消息（会话级或模板级），可为null
+     * @param responseCacheEnabled 会话使用的机器人模板是否开启回复缓存
+     * @param history 最近的消息，按时间正序
+     * @return 缓存的上下文
+     */
+    public synchronized SessionContext put(ChatSession session, String systemMessage,
+                                           boolean responseCacheEnabled, List<ChatMessage> history) {
+        SessionContext context = new SessionContext(session, systemMessage, responseCacheEnabled);
+        history.forEach(context::append);
+        contexts.put(session.getId(), context);
+        return context;
+    }
+
+    /**
+     * 消息保存后追加到对应会话的缓冲区（会话未缓存时忽略）
+     * 在事务中调用时等事务提交后再追加，回滚的消息不会进入缓存
+     */
+    public void append(ChatMessage message) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    appendNow(message);
+                }
+            });
+        } else {
+            appendNow(message);
+        }
+    }
+
+    private void appendNow(ChatMessage message) {
+        SessionContext context;
+        synchronized (this) {
+            context = contexts.get(message.getSessionId());
+        }
+        if (context != null) {
+            context.append(message);
+        }
+    }
+
+    /**
+     * 使会话缓存失效
+     */
+    public synchronized void invalidate(Long sessionId) {
+        contexts.remove(sessionId);
+    }
+
+    /**
+     * 机器人模板修改或删除后，使用该模板的会话重新解析系统消息和回复缓存开关
+     */
+    public synchronized void invalidateTemplate(Long botTemplateId) {
+        if (botTemplateId == null) {
+            return;
+        }
+        contexts.values().removeIf(context -> botTemplateId.equals(context.session.getBotTemplateId()));
+    }
+
+    /**
+     * 定期淘汰空闲会话
+     */
+    @Scheduled(fixedDelay = 60000)
+    public synchronized void evictIdle() {
+        long deadline = System.currentTimeMillis() - idleMillis;
+        int evicted = 0;
+        Iterator<SessionContext> iterator = contexts.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().lastAccess < deadline) {
+                iterator.remove();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            log.debug("淘汰空闲会话上下文: {}个，剩余{}个", evicted, contexts.size());
+        }
+    }
+
+    /**
+     * 单个会话的上下文
+     */
+    public static class SessionContext {
+        private final ChatSession session;
+        private final String systemMessage;
+        private final boolean responseCacheEnabled;
+        private final Deque<ChatMessage> recent = new ArrayDeque<>(HISTORY_LIMIT);
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        SessionContext(ChatSession session, String systemMessage, boolean responseCacheEnabled) {
+            this.session = session;
+            this.systemMessage = systemMessage;
+            this.responseCacheEnabled = responseCacheEnabled;
+        }
+
+        public ChatSession getSession() {
+            return session;
+        }
+
+        public String getSystemMessage() {
+            return systemMessage;
+        }
+
+        /**
+         * 会话使用的机器人模板是否开启回复缓存（还需API配置开启）
+         */
+        public boolean isResponseCacheEnabled() {
+            return responseCacheEnabled;
+        }
+
+        /**
+         * 最近的消息，按时间正序
+         */
+        public synchronized List<ChatMessage> recentMessages() {
+            return new ArrayList<>(recent);
+        }
+
+        synchronized void append(ChatMessage message) {
+            // 只保留构建提示词需要的字段
+            ChatMessage copy = new ChatMessage();
+            copy.setId(message.getId());
+            copy.setRole(message.getRole());
+            copy.setContent(message.getContent());
+            copy.setErrorMessage(message.getErrorMessage());
+            recent.addLast(copy);
+            while (recent.size() > HISTORY_LIMIT) {
+                recent.removeFirst();
+            }
+            touch();
+        }
+
+        void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.qna.platform.util;
 
+import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.qna.platform.service.SystemConfigService;
@@ -11,6 +12,14 @@ import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 /**
  * 合规检测客户端
@@ -22,31 +31,42 @@ import java.time.Duration;
 @RequiredArgsConstructor
 public class ComplianceClient {
     
-    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
-    
     private final SystemConfigService systemConfigService;
-    
-    @Value("${app.compliance.service-url:http://localhost:5000/api/compliance/check}")
-    private String defaultCheckUrl;
+    private final ComplianceVerdictCache verdictCache;
+    private final CompliancePrefilter prefilter;
+    private final ComplianceInstancePool instancePool;
+    private final ComplianceSocketTransport socketTransport;
+
+    private static final String CHECK_PATH = "/api/compliance/check";
+
+    /**
+     * 与检测服务的传输方式：http，或 socket（长连接二进制协议，见 {@link ComplianceSocketTransport}）
+     */
+    @Value("${app.compliance.transport.type:http}")
+    private String transport;
+
+    /**
+     * 快速失败：所有检测服务实例都已移出轮换时不再发起请求，直接按服务不可用处理，直到健康检查恢复
+     */
+    @Value("${app.compliance.fast-fail:true}")
+    private boolean fastFail;
     
     @Value("${app.compliance.timeout:30000}")
     private int defaultTimeout;
-    
-    private OkHttpClient client;
-    
+
     /**
-     * 获取合规检测服务URL
+     * 批量检测每次请求的最大条数
      */
-    public String getCheckUrl() {
-        try {
-            String pythonServiceUrl = systemConfigService.getConfigValue(
-                "python.service.url", "http://localhost:5000");
-            return pythonServiceUrl + "/api/compliance/check";
-        } catch (Exception e) {
-            log.warn("获取Python服务URL失败，使用默认配置: {}", defaultCheckUrl);
-            return defaultCheckUrl;
-        }
-    }
+    @Value("${app.compliance.check-batch.max-items:100}")
+    private int batchMaxItems;
+
+    /**
+     * 批量检测每次请求内容的最大字节数（UTF-8），单条超出时单独成批
+     */
+    @Value("${app.compliance.check-batch.max-bytes:1048576}")
+    private long batchMaxBytes;
+    
+    private OkHttpClient client;
     
     /**
      * 获取超时时间
@@ -78,26 +98,61 @@ public class ComplianceClient {
     }
     
     /**
-     * 调用合规检测服务
+     * 调用合规检测服务，空内容和敏感词预筛能判定的内容在本地返回，其余优先使用缓存的检测结果
      * 
      * @param content 待检测内容
      * @return 检测结果，如果服务不可用则返回 null
      */
     public JSONObject checkContent(String content) {
+        if (content == null || content.isBlank()) {
+            return emptyContentResult();
+        }
+        JSONObject screened = prefilter.screen(content);
+        if (screened != null) {
+            return screened;
+        }
+        if (!verdictCache.isEnabled()) {
+            return callCheck(content);
+        }
+        String key = verdictCache.key(content);
+        JSONObject cached = verdictCache.getAll(List.of(key)).get(key);
+        if (cached != null) {
+            return cached;
+        }
+        JSONObject result = callCheck(content);
+        if (result != null) {
+            verdictCache.putAll(Map.of(key, result));
+        }
+        return result;
+    }
+
+    /**
+     * 调用Python单条检测接口（不经过缓存）
+     */
+    private JSONObject callCheck(String content) {
+        if (fastFail && instancePool.isUnavailable()) {
+            log.debug("合规检测服务不可用，快速失败");
+            return null;
+        }
+        ComplianceInstancePool.Instance instance = instancePool.acquire();
+        long start = System.currentTimeMillis();
+        boolean success = false;
         try {
-            String url = getCheckUrl();
+            if (isSocketTransport()) {
+                JSONObject result = socketTransport.check(instance.getBaseUrl(), content);
+                success = true;
+                return result;
+            }
+            String url = instance.getBaseUrl() + CHECK_PATH;
             log.debug("调用合规检测服务: {}", url);
             
-            JSONObject requestBody = new JSONObject();
-            requestBody.set("content", content);
-            
-            RequestBody body = RequestBody.create(requestBody.toString(), JSON);
             Request request = new Request.Builder()
                     .url(url)
-                    .post(body)
+                    .post(LlmJsonCodec.complianceRequest(content))
                     .build();
             
             try (Response response = getClient().newCall(request).execute()) {
+                success = response.code() < 500;
                 if (!response.isSuccessful()) {
                     log.error("合规检测失败: HTTP {}", response.code());
                     // 返回 null 表示检测服务不可用
@@ -113,12 +168,247 @@ public class ComplianceClient {
                 return result;
             }
         } catch (IOException e) {
-            log.error("合规检测异常: {}", e.getMessage());
+            log.error("合规检测异常: {}, instance={}", e.getMessage(), instance.getBaseUrl());
             // 检测失败时，返回 null 表示服务不可用
             return null;
+        } finally {
+            instance.finish(success, System.currentTimeMillis() - start);
         }
     }
     
+    /**
+     * 批量调用合规检测服务
+     * 空内容直接判定通过，再做敏感词预筛，能在本地判定的内容不再请求检测服务；其余内容按 {@link #checkRemote(List)} 检测
+     *
+     * @param contents 待检测内容
+     * @return 与contents顺序一致的检测结果，服务不可用或单条检测出错的位置为 null
+     */
+    public List<JSONObject> checkBatch(List<String> contents) {
+        List<JSONObject> results = new ArrayList<>(contents.size());
+        List<Integer> remoteIndexes = new ArrayList<>();
+        List<String> remoteContents = new ArrayList<>();
+        for (int i = 0; i < contents.size(); i++) {
+            String content = contents.get(i);
+            JSONObject screened = content == null || content.isBlank()
+                    ? emptyContentResult()
+                    : prefilter.screen(content);
+            results.add(screened);
+            if (screened == null) {
+                remoteIndexes.add(i);
+                remoteContents.add(content);
+            }
+        }
+        if (remoteContents.isEmpty()) {
+            return results;
+        }
+        if (remoteContents.size() == contents.size()) {
+            return checkRemote(contents);
+        }
+
+        List<JSONObject> checked = checkRemote(remoteContents);
+        for (int i = 0; i < remoteIndexes.size(); i++) {
+            results.set(remoteIndexes.get(i), checked.get(i));
+        }
+        return results;
+    }
+
+    /**
+     * 需要完整检测的内容：先查检测结果缓存，批内相同的内容只检测一次；其余内容按最大条数和最大字节数拆成多批，
+     * 每批一次请求；检测服务不支持批量接口（404）时逐条检测
+     */
+    private List<JSONObject> checkRemote(List<String> contents) {
+        if (!verdictCache.isEnabled()) {
+            return callBatch(contents);
+        }
+
+        List<String> keys = new ArrayList<>(contents.size());
+        for (String content : contents) {
+            keys.add(content != null ? verdictCache.key(content) : null);
+        }
+        Map<String, JSONObject> verdicts = verdictCache.getAll(
+                keys.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList()));
+
+        // 未命中的内容去重后调用检测服务
+        Map<String, String> uncached = new LinkedHashMap<>();
+        for (int i = 0; i < contents.size(); i++) {
+            String key = keys.get(i);
+            if (key != null && !verdicts.containsKey(key)) {
+                uncached.putIfAbsent(key, contents.get(i));
+            }
+        }
+        if (!uncached.isEmpty()) {
+            List<String> uncachedKeys = new ArrayList<>(uncached.keySet());
+            List<JSONObject> checked = callBatch(new ArrayList<>(uncached.values()));
+            Map<String, JSONObject> fresh = new HashMap<>();
+            for (int i = 0; i < uncachedKeys.size(); i++) {
+                if (checked.get(i) != null) {
+                    fresh.put(uncachedKeys.get(i), checked.get(i));
+                }
+            }
+            verdictCache.putAll(fresh);
+            verdicts.putAll(fresh);
+        }
+
+        List<JSONObject> results = new ArrayList<>(contents.size());
+        for (String key : keys) {
+            results.add(key != null ? verdicts.get(key) : null);
+        }
+        return results;
+    }
+
+    /**
+     * 按批调用Python批量检测接口（不经过缓存）
+     */
+    private List<JSONObject> callBatch(List<String> contents) {
+        List<JSONObject> results = new ArrayList<>(contents.size());
+        int start = 0;
+        while (start < contents.size()) {
+            int end = start;
+            long bytes = 0;
+            while (end < contents.size() && end - start < batchMaxItems) {
+                long size = utf8Length(contents.get(end));
+                if (end > start && bytes + size > batchMaxBytes) {
+                    break;
+                }
+                bytes += size;
+                end++;
+            }
+            results.addAll(checkChunk(contents.subList(start, end)));
+            start = end;
+        }
+        return results;
+    }
+
+    /**
+     * 发送一批检测请求
+     */
+    private List<JSONObject> checkChunk(List<String> contents) {
+        if (fastFail && instancePool.isUnavailable()) {
+            log.debug("合规检测服务不可用，快速失败: 条数={}", contents.size());
+            return Collections.nCopies(contents.size(), null);
+        }
+        ComplianceInstancePool.Instance instance = instancePool.acquire();
+        if (isSocketTransport()) {
+            return checkChunkSocket(instance, contents);
+        }
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        String url = instance.getBaseUrl() + CHECK_PATH + "/batch";
+        Request request = new Request.Builder()
+                .url(url)
+                .post(LlmJsonCodec.complianceBatchRequest(contents))
+                .build();
+
+        JSONArray array = null;
+        boolean unsupported = false;
+        try (Response response = getClient().newCall(request).execute()) {
+            success = response.code() < 500;
+            if (response.code() == 404) {
+                unsupported = true;
+            } else if (!response.isSuccessful()) {
+                log.error("批量合规检测失败: HTTP {}, 条数={}, instance={}", response.code(), contents.size(), instance.getBaseUrl());
+                return Collections.nCopies(contents.size(), null);
+            } else {
+                array = JSONUtil.parseObj(response.body().string()).getJSONArray("results");
+            }
+        } catch (IOException e) {
+            success = false;
+            log.error("批量合规检测异常: 条数={}, error={}, instance={}", contents.size(), e.getMessage(), instance.getBaseUrl());
+            return Collections.nCopies(contents.size(), null);
+        } finally {
+            instance.finish(success, System.currentTimeMillis() - start);
+        }
+
+        if (unsupported) {
+            // 逐条检测在归还批量请求的实例之后进行，每条重新选择实例
+            log.warn("合规检测服务不支持批量接口，改为逐条检测: {}", url);
+            List<JSONObject> results = new ArrayList<>(contents.size());
+            for (String content : contents) {
+                results.add(callCheck(content));
+            }
+            return results;
+        }
+        if (array == null || array.size() != contents.size()) {
+            log.error("批量合规检测返回条数不一致: 请求{}条, 返回{}条",
+                    contents.size(), array == null ? 0 : array.size());
+            return Collections.nCopies(contents.size(), null);
+        }
+
+        List<JSONObject> results = new ArrayList<>(contents.size());
+        int errors = 0;
+        for (int i = 0; i < array.size(); i++) {
+            JSONObject item = array.getJSONObject(i);
+            if (item == null || item.containsKey("error")) {
+                errors++;
+                results.add(null);
+            } else {
+                results.add(item);
+            }
+        }
+        log.info("批量合规检测完成: 条数={}, 出错={}", contents.size(), errors);
+        return results;
+    }
+
+    /**
+     * 通过长连接发送一批检测请求
+     */
+    private List<JSONObject> checkChunkSocket(ComplianceInstancePool.Instance instance, List<String> contents) {
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            List<JSONObject> results = socketTransport.checkBatch(instance.getBaseUrl(), contents);
+            success = true;
+            log.info("批量合规检测完成: 条数={}, 出错={}", contents.size(), Collections.frequency(results, null));
+            return results;
+        } catch (IOException e) {
+            log.error("批量合规检测异常: 条数={}, error={}, instance={}", contents.size(), e.getMessage(), instance.getBaseUrl());
+            return Collections.nCopies(contents.size(), null);
+        } finally {
+            instance.finish(success, System.currentTimeMillis() - start);
+        }
+    }
+
+    private boolean isSocketTransport() {
+        return "socket".equalsIgnoreCase(transport);
+    }
+
+    /**
+     * 字符串的UTF-8字节数（不实际编码）
+     */
+    private static long utf8Length(String content) {
+        if (content == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 空内容无需检测，直接通过（与Python服务对空内容的返回一致），不计为检测服务出错
+     */
+    private JSONObject emptyContentResult() {
+        JSONObject result = new JSONObject();
+        result.set("result", "PASS");
+        result.set("risk_level", "LOW");
+        result.set("risk_categories", "");
+        result.set("confidence_score", 1.0);
+        result.set("detail", "内容为空，跳过检测");
+        return result;
+    }
+
     /**
      * 获取检测服务不可用时的结果（用于前端显示）
      * 
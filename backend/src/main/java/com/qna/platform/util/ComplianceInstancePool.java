@@ -0,0 +1,271 @@
+package com.qna.platform.util;
+
+import com.qna.platform.service.SystemConfigService;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 合规检测服务实例池
+ * 实例列表来自系统配置 python.compliance.instances（逗号分隔的基础URL），为空时只有 python.service.url 一个实例。
+ * 每次请求选择进行中请求最少的实例（相同时轮流）；连续失败达到阈值或健康检查（/api/health/health）失败的实例
+ * 移出轮换，健康检查恢复后重新加入；所有实例都被移出时仍在全部实例中选择，由请求结果决定
+ *
+ * @author QnA Platform
+ */
+@Slf4j
+@Component
+public class ComplianceInstancePool {
+
+    private static final String HEALTH_PATH = "/api/health/health";
+
+    private final SystemConfigService systemConfigService;
+
+    @Value("${app.compliance.service-url:http://localhost:5000/api/compliance/check}")
+    private String defaultCheckUrl;
+
+    /**
+     * 连续失败多少次后移出实例
+     */
+    @Value("${app.compliance.instances.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Value("${app.compliance.instances.health-timeout:2000}")
+    private int healthTimeout;
+
+    private volatile List<Instance> instances = List.of();
+    private volatile String configuredValue;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private OkHttpClient healthClient;
+
+    public ComplianceInstancePool(SystemConfigService systemConfigService) {
+        this.systemConfigService = systemConfigService;
+    }
+
+    /**
+     * 为一次请求选择实例
+     *
+     * @return 实例，请求结束后必须调用 {@link Instance#finish(boolean, long)}
+     */
+    public Instance acquire() {
+        List<Instance> current = instances;
+        if (current.isEmpty()) {
+            refresh();
+            current = instances;
+        }
+        Instance selected = select(current, true);
+        if (selected == null) {
+            selected = select(current, false);
+        }
+        selected.outstanding.incrementAndGet();
+        selected.requests.increment();
+        return selected;
+    }
+
+    /**
+     * 是否所有实例都已移出轮换（检测服务已知不可用），由健康检查恢复
+     */
+    public boolean isUnavailable() {
+        List<Instance> current = instances;
+        if (current.isEmpty()) {
+            return false;
+        }
+        for (Instance instance : current) {
+            if (!instance.ejected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Instance select(List<Instance> current, boolean healthyOnly) {
+        int size = current.size();
+        int start = Math.floorMod(cursor.getAndIncrement(), size);
+        Instance best = null;
+        for (int i = 0; i < size; i++) {
+            Instance instance = current.get((start + i) % size);
+            if (healthyOnly && instance.ejected) {
+                continue;
+            }
+            if (best == null || instance.outstanding.get() < best.outstanding.get()) {
+                best = instance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 定期重新读取实例列表并对每个实例做健康检查
+     */
+    @Scheduled(fixedDelayString = "${app.compliance.instances.health-interval:10000}")
+    public void healthCheck() {
+        refresh();
+        for (Instance instance : instances) {
+            boolean healthy = probe(instance);
+            if (healthy && instance.ejected) {
+                instance.readmit();
+            } else if (!healthy && !instance.ejected) {
+                instance.eject("健康检查失败");
+            }
+        }
+    }
+
+    /**
+     * 配置变化时重建实例列表，保留仍在列表中的实例的状态和计数
+     */
+    private synchronized void refresh() {
+        String value;
+        try {
+            value = systemConfigService.getConfigValue("python.compliance.instances", "");
+            if (value == null || value.isBlank()) {
+                value = systemConfigService.getConfigValue("python.service.url", "http://localhost:5000");
+            }
+        } catch (Exception e) {
+            if (!instances.isEmpty()) {
+                return;
+            }
+            log.warn("获取合规检测服务实例配置失败，使用默认配置: {}", defaultCheckUrl);
+            value = defaultCheckUrl.replaceFirst("/api/compliance/check$", "");
+        }
+        if (value.equals(configuredValue)) {
+            return;
+        }
+
+        Map<String, Instance> previous = new HashMap<>();
+        for (Instance instance : instances) {
+            previous.put(instance.baseUrl, instance);
+        }
+        List<Instance> updated = new ArrayList<>();
+        for (String url : value.split(",")) {
+            String baseUrl = url.trim().replaceAll("/+$", "");
+            if (!baseUrl.isEmpty() && updated.stream().noneMatch(instance -> instance.baseUrl.equals(baseUrl))) {
+                updated.add(previous.getOrDefault(baseUrl, new Instance(baseUrl)));
+            }
+        }
+        if (updated.isEmpty()) {
+            log.warn("合规检测服务实例配置为空，保留原实例列表: {}", value);
+            return;
+        }
+        instances = List.copyOf(updated);
+        configuredValue = value;
+        log.info("合规检测服务实例: {}", updated.stream().map(instance -> instance.baseUrl).toList());
+    }
+
+    private boolean probe(Instance instance) {
+        if (healthClient == null) {
+            healthClient = new OkHttpClient.Builder()
+                    .connectTimeout(Duration.ofMillis(healthTimeout))
+                    .readTimeout(Duration.ofMillis(healthTimeout))
+                    .build();
+        }
+        Request request = new Request.Builder().url(instance.baseUrl + HEALTH_PATH).get().build();
+        try (Response response = healthClient.newCall(request).execute()) {
+            return response.isSuccessful();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 各实例的状态和计数
+     */
+    public List<Map<String, Object>> stats() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Instance instance : instances) {
+            result.add(instance.stats());
+        }
+        return result;
+    }
+
+    /**
+     * 一个合规检测服务实例
+     */
+    public class Instance {
+        private final String baseUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder finished = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder ejections = new LongAdder();
+        private final LongAdder latencyTotal = new LongAdder();
+        private final AtomicLong maxLatency = new AtomicLong();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile boolean ejected;
+        private volatile String ejectReason;
+
+        Instance(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        /**
+         * 记录请求结果并归还实例
+         *
+         * @param success 是否得到了正常响应（连接失败、超时和5xx为失败）
+         * @param latencyMs 请求耗时（毫秒）
+         */
+        public void finish(boolean success, long latencyMs) {
+            outstanding.decrementAndGet();
+            finished.increment();
+            latencyTotal.add(latencyMs);
+            maxLatency.accumulateAndGet(latencyMs, Math::max);
+            if (success) {
+                consecutiveFailures.set(0);
+                return;
+            }
+            errors.increment();
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold && !ejected) {
+                eject("连续失败" + consecutiveFailures.get() + "次");
+            }
+        }
+
+        private synchronized void eject(String reason) {
+            if (ejected) {
+                return;
+            }
+            ejected = true;
+            ejectReason = reason;
+            ejections.increment();
+            log.warn("合规检测服务实例移出轮换: {}, 原因: {}", baseUrl, reason);
+        }
+
+        private synchronized void readmit() {
+            ejected = false;
+            ejectReason = null;
+            consecutiveFailures.set(0);
+            log.info("合规检测服务实例恢复: {}", baseUrl);
+        }
+
+        private Map<String, Object> stats() {
+            long count = finished.sum();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("baseUrl", baseUrl);
+            stats.put("ejected", ejected);
+            stats.put("ejectReason", ejectReason);
+            stats.put("outstanding", outstanding.get());
+            stats.put("requests", requests.sum());
+            stats.put("errors", errors.sum());
+            stats.put("ejections", ejections.sum());
+            stats.put("avgLatencyMs", count == 0 ? 0 : latencyTotal.sum() / count);
+            stats.put("maxLatencyMs", maxLatency.get());
+            return stats;
+        }
+    }
+}
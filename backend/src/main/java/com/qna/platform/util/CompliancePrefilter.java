@@ -0,0 +1,187 @@
+package com.qna.platform.util;
+
+import cn.hutool.json.JSONObject;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 合规检测敏感词预筛
+ * 使用与Python服务相同的敏感词库（Badwords.txt）构建Aho-Corasick自动机，在调用Python服务之前
+ * 判断仅凭敏感词就能得出结论的内容，直接在本地返回与Python服务相同的结果：
+ * <ul>
+ *   <li>moderate（Python服务默认模式）：未命中敏感词的内容直接通过，命中的交给Python服务由大模型复核</li>
+ *   <li>loose：命中即不通过，未命中即通过，全部在本地判定</li>
+ *   <li>strict：所有内容都需要大模型检测，不做预筛</li>
+ * </ul>
+ * 词库文件变更后自动重新加载；文件不存在或加载失败时不做预筛，全部交给Python服务。
+ * 词库不随代码提供，由部署方放在Python服务的工作目录（Badwords.txt，UTF-8，每行一个词），两端共用同一文件
+ *
+ * @author QnA Platform
+ */
+@Slf4j
+@Component
+public class CompliancePrefilter {
+
+    private final boolean enabled;
+    private final String mode;
+    private final Path badwordsPath;
+
+    private volatile KeywordAutomaton automaton;
+    private volatile long loadedModified = -1;
+    private volatile long loadedSize = -1;
+    private volatile boolean missingLogged;
+
+    private final LongAdder localPass = new LongAdder();
+    private final LongAdder localFail = new LongAdder();
+    private final LongAdder forwarded = new LongAdder();
+
+    public CompliancePrefilter(
+            @Value("${app.compliance.prefilter.enabled:true}") boolean enabled,
+            @Value("${app.compliance.prefilter.mode:moderate}") String mode,
+            @Value("${app.compliance.prefilter.badwords-path:../python-service/Badwords.txt}") String badwordsPath) {
+        this.enabled = enabled;
+        this.mode = mode;
+        this.badwordsPath = Paths.get(badwordsPath);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled || "strict".equals(mode)) {
+            log.info("敏感词本地预筛未启用: enabled={}, mode={}", enabled, mode);
+            return;
+        }
+        reloadIfChanged();
+        if (automaton == null) {
+            log.warn("敏感词本地预筛未启用：未能加载词库 {}，所有内容交给Python服务检测；"
+                    + "词库需由部署方提供，可通过 app.compliance.prefilter.badwords-path 指定", badwordsPath.toAbsolutePath());
+        }
+    }
+
+    /**
+     * 定期检查词库文件，修改时间或大小变化时重新构建自动机
+     */
+    @Scheduled(fixedDelayString = "${app.compliance.prefilter.reload-interval:60000}")
+    public void reloadIfChanged() {
+        if (!enabled || "strict".equals(mode)) {
+            return;
+        }
+        try {
+            if (!Files.isRegularFile(badwordsPath)) {
+                if (automaton != null || !missingLogged) {
+                    log.warn("敏感词库文件不存在，不做本地预筛: {}", badwordsPath.toAbsolutePath());
+                }
+                automaton = null;
+                missingLogged = true;
+                return;
+            }
+            missingLogged = false;
+            long modified = Files.getLastModifiedTime(badwordsPath).toMillis();
+            long size = Files.size(badwordsPath);
+            if (automaton != null && modified == loadedModified && size == loadedSize) {
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+            List<String> words = Files.readAllLines(badwordsPath, StandardCharsets.UTF_8)
+                    .stream()
+                    .map(String::strip)
+                    .filter(word -> !word.isEmpty())
+                    .toList();
+            automaton = KeywordAutomaton.build(words);
+            loadedModified = modified;
+            loadedSize = size;
+            log.info("加载敏感词库: {}, 词数={}, 状态数={}, 耗时={}ms", badwordsPath.toAbsolutePath(),
+                    automaton.getWordCount(), automaton.getStateCount(), System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            // 保留已加载的自动机，下次检查时重试
+            log.error("加载敏感词库失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 预筛内容
+     *
+     * @param content 待检测内容
+     * @return 可以在本地得出的检测结果（与Python服务的规则检测结果格式一致）；
+     *         需要交给Python服务完整检测时返回 null
+     */
+    public JSONObject screen(String content) {
+        KeywordAutomaton current = automaton;
+        if (current == null || content == null) {
+            return null;
+        }
+        String word = current.firstMatch(content);
+        if (word == null) {
+            localPass.increment();
+            return passResult();
+        }
+        if ("loose".equals(mode)) {
+            localFail.increment();
+            return failResult(word);
+        }
+        forwarded.increment();
+        return null;
+    }
+
+    /**
+     * 预筛统计
+     */
+    public Map<String, Object> stats() {
+        KeywordAutomaton current = automaton;
+        long pass = localPass.sum();
+        long fail = localFail.sum();
+        long forward = forwarded.sum();
+        long total = pass + fail + forward;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("mode", mode);
+        stats.put("active", current != null);
+        stats.put("badwordsPath", badwordsPath.toAbsolutePath().toString());
+        stats.put("wordCount", current != null ? current.getWordCount() : 0);
+        stats.put("localPass", pass);
+        stats.put("localFail", fail);
+        stats.put("forwarded", forward);
+        stats.put("localRate", total == 0 ? 0.0 : (double) (pass + fail) / total);
+        return stats;
+    }
+
+    /**
+     * 与Python服务 check_with_rules 未命中敏感词时的结果一致
+     */
+    private static JSONObject passResult() {
+        JSONObject result = new JSONObject();
+        result.set("result", "PASS");
+        result.set("risk_level", "LOW");
+        result.set("risk_categories", "");
+        result.set("confidence_score", 0.99);
+        result.set("detail", "内容检测通过，未发现敏感词");
+        return result;
+    }
+
+    /**
+     * 与Python服务 check_with_rules 命中敏感词时的结果一致
+     */
+    private static JSONObject failResult(String word) {
+        JSONObject result = new JSONObject();
+        result.set("result", "FAIL");
+        result.set("risk_level", "HIGH");
+        result.set("risk_categories", "敏感词汇");
+        result.set("confidence_score", 0.99);
+        result.set("detail", "内容包含敏感词: " + word);
+        return result;
+    }
+}
@@ -0,0 +1,191 @@
+package com.qna.platform.util;
+
+import cn.hutool.json.JSONObject;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.qna.platform.entity.ChatMessage;
+import com.qna.platform.entity.ComplianceRetry;
+import com.qna.platform.mapper.ChatMessageMapper;
+import com.qna.platform.mapper.ComplianceRetryMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 合规检测补检队列
+ * 检测服务不可用（返回非2xx、超时或已知全部实例不可用）而未能检测的消息记录在 compliance_retry 表中，
+ * 服务恢复后定时分批补检；补检仍失败的消息按指数退避推迟下次重试。
+ * 服务重启不影响队列，已经被其他途径检测过的消息直接移出队列
+ *
+ * @author QnA Platform
+ */
+@Slf4j
+@Component
+public class ComplianceRetryQueue {
+
+    private final ComplianceRetryMapper retryMapper;
+    private final ChatMessageMapper messageMapper;
+    private final ComplianceClient complianceClient;
+    private final ComplianceInstancePool instancePool;
+
+    @Value("${app.compliance.retry.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.compliance.retry.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.compliance.retry.max-batches-per-run:10}")
+    private int maxBatchesPerRun;
+
+    /**
+     * 首次重试延迟（秒），之后每次失败翻倍
+     */
+    @Value("${app.compliance.retry.base-delay:30}")
+    private long baseDelay;
+
+    /**
+     * 最大重试间隔（秒）
+     */
+    @Value("${app.compliance.retry.max-delay:3600}")
+    private long maxDelay;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder failedAttempts = new LongAdder();
+
+    public ComplianceRetryQueue(ComplianceRetryMapper retryMapper, ChatMessageMapper messageMapper,
+                                ComplianceClient complianceClient, ComplianceInstancePool instancePool) {
+        this.retryMapper = retryMapper;
+        this.messageMapper = messageMapper;
+        this.complianceClient = complianceClient;
+        this.instancePool = instancePool;
+    }
+
+    /**
+     * 把未能检测的消息加入补检队列
+     *
+     * @param messageIds 消息ID
+     * @param reason 失败原因
+     */
+    public void enqueue(Collection<Long> messageIds, String reason) {
+        if (!enabled || messageIds.isEmpty()) {
+            return;
+        }
+        try {
+            int inserted = retryMapper.batchEnqueue(messageIds, baseDelay, reason);
+            enqueued.add(inserted);
+            log.info("消息加入合规补检队列: {}条, 原因: {}", inserted, reason);
+        } catch (Exception e) {
+            // 补检队列写入失败时消息仍为UNCHECKED，由后台合规扫描兜底
+            log.error("写入合规补检队列失败: {}条, error={}", messageIds.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 定时补检到期的消息；检测服务已知不可用时等待健康检查恢复
+     */
+    @Scheduled(fixedDelayString = "${app.compliance.retry.interval:10000}")
+    public void drain() {
+        if (!enabled || instancePool.isUnavailable()) {
+            return;
+        }
+        try {
+            for (int i = 0; i < maxBatchesPerRun; i++) {
+                if (!drainBatch()) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.error("合规补检失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 补检一批到期的消息
+     *
+     * @return 是否可以继续补检下一批
+     */
+    private boolean drainBatch() {
+        List<ComplianceRetry> due = retryMapper.selectList(new LambdaQueryWrapper<ComplianceRetry>()
+                .le(ComplianceRetry::getNextRetryTime, LocalDateTime.now())
+                .orderByAsc(ComplianceRetry::getNextRetryTime)
+                .last("LIMIT " + batchSize));
+        if (due.isEmpty()) {
+            return false;
+        }
+
+        List<Long> ids = new ArrayList<>(due.size());
+        for (ComplianceRetry retry : due) {
+            ids.add(retry.getMessageId());
+        }
+        // 已删除或已检测过的消息不再补检
+        List<ChatMessage> messages = messageMapper.selectList(new LambdaQueryWrapper<ChatMessage>()
+                .select(ChatMessage::getId, ChatMessage::getContent)
+                .in(ChatMessage::getId, ids)
+                .eq(ChatMessage::getComplianceStatus, "UNCHECKED"));
+
+        List<Long> finished = new ArrayList<>(ids);
+        List<Long> failed = new ArrayList<>();
+        if (!messages.isEmpty()) {
+            List<String> contents = new ArrayList<>(messages.size());
+            for (ChatMessage message : messages) {
+                contents.add(message.getContent());
+            }
+            List<JSONObject> results = complianceClient.checkBatch(contents);
+
+            List<ChatMessage> updates = new ArrayList<>(messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                JSONObject result = results.get(i);
+                if (result == null) {
+                    failed.add(messages.get(i).getId());
+                    continue;
+                }
+                ChatMessage update = new ChatMessage();
+                update.setId(messages.get(i).getId());
+                update.setComplianceStatus(result.getStr("result", "UNCHECKED"));
+                update.setComplianceResult(result.toString());
+                updates.add(update);
+            }
+            if (!updates.isEmpty()) {
+                messageMapper.batchUpdateCompliance(updates);
+            }
+            recovered.add(updates.size());
+            finished.removeAll(failed);
+        }
+
+        if (!finished.isEmpty()) {
+            retryMapper.deleteBatchIds(finished);
+        }
+        if (!failed.isEmpty()) {
+            retryMapper.batchReschedule(failed, baseDelay, maxDelay, "检测服务不可用");
+            failedAttempts.add(failed.size());
+            log.warn("合规补检失败，推迟重试: {}条", failed.size());
+        }
+        // 整批失败时本轮不再继续
+        return failed.size() < messages.size() || messages.isEmpty();
+    }
+
+    /**
+     * 补检队列统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("queued", retryMapper.selectCount(null));
+        stats.put("due", retryMapper.selectCount(new LambdaQueryWrapper<ComplianceRetry>()
+                .le(ComplianceRetry::getNextRetryTime, LocalDateTime.now())));
+        stats.put("enqueued", enqueued.sum());
+        stats.put("recovered", recovered.sum());
+        stats.put("failedAttempts", failedAttempts.sum());
+        stats.put("serviceUnavailable", instancePool.isUnavailable());
+        return stats;
+    }
+}
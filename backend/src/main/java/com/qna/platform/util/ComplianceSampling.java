@@ -0,0 +1,75 @@
+package com.qna.platform.util;
+
+/**
+ * 合规抽样检测的统计计算
+ * 样本量按比例最保守的情况（p=0.5）计算并做有限总体校正；比例的置信区间使用Wilson区间，
+ * 同样按有限总体校正，样本覆盖整个分层时区间退化为检测得到的比例本身
+ *
+ * @author QnA Platform
+ */
+public final class ComplianceSampling {
+
+    private ComplianceSampling() {
+    }
+
+    /**
+     * 双侧置信水平对应的标准正态分位数（Abramowitz-Stegun 26.2.23 近似，误差小于4.5e-4）
+     *
+     * @param confidence 置信水平，如0.95
+     */
+    public static double zScore(double confidence) {
+        double p = (1 - confidence) / 2;
+        double t = Math.sqrt(-2 * Math.log(p));
+        return t - (2.515517 + 0.802853 * t + 0.010328 * t * t)
+                / (1 + 1.432788 * t + 0.189269 * t * t + 0.001308 * t * t * t);
+    }
+
+    /**
+     * 在给定置信度和误差范围下估计一个分层违规率所需的样本量
+     *
+     * @param population 分层的消息总数
+     * @param z 标准正态分位数
+     * @param margin 误差范围，如0.05
+     */
+    public static int sampleSize(long population, double z, double margin) {
+        if (population <= 0) {
+            return 0;
+        }
+        double n0 = z * z * 0.25 / (margin * margin);
+        double n = n0 / (1 + (n0 - 1) / population);
+        return (int) Math.min(population, (long) Math.ceil(n));
+    }
+
+    /**
+     * 比例的置信区间
+     *
+     * @param violations 样本中的违规数
+     * @param checked 样本中得到检测结果的数量
+     * @param population 分层的消息总数
+     * @param z 标准正态分位数
+     * @return [下限, 上限]
+     */
+    public static double[] wilsonInterval(long violations, long checked, long population, double z) {
+        if (checked <= 0) {
+            return new double[]{0.0, 1.0};
+        }
+        double p = (double) violations / checked;
+        if (checked >= population) {
+            return new double[]{p, p};
+        }
+        // 有限总体校正：按方差缩小的比例放大有效样本量
+        double n = population > 1 ? checked * (population - 1.0) / (population - checked) : checked;
+        return wilson(p, n, z);
+    }
+
+    /**
+     * 已知比例和有效样本量时的Wilson区间
+     */
+    public static double[] wilson(double p, double n, double z) {
+        double z2 = z * z;
+        double denominator = 1 + z2 / n;
+        double center = (p + z2 / (2 * n)) / denominator;
+        double half = z / denominator * Math.sqrt(p * (1 - p) / n + z2 / (4 * n * n));
+        return new double[]{Math.max(0.0, center - half), Math.min(1.0, center + half)};
+    }
+}
@@ -0,0 +1,280 @@
+package com.qna.platform.util;
+
+import cn.hutool.json.JSONObject;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.qna.platform.entity.ChatMessage;
+import com.qna.platform.entity.ComplianceScanState;
+import com.qna.platform.mapper.ChatMessageMapper;
+import com.qna.platform.mapper.ComplianceScanStateMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 后台合规扫描
+ * 定时按消息ID顺序找出仍为UNCHECKED的消息（如服务重启时对话检测队列中尚未处理的消息），
+ * 分批调用检测服务并回写结果，已处理的位置（watermark）保存在 compliance_scan_state 表中，重启后继续。
+ * <ul>
+ *   <li>创建时间在宽限期内的消息留给对话检测队列，不与其重复检测</li>
+ *   <li>已在补检队列中的消息由补检队列处理；服务可用时个别检测失败的消息记入补检队列后越过，整批失败时不推进</li>
+ *   <li>对话检测队列积压、检测服务不可用或延迟过高时按指数退避暂停扫描</li>
+ * </ul>
+ *
+ * @author QnA Platform
+ */
+@Slf4j
+@Component
+public class ComplianceScanner {
+
+    private static final String SCANNER_NAME = "unchecked-messages";
+
+    private final ChatMessageMapper messageMapper;
+    private final ComplianceScanStateMapper stateMapper;
+    private final ComplianceClient complianceClient;
+    private final ChatComplianceQueue chatQueue;
+    private final ComplianceRetryQueue retryQueue;
+
+    @Value("${app.compliance.scanner.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.compliance.scanner.interval:10000}")
+    private long interval;
+
+    /**
+     * 每批消息数
+     */
+    @Value("${app.compliance.scanner.batch-size:100}")
+    private int batchSize;
+
+    /**
+     * 每次扫描最多处理的批数
+     */
+    @Value("${app.compliance.scanner.max-batches-per-run:10}")
+    private int maxBatchesPerRun;
+
+    /**
+     * 宽限期（毫秒），创建时间在此之内的消息不扫描
+     */
+    @Value("${app.compliance.scanner.grace-period:60000}")
+    private long gracePeriod;
+
+    /**
+     * 对话检测队列积压达到该数量时暂停扫描
+     */
+    @Value("${app.compliance.scanner.busy-queue-depth:100}")
+    private int busyQueueDepth;
+
+    /**
+     * 一批检测耗时超过该值（毫秒）时暂停扫描
+     */
+    @Value("${app.compliance.scanner.latency-threshold:10000}")
+    private long latencyThreshold;
+
+    @Value("${app.compliance.scanner.max-backoff:600000}")
+    private long maxBackoff;
+
+    private volatile Long watermark;
+    private volatile long nextRunAt;
+    private volatile long backoffMs;
+    private volatile String pauseReason;
+    private volatile long lastLatencyMs;
+
+    private final LongAdder checkedCount = new LongAdder();
+    private final LongAdder unavailableCount = new LongAdder();
+    private final LongAdder deferredCount = new LongAdder();
+
+    public ComplianceScanner(ChatMessageMapper messageMapper, ComplianceScanStateMapper stateMapper,
+                             ComplianceClient complianceClient, ChatComplianceQueue chatQueue,
+                             ComplianceRetryQueue retryQueue) {
+        this.messageMapper = messageMapper;
+        this.stateMapper = stateMapper;
+        this.complianceClient = complianceClient;
+        this.chatQueue = chatQueue;
+        this.retryQueue = retryQueue;
+    }
+
+    @Scheduled(fixedDelayString = "${app.compliance.scanner.interval:10000}",
+            initialDelayString = "${app.compliance.scanner.interval:10000}")
+    public void scan() {
+        if (!enabled || System.currentTimeMillis() < nextRunAt) {
+            return;
+        }
+        try {
+            if (watermark == null) {
+                watermark = loadWatermark();
+                log.info("后台合规扫描启动: watermark={}", watermark);
+            }
+            for (int i = 0; i < maxBatchesPerRun; i++) {
+                int pending = chatQueue.pendingCount();
+                if (pending >= busyQueueDepth) {
+                    backOff("对话检测队列积压: " + pending + "条");
+                    return;
+                }
+                if (!scanBatch()) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.error("后台合规扫描失败: {}", e.getMessage());
+            backOff("扫描异常: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 扫描一批消息
+     *
+     * @return 是否可以立即继续扫描下一批
+     */
+    private boolean scanBatch() {
+        List<ChatMessage> rows = messageMapper.selectList(new LambdaQueryWrapper<ChatMessage>()
+                .select(ChatMessage::getId, ChatMessage::getContent, ChatMessage::getCreatedTime)
+                .eq(ChatMessage::getComplianceStatus, "UNCHECKED")
+                .gt(ChatMessage::getId, watermark)
+                .notExists("SELECT 1 FROM compliance_retry r WHERE r.message_id = chat_message.id")
+                .orderByAsc(ChatMessage::getId)
+                .last("LIMIT " + batchSize));
+
+        // 只处理宽限期之前的消息，遇到较新的消息即停止，不越过它推进watermark
+        LocalDateTime cutoff = LocalDateTime.now().minus(Duration.ofMillis(gracePeriod));
+        List<ChatMessage> batch = new ArrayList<>(rows.size());
+        for (ChatMessage row : rows) {
+            if (row.getCreatedTime() != null && !row.getCreatedTime().isBefore(cutoff)) {
+                break;
+            }
+            batch.add(row);
+        }
+        if (batch.isEmpty()) {
+            resetBackoff();
+            return false;
+        }
+
+        List<String> contents = new ArrayList<>(batch.size());
+        for (ChatMessage message : batch) {
+            contents.add(message.getContent());
+        }
+        long start = System.currentTimeMillis();
+        List<JSONObject> results = complianceClient.checkBatch(contents);
+        lastLatencyMs = System.currentTimeMillis() - start;
+
+        List<ChatMessage> updates = new ArrayList<>(batch.size());
+        List<Long> failedIds = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            JSONObject result = results.get(i);
+            if (result == null) {
+                failedIds.add(batch.get(i).getId());
+                continue;
+            }
+            ChatMessage update = new ChatMessage();
+            update.setId(batch.get(i).getId());
+            update.setComplianceStatus(result.getStr("result", "UNCHECKED"));
+            update.setComplianceResult(result.toString());
+            updates.add(update);
+        }
+        if (!updates.isEmpty()) {
+            messageMapper.batchUpdateCompliance(updates);
+        }
+        checkedCount.add(updates.size());
+        unavailableCount.add(batch.size() - updates.size());
+
+        if (updates.isEmpty()) {
+            // 整批失败视为检测服务不可用，不推进watermark，恢复后从这里继续
+            backOff("检测服务不可用");
+            return false;
+        }
+        if (!failedIds.isEmpty()) {
+            retryQueue.enqueue(failedIds, "后台扫描检测失败");
+            deferredCount.add(failedIds.size());
+        }
+        advance(batch.get(batch.size() - 1).getId());
+
+        if (lastLatencyMs > latencyThreshold) {
+            backOff("检测服务延迟过高: " + lastLatencyMs + "ms");
+            return false;
+        }
+        resetBackoff();
+        // 没有读满一批说明已追上
+        return batch.size() == batchSize;
+    }
+
+    /**
+     * 推进watermark；以原值为条件更新，其他实例已推进时改用表中的值
+     */
+    private void advance(long newMark) {
+        long current = watermark;
+        if (newMark <= current) {
+            return;
+        }
+        int updated = stateMapper.update(null, new LambdaUpdateWrapper<ComplianceScanState>()
+                .eq(ComplianceScanState::getScannerName, SCANNER_NAME)
+                .eq(ComplianceScanState::getWatermark, current)
+                .set(ComplianceScanState::getWatermark, newMark));
+        if (updated > 0) {
+            watermark = newMark;
+        } else {
+            watermark = loadWatermark();
+            log.info("后台合规扫描进度已被其他实例更新: watermark={}", watermark);
+        }
+    }
+
+    private long loadWatermark() {
+        ComplianceScanState state = stateMapper.selectById(SCANNER_NAME);
+        if (state != null) {
+            return state.getWatermark();
+        }
+        state = new ComplianceScanState();
+        state.setScannerName(SCANNER_NAME);
+        state.setWatermark(0L);
+        try {
+            stateMapper.insert(state);
+        } catch (DuplicateKeyException e) {
+            return stateMapper.selectById(SCANNER_NAME).getWatermark();
+        }
+        return 0L;
+    }
+
+    private void backOff(String reason) {
+        backoffMs = backoffMs == 0 ? interval : Math.min(maxBackoff, backoffMs * 2);
+        nextRunAt = System.currentTimeMillis() + backoffMs;
+        if (!reason.equals(pauseReason)) {
+            log.warn("后台合规扫描暂停: {}, {}ms后重试", reason, backoffMs);
+        }
+        pauseReason = reason;
+    }
+
+    private void resetBackoff() {
+        if (pauseReason != null) {
+            log.info("后台合规扫描恢复: watermark={}", watermark);
+        }
+        backoffMs = 0;
+        nextRunAt = 0;
+        pauseReason = null;
+    }
+
+    /**
+     * 扫描统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("watermark", watermark);
+        stats.put("checked", checkedCount.sum());
+        stats.put("unavailable", unavailableCount.sum());
+        stats.put("deferred", deferredCount.sum());
+        stats.put("lastLatencyMs", lastLatencyMs);
+        stats.put("pauseReason", pauseReason);
+        stats.put("backoffMs", backoffMs);
+        stats.put("nextRunInMs", Math.max(0, nextRunAt - System.currentTimeMillis()));
+        return stats;
+    }
+}
@@ -0,0 +1,264 @@
+package com.qna.platform.util;
+
+import cn.hutool.json.JSONObject;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 合规检测长连接传输
+ * 与Python服务的长连接服务（services/compliance_socket_server.py）通信：每个实例保持少量TCP长连接，
+ * 多个线程的请求在同一连接上连续发送（流水线），由读线程按请求ID把响应交给对应的调用方。
+ * 帧格式为4字节长度前缀加定长字段和UTF-8字符串，省去HTTP请求头和JSON的编码解析，详见Python端说明
+ *
+ * @author QnA Platform
+ */
+@Slf4j
+@Component
+public class ComplianceSocketTransport {
+
+    private static final byte OP_CHECK = 0x01;
+    private static final byte OP_CHECK_BATCH = 0x02;
+    private static final int STATUS_OK = 0;
+
+    /**
+     * Python服务长连接端口，主机与实例的HTTP地址相同
+     */
+    @Value("${app.compliance.transport.socket-port:5001}")
+    private int socketPort;
+
+    /**
+     * 每个实例的连接数
+     */
+    @Value("${app.compliance.transport.connections:2}")
+    private int connectionsPerInstance;
+
+    @Value("${app.compliance.timeout:30000}")
+    private long timeout;
+
+    private final Map<String, Connection[]> connections = new ConcurrentHashMap<>();
+    private final AtomicInteger requestIds = new AtomicInteger();
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    /**
+     * 单条检测
+     *
+     * @param baseUrl 实例的HTTP基础URL
+     * @return 检测结果，服务端单条检测出错时返回 null
+     * @throws IOException 连接失败、超时或服务端处理失败
+     */
+    public JSONObject check(String baseUrl, String content) throws IOException {
+        ByteBuffer response = call(baseUrl, OP_CHECK, out -> writeString(out, content));
+        return readItem(response);
+    }
+
+    /**
+     * 批量检测
+     *
+     * @return 与contents顺序一致的结果，单条出错的位置为 null
+     * @throws IOException 连接失败、超时或服务端处理失败
+     */
+    public List<JSONObject> checkBatch(String baseUrl, List<String> contents) throws IOException {
+        ByteBuffer response = call(baseUrl, OP_CHECK_BATCH, out -> {
+            out.writeInt(contents.size());
+            for (String content : contents) {
+                writeString(out, content);
+            }
+        });
+        int count = response.getInt();
+        if (count != contents.size()) {
+            throw new IOException("返回条数不一致: 请求" + contents.size() + "条, 返回" + count + "条");
+        }
+        List<JSONObject> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(readItem(response));
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Connection[] pool : connections.values()) {
+            for (Connection connection : pool) {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+        connections.clear();
+    }
+
+    private ByteBuffer call(String baseUrl, byte op, PayloadWriter payload) throws IOException {
+        int requestId = requestIds.incrementAndGet();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeInt(requestId);
+        body.writeByte(op);
+        payload.write(body);
+
+        Connection connection = connection(baseUrl);
+        CompletableFuture<ByteBuffer> future = connection.send(requestId, bytes.toByteArray());
+        ByteBuffer response;
+        try {
+            response = future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            connection.pending.remove(requestId);
+            throw new IOException("长连接请求超时: " + timeout + "ms");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("长连接请求被中断");
+        }
+
+        if (response.get() != STATUS_OK) {
+            throw new IOException("长连接请求处理失败: " + readString(response));
+        }
+        return response;
+    }
+
+    /**
+     * 选择实例的一个连接，已断开的连接在这里重建
+     */
+    private Connection connection(String baseUrl) throws IOException {
+        URI uri = URI.create(baseUrl);
+        String key = uri.getHost() + ":" + socketPort;
+        Connection[] pool = connections.computeIfAbsent(key, k -> new Connection[Math.max(1, connectionsPerInstance)]);
+        int index = Math.floorMod(cursor.getAndIncrement(), pool.length);
+        synchronized (pool) {
+            Connection connection = pool[index];
+            if (connection == null || connection.closed) {
+                connection = new Connection(uri.getHost(), socketPort, timeout);
+                pool[index] = connection;
+            }
+            return connection;
+        }
+    }
+
+    private static JSONObject readItem(ByteBuffer buffer) {
+        if (buffer.get() != 0) {
+            log.warn("长连接单条检测出错: {}", readString(buffer));
+            return null;
+        }
+        JSONObject result = new JSONObject();
+        result.set("result", readString(buffer));
+        result.set("risk_level", readString(buffer));
+        result.set("risk_categories", readString(buffer));
+        result.set("confidence_score", buffer.getDouble());
+        result.set("detail", readString(buffer));
+        return result;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] data = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    @FunctionalInterface
+    private interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * 一个长连接：调用方线程加锁写入请求帧，读线程持续读取响应帧并按请求ID完成对应的Future
+     */
+    private static class Connection {
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        private final Map<Integer, CompletableFuture<ByteBuffer>> pending = new ConcurrentHashMap<>();
+        private volatile boolean closed;
+
+        Connection(String host, int port, long connectTimeout) throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(new InetSocketAddress(host, port), (int) connectTimeout);
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            Thread reader = new Thread(this::readLoop, "compliance-socket-" + host + ":" + port);
+            reader.setDaemon(true);
+            reader.start();
+            log.info("合规检测长连接已建立: {}:{}", host, port);
+        }
+
+        CompletableFuture<ByteBuffer> send(int requestId, byte[] body) throws IOException {
+            CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+            pending.put(requestId, future);
+            try {
+                synchronized (out) {
+                    out.writeInt(body.length);
+                    out.write(body);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                pending.remove(requestId);
+                close();
+                throw e;
+            }
+            return future;
+        }
+
+        private void readLoop() {
+            try {
+                while (!closed) {
+                    byte[] body = new byte[in.readInt()];
+                    in.readFully(body);
+                    ByteBuffer buffer = ByteBuffer.wrap(body);
+                    CompletableFuture<ByteBuffer> future = pending.remove(buffer.getInt());
+                    if (future != null) {
+                        future.complete(buffer);
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("合规检测长连接断开: {}", e.getMessage());
+                }
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // 关闭时的异常无需处理
+            }
+            IOException error = new IOException("长连接已断开");
+            pending.values().forEach(future -> future.completeExceptionally(error));
+            pending.clear();
+        }
+    }
+}
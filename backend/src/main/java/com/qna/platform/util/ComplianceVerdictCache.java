@@ -0,0 +1,247 @@
+package com.qna.platform.util;
+
+import cn.hutool.crypto.SecureUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.qna.platform.entity.ComplianceVerdict;
+import com.qna.platform.mapper.ComplianceVerdictMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 合规检测结果缓存
+ * key为 规则版本、检测模式和规范化内容的哈希；内存中按LRU保留最近使用的条目，
+ * 全部结果写入 compliance_verdict_cache 表，重启后仍可命中。内存和表中的条目都按写入时的过期时间失效。
+ * 只缓存明确的检测结论，检测服务出错（置信度为0）的结果不缓存。
+ * 敏感词库或检测模型变更后修改 app.compliance.verdict-cache.version，旧结果即全部失效
+ *
+ * @author QnA Platform
+ */
+@Slf4j
+@Component
+public class ComplianceVerdictCache {
+
+    /**
+     * Python服务未指定mode时使用的默认检测模式
+     */
+    private static final String DEFAULT_MODE = "moderate";
+
+    /**
+     * 单条查询/写入语句最多携带的哈希数
+     */
+    private static final int DB_BATCH_SIZE = 500;
+
+    private final ComplianceVerdictMapper verdictMapper;
+    private final boolean enabled;
+    private final String version;
+    private final int maxEntries;
+    private final long ttlSeconds;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder dbHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ComplianceVerdictCache(
+            ComplianceVerdictMapper verdictMapper,
+            @Value("${app.compliance.verdict-cache.enabled:true}") boolean enabled,
+            @Value("${app.compliance.verdict-cache.version:v1}") String version,
+            @Value("${app.compliance.verdict-cache.max-entries:20000}") int maxEntries,
+            @Value("${app.compliance.verdict-cache.ttl:604800}") long ttlSeconds) {
+        this.verdictMapper = verdictMapper;
+        this.enabled = enabled;
+        this.version = version;
+        this.maxEntries = maxEntries;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计算内容的缓存key
+     */
+    public String key(String content) {
+        return SecureUtil.sha256(version + '\u0001' + DEFAULT_MODE + '\u0001' + normalize(content));
+    }
+
+    /**
+     * 批量读取缓存：先查内存，未命中的再用一条查询读表
+     *
+     * @param keys 缓存key
+     * @return 命中的检测结果，key为缓存key
+     */
+    public Map<String, JSONObject> getAll(Collection<String> keys) {
+        Map<String, JSONObject> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        synchronized (this) {
+            for (String key : keys) {
+                Entry entry = entries.get(key);
+                if (entry != null && entry.expireTime.isAfter(now)) {
+                    found.put(key, JSONUtil.parseObj(entry.verdict));
+                } else {
+                    if (entry != null) {
+                        entries.remove(key);
+                    }
+                    missing.add(key);
+                }
+            }
+        }
+        memoryHits.add(found.size());
+
+        if (!missing.isEmpty()) {
+            try {
+                for (int i = 0; i < missing.size(); i += DB_BATCH_SIZE) {
+                    List<String> batch = missing.subList(i, Math.min(i + DB_BATCH_SIZE, missing.size()));
+                    List<ComplianceVerdict> rows = verdictMapper.selectList(new LambdaQueryWrapper<ComplianceVerdict>()
+                            .in(ComplianceVerdict::getContentHash, batch)
+                            .gt(ComplianceVerdict::getExpireTime, now));
+                    for (ComplianceVerdict row : rows) {
+                        found.put(row.getContentHash(), JSONUtil.parseObj(row.getVerdict()));
+                        remember(row.getContentHash(), row.getVerdict(), row.getExpireTime());
+                    }
+                    dbHits.add(rows.size());
+                }
+            } catch (Exception e) {
+                log.warn("读取合规检测结果缓存失败: {}", e.getMessage());
+            }
+        }
+        misses.add(keys.size() - found.size());
+        return found;
+    }
+
+    /**
+     * 批量写入检测结果（内存和表）
+     *
+     * @param verdicts key为缓存key
+     */
+    public void putAll(Map<String, JSONObject> verdicts) {
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(ttlSeconds);
+        List<ComplianceVerdict> rows = new ArrayList<>(verdicts.size());
+        verdicts.forEach((key, result) -> {
+            if (!isCacheable(result)) {
+                return;
+            }
+            String verdict = result.toString();
+            remember(key, verdict, expireTime);
+
+            ComplianceVerdict row = new ComplianceVerdict();
+            row.setContentHash(key);
+            row.setVerdict(verdict);
+            row.setRuleVersion(version);
+            row.setExpireTime(expireTime);
+            rows.add(row);
+        });
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            for (int i = 0; i < rows.size(); i += DB_BATCH_SIZE) {
+                verdictMapper.batchUpsert(rows.subList(i, Math.min(i + DB_BATCH_SIZE, rows.size())));
+            }
+        } catch (Exception e) {
+            log.warn("写入合规检测结果缓存失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 定期删除表中的过期结果
+     */
+    @Scheduled(fixedDelay = 3600000)
+    public void evictExpired() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int deleted = verdictMapper.delete(new LambdaQueryWrapper<ComplianceVerdict>()
+                    .lt(ComplianceVerdict::getExpireTime, LocalDateTime.now()));
+            if (deleted > 0) {
+                log.info("清理过期的合规检测结果缓存: {}条", deleted);
+            }
+        } catch (Exception e) {
+            log.warn("清理合规检测结果缓存失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 缓存统计
+     */
+    public Map<String, Object> stats() {
+        long memory = memoryHits.sum();
+        long db = dbHits.sum();
+        long missCount = misses.sum();
+        long total = memory + db + missCount;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("version", version);
+        stats.put("memoryHits", memory);
+        stats.put("dbHits", db);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total == 0 ? 0.0 : (double) (memory + db) / total);
+        // 每次命中即少调用一次Python服务
+        stats.put("avoidedCalls", memory + db);
+        synchronized (this) {
+            stats.put("entries", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        return stats;
+    }
+
+    private synchronized void remember(String key, String verdict, LocalDateTime expireTime) {
+        entries.put(key, new Entry(verdict, expireTime));
+        if (entries.size() > maxEntries) {
+            entries.remove(entries.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * 内存中的检测结果及其过期时间
+     */
+    private static class Entry {
+        private final String verdict;
+        private final LocalDateTime expireTime;
+
+        Entry(String verdict, LocalDateTime expireTime) {
+            this.verdict = verdict;
+            this.expireTime = expireTime;
+        }
+    }
+
+    /**
+     * 只缓存明确的PASS/FAIL结论；Python服务在大模型不可用等情况下返回置信度为0的FAIL，不能复用
+     */
+    private static boolean isCacheable(JSONObject result) {
+        if (result == null || result.containsKey("error")) {
+            return false;
+        }
+        String status = result.getStr("result");
+        if (!"PASS".equals(status) && !"FAIL".equals(status)) {
+            return false;
+        }
+        Double confidence = result.getDouble("confidence_score");
+        return confidence != null && confidence > 0;
+    }
+
+    /**
+     * 规范化内容：去掉首尾空白，连续空白合并为一个空格
+     */
+    private static String normalize(String content) {
+        return content.trim().replaceAll("\\s+", " ");
+    }
+}
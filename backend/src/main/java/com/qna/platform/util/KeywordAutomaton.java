@@ -0,0 +1,163 @@
+package com.qna.platform.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 敏感词Aho-Corasick自动机
+ * 构建后不可变，可被多个线程同时使用；一次扫描即可找出内容中的敏感词，耗时与敏感词数量无关。
+ * 匹配规则与Python服务的 DFAFilter.search 一致：区分大小写，按字符精确匹配
+ *
+ * @author QnA Platform
+ */
+public final class KeywordAutomaton {
+
+    /**
+     * 每个状态的出边字符（升序）及对应的目标状态
+     */
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] fail;
+    /**
+     * 在该状态结束的最长敏感词长度（包括失败链上的输出），0表示没有
+     */
+    private final int[] outputLength;
+    private final int maxWordLength;
+    private final int wordCount;
+
+    private KeywordAutomaton(char[][] edgeChars, int[][] edgeTargets, int[] fail,
+                             int[] outputLength, int maxWordLength, int wordCount) {
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.outputLength = outputLength;
+        this.maxWordLength = maxWordLength;
+        this.wordCount = wordCount;
+    }
+
+    /**
+     * 由敏感词构建自动机，空白词忽略
+     */
+    public static KeywordAutomaton build(Collection<String> words) {
+        // 先构建字典树
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> wordLength = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        wordLength.add(0);
+        int maxWordLength = 0;
+        int wordCount = 0;
+        for (String word : words) {
+            if (word == null || word.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < word.length(); i++) {
+                Integer next = trie.get(state).get(word.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    wordLength.add(0);
+                    trie.get(state).put(word.charAt(i), next);
+                }
+                state = next;
+            }
+            if (wordLength.get(state) == 0) {
+                wordCount++;
+            }
+            wordLength.set(state, word.length());
+            maxWordLength = Math.max(maxWordLength, word.length());
+        }
+
+        int size = trie.size();
+        char[][] edgeChars = new char[size][];
+        int[][] edgeTargets = new int[size][];
+        int[] outputLength = new int[size];
+        for (int state = 0; state < size; state++) {
+            TreeMap<Character, Integer> edges = trie.get(state);
+            edgeChars[state] = new char[edges.size()];
+            edgeTargets[state] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                edgeChars[state][i] = edge.getKey();
+                edgeTargets[state][i] = edge.getValue();
+                i++;
+            }
+            outputLength[state] = wordLength.get(state);
+        }
+
+        // 按层计算失败指针，同时把失败链上的输出合并到当前状态
+        int[] fail = new int[size];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int target : edgeTargets[0]) {
+            queue.add(target);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < edgeChars[state].length; i++) {
+                char c = edgeChars[state][i];
+                int target = edgeTargets[state][i];
+                int f = fail[state];
+                int next;
+                while ((next = step(edgeChars, edgeTargets, f, c)) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[target] = next >= 0 ? next : 0;
+                outputLength[target] = Math.max(outputLength[target], outputLength[fail[target]]);
+                queue.add(target);
+            }
+        }
+        return new KeywordAutomaton(edgeChars, edgeTargets, fail, outputLength, maxWordLength, wordCount);
+    }
+
+    /**
+     * 查找内容中的第一个敏感词：起始位置最靠前，起始位置相同时取最短的
+     *
+     * @return 敏感词，没有时返回 null
+     */
+    public String firstMatch(String content) {
+        if (content == null || wordCount == 0) {
+            return null;
+        }
+        int state = 0;
+        int bestStart = Integer.MAX_VALUE;
+        int bestEnd = -1;
+        for (int j = 0; j < content.length(); j++) {
+            // 之后结束的匹配起始位置都不会早于当前最优
+            if (j - maxWordLength + 1 >= bestStart) {
+                break;
+            }
+            char c = content.charAt(j);
+            int next;
+            while ((next = step(edgeChars, edgeTargets, state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next >= 0 ? next : 0;
+            if (outputLength[state] > 0) {
+                int start = j - outputLength[state] + 1;
+                if (start < bestStart) {
+                    bestStart = start;
+                    bestEnd = j;
+                }
+            }
+        }
+        return bestEnd >= 0 ? content.substring(bestStart, bestEnd + 1) : null;
+    }
+
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    public int getStateCount() {
+        return fail.length;
+    }
+
+    private static int step(char[][] edgeChars, int[][] edgeTargets, int state, char c) {
+        int index = Arrays.binarySearch(edgeChars[state], c);
+        return index >= 0 ? edgeTargets[state][index] : -1;
+    }
+}
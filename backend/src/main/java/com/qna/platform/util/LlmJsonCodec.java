@@ -0,0 +1,300 @@
+package com.qna.platform.util;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.qna.platform.entity.ApiConfig;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 大模型请求/响应的JSON编解码
+ * 基于Jackson流式API：请求体直接写入OkHttp的输出流，不构建中间Map和JSON字符串；
+ * 响应只按路径提取需要的字段，其余子树直接跳过，不构建JSON树
+ *
+ * @author QnA Platform
+ */
+public final class LlmJsonCodec {
+
+    public static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private static final String[] OPENAI_CONTENT = {"choices.0.message.content"};
+    private static final String[] ANTHROPIC_CONTENT = {"content.0.text"};
+    private static final String[] DEFAULT_CONTENT = {"choices.0.message.content", "content.0.text", "content"};
+
+    private static final String[] OPENAI_DELTA = {"choices.0.delta.content"};
+    private static final String[] ANTHROPIC_DELTA = {"type", "delta.text"};
+    private static final String[] DEFAULT_DELTA = {"choices.0.delta.content", "delta.text"};
+
+    private LlmJsonCodec() {
+    }
+
+    /**
+     * 构建对话请求体
+     *
+     * @param apiConfig API配置（提供商、模型、参数）
+     * @param messages 消息列表
+     * @param stream 是否开启流式输出
+     */
+    public static RequestBody chatRequest(ApiConfig apiConfig, List<Map<String, String>> messages, boolean stream) {
+        return new JsonRequestBody() {
+            @Override
+            void write(JsonGenerator gen) throws IOException {
+                writeChatRequest(gen, apiConfig, messages, stream);
+            }
+        };
+    }
+
+    /**
+     * 构建合规检测请求体：{"content": "..."}
+     */
+    public static RequestBody complianceRequest(String content) {
+        return new JsonRequestBody() {
+            @Override
+            void write(JsonGenerator gen) throws IOException {
+                gen.writeStartObject();
+                gen.writeStringField("content", content);
+                gen.writeEndObject();
+            }
+        };
+    }
+
+    /**
+     * 构建批量合规检测请求体：{"contents": ["...", ...]}
+     */
+    public static RequestBody complianceBatchRequest(List<String> contents) {
+        return new JsonRequestBody() {
+            @Override
+            void write(JsonGenerator gen) throws IOException {
+                gen.writeStartObject();
+                gen.writeArrayFieldStart("contents");
+                for (String content : contents) {
+                    gen.writeString(content);
+                }
+                gen.writeEndArray();
+                gen.writeEndObject();
+            }
+        };
+    }
+
+    /**
+     * 从对话响应中读取回复内容
+     *
+     * @param provider API提供商
+     * @param body 响应体输入流
+     * @return 回复内容，找不到时返回null
+     */
+    public static String readChatContent(String provider, InputStream body) throws IOException {
+        String[] paths;
+        switch (provider.toUpperCase()) {
+            case "OPENAI":
+            case "DEEPSEEK":  // DeepSeek使用OpenAI响应格式
+            case "LOCAL":
+                paths = OPENAI_CONTENT;
+                break;
+            case "ANTHROPIC":
+                paths = ANTHROPIC_CONTENT;
+                break;
+            default:
+                // 尝试多种可能的路径
+                paths = DEFAULT_CONTENT;
+        }
+        try (JsonParser parser = FACTORY.createParser(body)) {
+            return firstFound(extract(parser, paths));
+        }
+    }
+
+    /**
+     * 从流式响应的一个data块中读取增量文本
+     *
+     * @param provider API提供商
+     * @param data data块内容（JSON）
+     * @return 增量文本，没有时返回null
+     */
+    public static String readStreamDelta(String provider, String data) throws IOException {
+        switch (provider.toUpperCase()) {
+            case "OPENAI":
+            case "DEEPSEEK":
+            case "LOCAL":
+                return firstFound(extract(data, OPENAI_DELTA));
+
+            case "ANTHROPIC":
+                // 只有 content_block_delta 事件携带文本，其余事件（message_start、ping等）忽略
+                String[] values = extract(data, ANTHROPIC_DELTA);
+                return "content_block_delta".equals(values[0]) ? values[1] : null;
+
+            default:
+                return firstFound(extract(data, DEFAULT_DELTA));
+        }
+    }
+
+    private static void writeChatRequest(JsonGenerator gen, ApiConfig apiConfig,
+                                         List<Map<String, String>> messages, boolean stream) throws IOException {
+        // 判断URL中是否已包含模型名称（避免重复）
+        boolean modelInUrl = apiConfig.getApiEndpoint() != null
+                && (apiConfig.getApiEndpoint().contains("{model}") || apiConfig.getApiEndpoint().contains("{modelName}"));
+
+        gen.writeStartObject();
+        if ("ANTHROPIC".equalsIgnoreCase(apiConfig.getProvider())) {
+            // Claude通常不使用URL路径模式；系统消息放在顶层system字段
+            writeStringIfPresent(gen, "model", apiConfig.getModelName());
+            writeCommonParams(gen, apiConfig);
+
+            String systemMessage = null;
+            gen.writeArrayFieldStart("messages");
+            for (Map<String, String> msg : messages) {
+                if ("system".equals(msg.get("role"))) {
+                    systemMessage = msg.get("content");
+                } else {
+                    writeMessage(gen, msg);
+                }
+            }
+            gen.writeEndArray();
+            writeStringIfPresent(gen, "system", systemMessage);
+        } else {
+            // OpenAI兼容格式（OpenAI、DeepSeek、本地模型及其他）
+            if (!modelInUrl) {
+                writeStringIfPresent(gen, "model", apiConfig.getModelName());
+            }
+            gen.writeArrayFieldStart("messages");
+            for (Map<String, String> msg : messages) {
+                writeMessage(gen, msg);
+            }
+            gen.writeEndArray();
+            writeCommonParams(gen, apiConfig);
+        }
+        if (stream) {
+            gen.writeBooleanField("stream", true);
+        }
+        gen.writeEndObject();
+    }
+
+    private static void writeCommonParams(JsonGenerator gen, ApiConfig apiConfig) throws IOException {
+        if (apiConfig.getMaxTokens() != null) {
+            gen.writeNumberField("max_tokens", apiConfig.getMaxTokens());
+        }
+        if (apiConfig.getTemperature() != null) {
+            gen.writeNumberField("temperature", apiConfig.getTemperature());
+        }
+    }
+
+    private static void writeMessage(JsonGenerator gen, Map<String, String> msg) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("role", msg.get("role"));
+        gen.writeStringField("content", msg.get("content"));
+        gen.writeEndObject();
+    }
+
+    private static void writeStringIfPresent(JsonGenerator gen, String field, String value) throws IOException {
+        if (value != null) {
+            gen.writeStringField(field, value);
+        }
+    }
+
+    private static String[] extract(String json, String[] paths) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            return extract(parser, paths);
+        }
+    }
+
+    /**
+     * 按路径提取标量值，路径格式如 choices.0.message.content（数字表示数组下标）
+     *
+     * @return 与paths一一对应的值，未找到的为null
+     */
+    private static String[] extract(JsonParser parser, String[] paths) throws IOException {
+        String[] found = new String[paths.length];
+        if (parser.nextToken() != null) {
+            walk(parser, "", paths, found);
+        }
+        return found;
+    }
+
+    private static void walk(JsonParser parser, String path, String[] paths, String[] found) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            if (!isPrefixOfAny(path, paths)) {
+                parser.skipChildren();
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String child = path.isEmpty() ? parser.currentName() : path + "." + parser.currentName();
+                parser.nextToken();
+                walk(parser, child, paths, found);
+            }
+        } else if (token == JsonToken.START_ARRAY) {
+            if (!isPrefixOfAny(path, paths)) {
+                parser.skipChildren();
+                return;
+            }
+            int index = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                walk(parser, path + "." + index++, paths, found);
+            }
+        } else if (token != null && token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+            for (int i = 0; i < paths.length; i++) {
+                if (found[i] == null && paths[i].equals(path)) {
+                    found[i] = parser.getValueAsString();
+                }
+            }
+        }
+    }
+
+    /**
+     * path是否为某个目标路径本身或其前缀（按段匹配）
+     */
+    private static boolean isPrefixOfAny(String path, String[] paths) {
+        if (path.isEmpty()) {
+            return true;
+        }
+        for (String target : paths) {
+            if (target.startsWith(path)
+                    && (target.length() == path.length() || target.charAt(path.length()) == '.')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String firstFound(String[] values) {
+        for (String value : values) {
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 直接把JSON写入OkHttp输出流的请求体
+     */
+    private abstract static class JsonRequestBody extends RequestBody {
+
+        abstract void write(JsonGenerator gen) throws IOException;
+
+        @Override
+        public MediaType contentType() {
+            return JSON_MEDIA_TYPE;
+        }
+
+        @Override
+        public void writeTo(@NotNull BufferedSink sink) throws IOException {
+            JsonGenerator gen = FACTORY.createGenerator(sink.outputStream(), JsonEncoding.UTF8);
+            // 不关闭OkHttp的输出流，只刷出缓冲
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            write(gen);
+            gen.flush();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.qna.platform.util;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.qna.platform.entity.ApiConfig;
+import com.qna.platform.entity.ChatMessage;
+import com.qna.platform.enums.ApiProvider;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Token估算器
+ * 在JVM内按提供商估算文本的token数，用于在模型上下文窗口内构建对话历史。
+ * 估算按字符类别计算：中日韩字符按每字若干token，其余字符按每token若干字符，
+ * 结果偏保守，不依赖各家的分词器
+ *
+ * @author QnA Platform
+ */
+@Slf4j
+@Component
+public class TokenEstimator {
+
+    /**
+     * 每条消息的格式开销（role、分隔符等）
+     */
+    public static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    /**
+     * 未知模型的默认上下文窗口
+     */
+    private static final int DEFAULT_CONTEXT_WINDOW = 8192;
+
+    /**
+     * 已知模型的上下文窗口（按模型名称前缀匹配，越具体的前缀越靠前）
+     */
+    private static final LinkedHashMap<String, Integer> MODEL_CONTEXT_WINDOWS = new LinkedHashMap<>();
+
+    static {
+        MODEL_CONTEXT_WINDOWS.put("gpt-4o", 128000);
+        MODEL_CONTEXT_WINDOWS.put("gpt-4.1", 128000);
+        MODEL_CONTEXT_WINDOWS.put("gpt-4-turbo", 128000);
+        MODEL_CONTEXT_WINDOWS.put("gpt-4-32k", 32768);
+        MODEL_CONTEXT_WINDOWS.put("gpt-4", 8192);
+        MODEL_CONTEXT_WINDOWS.put("gpt-3.5", 16385);
+        MODEL_CONTEXT_WINDOWS.put("deepseek", 64000);
+        MODEL_CONTEXT_WINDOWS.put("claude", 200000);
+        MODEL_CONTEXT_WINDOWS.put("qwen", 32768);
+    }
+
+    /**
+     * 消息token数缓存的最大条数
+     */
+    private static final int MESSAGE_CACHE_SIZE = 100000;
+
+    /**
+     * 已保存消息的token数缓存，key为 提供商:消息ID
+     */
+    private final Map<String, Integer> messageTokens = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MESSAGE_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * 估算文本的token数
+     *
+     * @param provider API提供商
+     * @param text 文本
+     * @return token数
+     */
+    public int estimate(String provider, String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        Ratio ratio = Ratio.of(provider);
+
+        int cjkChars = 0;
+        int otherChars = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (isCjk(text.charAt(i))) {
+                cjkChars++;
+            } else {
+                otherChars++;
+            }
+        }
+        return (int) Math.ceil(cjkChars * ratio.tokensPerCjkChar + otherChars / ratio.charsPerToken);
+    }
+
+    /**
+     * 估算一条已保存消息的token数（含格式开销），按消息ID缓存
+     */
+    public int estimate(String provider, ChatMessage message) {
+        if (message.getId() == null) {
+            return estimate(provider, message.getContent()) + MESSAGE_OVERHEAD_TOKENS;
+        }
+        String key = Ratio.of(provider).name() + ":" + message.getId();
+        synchronized (messageTokens) {
+            Integer cached = messageTokens.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        int tokens = estimate(provider, message.getContent()) + MESSAGE_OVERHEAD_TOKENS;
+        synchronized (messageTokens) {
+            messageTokens.put(key, tokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * 截断文本使其不超过指定token数
+     *
+     * @param provider API提供商
+     * @param text 文本
+     * @param maxTokens 最大token数
+     * @param keepTail true-保留结尾（用于较早的历史消息），false-保留开头
+     * @return 截断后的文本，未超出时原样返回
+     */
+    public String truncate(String provider, String text, int maxTokens, boolean keepTail) {
+        if (estimate(provider, text) <= maxTokens) {
+            return text;
+        }
+        // 按比例估算保留长度，再逐步收缩直到满足预算
+        int keep = (int) ((long) text.length() * maxTokens / Math.max(1, estimate(provider, text)));
+        String result;
+        do {
+            result = keepTail ? text.substring(text.length() - keep) : text.substring(0, keep);
+            keep = keep * 9 / 10;
+        } while (keep > 0 && estimate(provider, result) > maxTokens);
+        return keepTail ? "[前文已截断]\n" + result : result + "\n\n[内容过长，已截断]";
+    }
+
+    /**
+     * 获取模型的上下文窗口大小
+     * 优先使用API配置extraParams中的contextWindow，其次按模型名称匹配
+     */
+    public int contextWindow(ApiConfig apiConfig) {
+        if (StrUtil.isNotBlank(apiConfig.getExtraParams())) {
+            try {
+                Integer configured = JSONUtil.parseObj(apiConfig.getExtraParams()).getInt("contextWindow");
+                if (configured != null && configured > 0) {
+                    return configured;
+                }
+            } catch (Exception e) {
+                log.warn("解析extraParams失败: apiConfigId={}, error={}", apiConfig.getId(), e.getMessage());
+            }
+        }
+
+        String modelName = apiConfig.getModelName() == null ? "" : apiConfig.getModelName().toLowerCase();
+        for (Map.Entry<String, Integer> entry : MODEL_CONTEXT_WINDOWS.entrySet()) {
+            if (modelName.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return DEFAULT_CONTEXT_WINDOW;
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+        return block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS
+                || block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A
+                || block == Character.UnicodeBlock.CJK_SYMBOLS_AND_PUNCTUATION
+                || block == Character.UnicodeBlock.HALFWIDTH_AND_FULLWIDTH_FORMS
+                || block == Character.UnicodeBlock.HIRAGANA
+                || block == Character.UnicodeBlock.KATAKANA
+                || block == Character.UnicodeBlock.HANGUL_SYLLABLES;
+    }
+
+    /**
+     * 各提供商分词器的近似比例
+     */
+    private enum Ratio {
+        OPENAI(1.0, 4.0),
+        DEEPSEEK(0.7, 4.0),
+        ANTHROPIC(1.2, 3.5),
+        DEFAULT(1.0, 3.5);
+
+        private final double tokensPerCjkChar;
+        private final double charsPerToken;
+
+        Ratio(double tokensPerCjkChar, double charsPerToken) {
+            this.tokensPerCjkChar = tokensPerCjkChar;
+            this.charsPerToken = charsPerToken;
+        }
+
+        static Ratio of(String provider) {
+            if (provider == null) {
+                return DEFAULT;
+            }
+            try {
+                switch (ApiProvider.valueOf(provider.toUpperCase())) {
+                    case OPENAI:
+                        return OPENAI;
+                    case DEEPSEEK:
+                        return DEEPSEEK;
+                    case ANTHROPIC:
+                        return ANTHROPIC;
+                    default:
+                        return DEFAULT;
+                }
+            } catch (IllegalArgumentException e) {
+                return DEFAULT;
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+-- 大模型回复缓存开关（默认关闭，需按API配置和机器人模板分别开启）
+ALTER TABLE api_config
+    ADD COLUMN response_cache_enabled TINYINT DEFAULT 0 COMMENT '是否启用回复缓存：0-否，1-是' AFTER extra_params,
+    ADD COLUMN response_cache_ttl INT DEFAULT 3600 COMMENT '回复缓存有效期（秒）' AFTER response_cache_enabled;
+
+ALTER TABLE chat_bot_template
+    ADD COLUMN response_cache_enabled TINYINT DEFAULT 0 COMMENT '是否启用回复缓存：0-否，1-是' AFTER system_message;
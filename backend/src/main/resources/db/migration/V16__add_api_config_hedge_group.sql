@@ -0,0 +1,6 @@
+-- 对冲组：同一组内的API配置视为等价，主配置响应过慢时把请求同时发给组内下一个配置
+ALTER TABLE api_config
+    ADD COLUMN hedge_group VARCHAR(50) COMMENT '对冲组名称，为空表示不参与对冲' AFTER response_cache_ttl;
+
+ALTER TABLE api_config
+    ADD INDEX idx_hedge_group (hedge_group);
@@ -0,0 +1,5 @@
+-- API准入控制：每秒请求数（令牌桶）、最大并发、最大排队数，为空时使用系统默认值
+ALTER TABLE api_config
+    ADD COLUMN rate_limit_rps DECIMAL(8,2) COMMENT '每秒最大请求数，为空表示不限制' AFTER hedge_group,
+    ADD COLUMN max_concurrency INT COMMENT '最大并发请求数（实际上限根据429和响应耗时自适应调整）' AFTER rate_limit_rps,
+    ADD COLUMN max_queue INT COMMENT '超出限制时最大排队请求数' AFTER max_concurrency;
@@ -0,0 +1,13 @@
+-- API密钥池：同一API配置可附加多个密钥（及可选的独立端点），请求在密钥间按最少进行中请求数分配，
+-- 突破单个密钥的速率限制；api_config.api_key 仍作为池中的第一个密钥
+CREATE TABLE IF NOT EXISTS api_config_key (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '密钥ID',
+    api_config_id BIGINT NOT NULL COMMENT 'API配置ID',
+    key_name VARCHAR(100) COMMENT '密钥名称（便于识别）',
+    api_key VARCHAR(500) NOT NULL COMMENT 'API密钥',
+    api_endpoint VARCHAR(500) COMMENT 'API端点，为空时使用API配置的端点',
+    status TINYINT DEFAULT 1 COMMENT '状态：0-禁用，1-启用',
+    created_time DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    updated_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    INDEX idx_api_config_id (api_config_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='API密钥池';
@@ -0,0 +1,10 @@
+-- 合规检测结果缓存：按（规则版本、检测模式、规范化内容）的哈希保存检测结论，
+-- 相同内容再次检测时直接复用，不再调用Python服务；内存中只保留最近使用的部分
+CREATE TABLE IF NOT EXISTS compliance_verdict_cache (
+    content_hash CHAR(64) PRIMARY KEY COMMENT '规则版本+检测模式+规范化内容的SHA-256',
+    verdict TEXT NOT NULL COMMENT '检测结果（JSON格式）',
+    rule_version VARCHAR(50) COMMENT '规则版本',
+    created_time DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    expire_time DATETIME NOT NULL COMMENT '过期时间',
+    INDEX idx_expire_time (expire_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='合规检测结果缓存';
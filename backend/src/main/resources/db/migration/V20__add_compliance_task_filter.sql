@@ -0,0 +1,3 @@
+-- LOG检测任务保存创建时的筛选条件（时间范围、用户、消息ID上界），执行时按同一条件以ID游标分块扫描
+ALTER TABLE compliance_task
+    ADD COLUMN filter_params TEXT COMMENT '日志检测的筛选条件（JSON格式）' AFTER file_path;
@@ -0,0 +1,6 @@
+-- 后台合规扫描的进度：watermark之前（含）所有未检测的消息都已处理过
+CREATE TABLE IF NOT EXISTS compliance_scan_state (
+    scanner_name VARCHAR(50) PRIMARY KEY COMMENT '扫描器名称',
+    watermark BIGINT NOT NULL DEFAULT 0 COMMENT '已扫描到的消息ID',
+    updated_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='合规扫描进度';
@@ -0,0 +1,3 @@
+-- 合规检测服务实例列表：多个Python服务实例的基础URL（逗号分隔），为空时使用 python.service.url
+INSERT INTO sys_config (config_key, config_value, config_desc, config_type, service_group, display_order, is_active) VALUES
+('python.compliance.instances', '', '合规检测服务实例列表（逗号分隔的基础URL，为空时使用Python服务基础URL）', 'STRING', 'service', 5, 1);
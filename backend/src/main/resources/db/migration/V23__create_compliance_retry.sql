@@ -0,0 +1,9 @@
+-- 合规检测补检队列：检测服务不可用等原因未能检测的消息，服务恢复后按指数退避重试
+CREATE TABLE IF NOT EXISTS compliance_retry (
+    message_id BIGINT PRIMARY KEY COMMENT '消息ID',
+    attempts INT NOT NULL DEFAULT 0 COMMENT '已重试次数',
+    next_retry_time DATETIME NOT NULL COMMENT '下次重试时间',
+    last_error VARCHAR(255) COMMENT '最近一次失败原因',
+    created_time DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '加入时间',
+    INDEX idx_next_retry_time (next_retry_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='合规检测补检队列';
@@ -0,0 +1,189 @@
+package com.qna.platform.service.impl;
+
+import com.qna.platform.dto.ChatRequestDTO;
+import com.qna.platform.entity.ApiConfig;
+import com.qna.platform.entity.ChatMessage;
+import com.qna.platform.entity.ChatSession;
+import com.qna.platform.mapper.ApiConfigMapper;
+import com.qna.platform.mapper.ChatBotTemplateMapper;
+import com.qna.platform.mapper.ChatMessageMapper;
+import com.qna.platform.mapper.ChatSessionMapper;
+import com.qna.platform.util.AiApiClient;
+import com.qna.platform.util.AiResponseCache;
+import com.qna.platform.util.ApiQuotaLedger;
+import com.qna.platform.util.ChatComplianceQueue;
+import com.qna.platform.util.ChatSessionContextCache;
+import com.qna.platform.util.TokenEstimator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 对话服务事务边界测试：大模型调用期间不持有事务（数据库连接）
+ *
+ * @author QnA Platform
+ */
+class ChatServiceImplTransactionTest {
+
+    private static final int CONCURRENT_CHATS = 8;
+
+    private final CountingTransactionManager transactionManager = new CountingTransactionManager();
+    private final CountDownLatch llmEntered = new CountDownLatch(CONCURRENT_CHATS);
+    private final CountDownLatch llmRelease = new CountDownLatch(1);
+    private final List<Boolean> inTransactionDuringLlm = new ArrayList<>();
+
+    private ChatServiceImpl chatService;
+    private ExecutorService callers;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ChatSessionMapper sessionMapper = mock(ChatSessionMapper.class);
+        ChatMessageMapper messageMapper = mock(ChatMessageMapper.class);
+        ApiConfigMapper apiConfigMapper = mock(ApiConfigMapper.class);
+        AiApiClient aiApiClient = mock(AiApiClient.class);
+        ApiQuotaLedger quotaLedger = mock(ApiQuotaLedger.class);
+
+        ApiConfig apiConfig = new ApiConfig();
+        apiConfig.setId(1L);
+        apiConfig.setProvider("OPENAI");
+        apiConfig.setModelName("gpt-4o");
+        apiConfig.setStatus(1);
+        when(apiConfigMapper.selectById(any())).thenReturn(apiConfig);
+        when(quotaLedger.tryAcquire(anyLong())).thenReturn(true);
+
+        AtomicLong ids = new AtomicLong();
+        when(sessionMapper.insert(any(ChatSession.class))).thenAnswer(invocation -> {
+            transactionManager.assertInTransaction();
+            invocation.<ChatSession>getArgument(0).setId(ids.incrementAndGet());
+            return 1;
+        });
+        when(messageMapper.insert(any(ChatMessage.class))).thenAnswer(invocation -> {
+            transactionManager.assertInTransaction();
+            invocation.<ChatMessage>getArgument(0).setId(ids.incrementAndGet());
+            return 1;
+        });
+        when(sessionMapper.incrementMessageCount(anyLong(), anyInt(), any())).thenReturn(1);
+
+        // 大模型调用阻塞，直到所有对话都进入调用后再放行
+        doAnswer(invocation -> {
+            synchronized (inTransactionDuringLlm) {
+                inTransactionDuringLlm.add(transactionManager.active.get()
+                        || TransactionSynchronizationManager.isActualTransactionActive());
+            }
+            llmEntered.countDown();
+            assertTrue(llmRelease.await(10, TimeUnit.SECONDS));
+            return "回复";
+        }).when(aiApiClient).callAiApi(any(), anyList());
+
+        chatService = new ChatServiceImpl(sessionMapper, messageMapper, apiConfigMapper,
+                mock(ChatBotTemplateMapper.class), aiApiClient, mock(AiResponseCache.class),
+                mock(ChatComplianceQueue.class), quotaLedger, new ChatSessionContextCache(100, 30),
+                new TokenEstimator(), mock(ThreadPoolTaskExecutor.class), transactionManager);
+        callers = Executors.newFixedThreadPool(CONCURRENT_CHATS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        llmRelease.countDown();
+        callers.shutdownNow();
+    }
+
+    @Test
+    void noTransactionIsOpenWhileLlmCallsAreInFlight() throws Exception {
+        List<Future<Map<String, Object>>> results = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_CHATS; i++) {
+            long userId = i + 1;
+            results.add(callers.submit(() -> {
+                ChatRequestDTO request = new ChatRequestDTO();
+                request.setApiConfigId(1L);
+                request.setMessage("你好");
+                return chatService.sendMessage(userId, request);
+            }));
+        }
+
+        assertTrue(llmEntered.await(10, TimeUnit.SECONDS), "对话未全部进入大模型调用");
+        // 所有对话都阻塞在大模型调用中：前置事务均已提交，没有事务占用连接
+        assertEquals(0, transactionManager.open.get());
+        synchronized (inTransactionDuringLlm) {
+            inTransactionDuringLlm.forEach(inTransaction -> assertFalse(inTransaction, "大模型调用在事务中执行"));
+        }
+        assertEquals(CONCURRENT_CHATS, transactionManager.begun.get());
+
+        llmRelease.countDown();
+        for (Future<Map<String, Object>> result : results) {
+            assertEquals("回复", result.get(10, TimeUnit.SECONDS).get("content"));
+        }
+        // 每次对话两个短事务：保存用户消息、保存回复
+        assertEquals(CONCURRENT_CHATS * 2, transactionManager.begun.get());
+        assertEquals(CONCURRENT_CHATS * 2, transactionManager.committed.get());
+        assertEquals(0, transactionManager.open.get());
+    }
+
+    /**
+     * 记录开启、提交和当前未结束的事务数
+     */
+    private static class CountingTransactionManager extends AbstractPlatformTransactionManager {
+        private final AtomicInteger open = new AtomicInteger();
+        private final AtomicInteger begun = new AtomicInteger();
+        private final AtomicInteger committed = new AtomicInteger();
+        private final ThreadLocal<Boolean> active = ThreadLocal.withInitial(() -> false);
+
+        void assertInTransaction() {
+            assertTrue(active.get(), "数据库写入不在事务中");
+        }
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            open.incrementAndGet();
+            begun.incrementAndGet();
+            active.set(true);
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            committed.incrementAndGet();
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doCleanupAfterCompletion(Object transaction) {
+            active.set(false);
+            open.decrementAndGet();
+        }
+    }
+}
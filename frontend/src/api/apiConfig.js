@@ -72,3 +72,34 @@ export function getConfigById(id) {
     method: 'get'
   })
 }
+
+/**
+ * 获取API配置密钥池中的密钥
+ */
+export function getConfigKeys(id) {
+  return request({
+    url: `/api-config/${id}/keys`,
+    method: 'get'
+  })
+}
+
+/**
+ * 向API配置的密钥池添加密钥
+ */
+export function addConfigKey(id, data) {
+  return request({
+    url: `/api-config/${id}/keys`,
+    method: 'post',
+    data
+  })
+}
+
+/**
+ * 从密钥池删除密钥
+ */
+export function deleteConfigKey(keyId) {
+  return request({
+    url: `/api-config/keys/${keyId}`,
+    method: 'delete'
+  })
+}
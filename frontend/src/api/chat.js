@@ -1,4 +1,5 @@
 import request from '@/utils/request'
+import { useUserStore } from '@/store/user'
 
 /**
  * 发送消息
@@ -11,6 +12,74 @@ export function sendMessage(data) {
   })
 }
 
+/**
+ * 流式发送消息（SSE）
+ * axios 无法逐段读取响应，这里使用 fetch 读取 text/event-stream
+ *
+ * @param data 请求参数，与 sendMessage 相同
+ * @param handlers { onDelta(content), onDone(result), onError(message) }
+ */
+export async function sendMessageStream(data, handlers = {}) {
+  const userStore = useUserStore()
+  const response = await fetch('/api/chat/stream', {
+    method: 'POST',
+    headers: {
+      'Content-Type': 'application/json',
+      'Accept': 'text/event-stream',
+      'Authorization': `Bearer ${userStore.token}`
+    },
+    body: JSON.stringify(data)
+  })
+
+  if (!response.ok || !response.body) {
+    throw new Error(`请求失败: ${response.status}`)
+  }
+
+  const reader = response.body.getReader()
+  const decoder = new TextDecoder('utf-8')
+  let buffer = ''
+
+  // 按空行切分SSE事件，每个事件包含 event: 和 data: 行
+  const dispatch = (block) => {
+    let event = 'message'
+    const dataLines = []
+    block.split('\n').forEach(line => {
+      if (line.startsWith('event:')) {
+        event = line.substring(6).trim()
+      } else if (line.startsWith('data:')) {
+        dataLines.push(line.substring(5))
+      }
+    })
+    if (dataLines.length === 0) {
+      return
+    }
+    const payload = JSON.parse(dataLines.join('\n'))
+    if (event === 'delta') {
+      handlers.onDelta && handlers.onDelta(payload.content)
+    } else if (event === 'done') {
+      handlers.onDone && handlers.onDone(payload)
+    } else if (event === 'error') {
+      handlers.onError && handlers.onError(payload.message)
+    }
+  }
+
+  while (true) {
+    const { done, value } = await reader.read()
+    if (done) {
+      break
+    }
+    buffer += decoder.decode(value, { stream: true }).replace(/\r\n/g, '\n')
+    let index
+    while ((index = buffer.indexOf('\n\n')) !== -1) {
+      dispatch(buffer.substring(0, index))
+      buffer = buffer.substring(index + 2)
+    }
+  }
+  if (buffer.trim()) {
+    dispatch(buffer)
+  }
+}
+
 /**
  * 获取会话历史
  */
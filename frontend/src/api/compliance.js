@@ -64,6 +64,18 @@ export function triggerCheck(taskId) {
   })
 }
 
+/**
+ * 取消处理中的检测任务
+ * @param {number} taskId - 任务ID
+ * @returns {Promise}
+ */
+export function cancelTask(taskId) {
+  return request({
+    url: `/compliance/task/${taskId}/cancel`,
+    method: 'post'
+  })
+}
+
 /**
  * 批量检测 - 文件上传
  * @param {File} file - 上传的文件（JSON或CSV格式）
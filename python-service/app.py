@@ -35,6 +35,14 @@ if __name__ == '__main__':
     # 获取配置
     config_name = os.environ.get('FLASK_ENV', 'default')
     current_config = config[config_name]
+
+    # 合规检测长连接服务（调试模式下只在重载后的子进程中启动，避免端口重复绑定）
+    if current_config.COMPLIANCE_SOCKET_PORT > 0 and (
+            not current_config.DEBUG or os.environ.get('WERKZEUG_RUN_MAIN') == 'true'):
+        from services.compliance_socket_server import start_socket_server
+        start_socket_server(current_config.HOST, current_config.COMPLIANCE_SOCKET_PORT,
+                            current_config.COMPLIANCE_SOCKET_WORKERS,
+                            current_config.COMPLIANCE_BATCH_MAX_ITEMS)
     
     print("=" * 60)
     print("Python服务启动中...")
@@ -42,5 +50,7 @@ if __name__ == '__main__':
     print(f"信息扫描接口地址: http://{current_config.HOST}:{current_config.PORT}/api/scaninfo/scaninfo")
     print(f"模型训练接口地址: http://{current_config.HOST}:{current_config.PORT}/api/training/start")
     print(f"健康检查接口地址: http://{current_config.HOST}:{current_config.PORT}/api/health/health")
+    if current_config.COMPLIANCE_SOCKET_PORT > 0:
+        print(f"合规检测长连接地址: {current_config.HOST}:{current_config.COMPLIANCE_SOCKET_PORT}")
     print("=" * 60)
     app.run(host=current_config.HOST, port=current_config.PORT, debug=current_config.DEBUG)
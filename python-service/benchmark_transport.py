@@ -0,0 +1,105 @@
+"""
+合规检测传输方式基准测试：HTTP接口与长连接二进制协议
+需先启动服务并设置 COMPLIANCE_SOCKET_PORT，例如：
+    COMPLIANCE_SOCKET_PORT=5001 DEBUG=False python app.py
+    python benchmark_transport.py --http http://localhost:5000 --socket localhost:5001
+
+分别以1、16、64个并发调用方发送单条检测请求，输出吞吐量和延迟分位数。
+长连接方式下所有调用方共用一个连接，请求以流水线方式发送，与后端的用法一致
+"""
+import argparse
+import socket
+import struct
+import threading
+import time
+from concurrent.futures import ThreadPoolExecutor
+
+import requests
+
+SAMPLE_CONTENT = "你好，请帮我写一段关于春天的短文，要求语言优美，不少于一百字。"
+
+
+class PipelinedClient:
+    """长连接客户端：多线程共用一个连接，按请求ID匹配响应"""
+
+    def __init__(self, host, port):
+        self.sock = socket.create_connection((host, port))
+        self.sock.setsockopt(socket.IPPROTO_TCP, socket.TCP_NODELAY, 1)
+        self.rfile = self.sock.makefile('rb')
+        self.write_lock = threading.Lock()
+        self.pending = {}
+        self.next_id = 0
+        self.id_lock = threading.Lock()
+        threading.Thread(target=self._read_loop, daemon=True).start()
+
+    def check(self, content):
+        data = content.encode('utf-8')
+        with self.id_lock:
+            self.next_id += 1
+            request_id = self.next_id
+        waiter = [threading.Event(), None]
+        self.pending[request_id] = waiter
+        body = struct.pack('>IBI', request_id, 0x01, len(data)) + data
+        with self.write_lock:
+            self.sock.sendall(struct.pack('>I', len(body)) + body)
+        waiter[0].wait()
+        return waiter[1]
+
+    def _read_loop(self):
+        while True:
+            header = self.rfile.read(4)
+            if len(header) < 4:
+                return
+            body = self.rfile.read(struct.unpack('>I', header)[0])
+            request_id, status = struct.unpack_from('>IB', body)
+            waiter = self.pending.pop(request_id, None)
+            if waiter:
+                waiter[1] = status
+                waiter[0].set()
+
+
+def run(name, call, concurrency, requests_per_caller):
+    latencies = []
+    lock = threading.Lock()
+
+    def caller():
+        local = []
+        for _ in range(requests_per_caller):
+            start = time.perf_counter()
+            call()
+            local.append(time.perf_counter() - start)
+        with lock:
+            latencies.extend(local)
+
+    start = time.perf_counter()
+    with ThreadPoolExecutor(max_workers=concurrency) as executor:
+        for _ in range(concurrency):
+            executor.submit(caller)
+    elapsed = time.perf_counter() - start
+
+    latencies.sort()
+    total = len(latencies)
+    print(f"{name:<8} 并发={concurrency:<3} 请求数={total:<6} 吞吐={total / elapsed:9.1f}/s "
+          f"p50={latencies[total // 2] * 1000:7.2f}ms p99={latencies[int(total * 0.99) - 1] * 1000:7.2f}ms")
+
+
+def main():
+    parser = argparse.ArgumentParser(description='合规检测传输方式基准测试')
+    parser.add_argument('--http', default='http://localhost:5000', help='HTTP服务基础URL')
+    parser.add_argument('--socket', default='localhost:5001', help='长连接服务地址 host:port')
+    parser.add_argument('--requests', type=int, default=2000, help='每种并发下的总请求数')
+    args = parser.parse_args()
+
+    host, port = args.socket.rsplit(':', 1)
+    client = PipelinedClient(host, int(port))
+    url = args.http.rstrip('/') + '/api/compliance/check'
+
+    for concurrency in (1, 16, 64):
+        per_caller = max(1, args.requests // concurrency)
+        run('HTTP', lambda: requests.post(url, json={"content": SAMPLE_CONTENT}).raise_for_status(),
+            concurrency, per_caller)
+        run('SOCKET', lambda: client.check(SAMPLE_CONTENT), concurrency, per_caller)
+
+
+if __name__ == '__main__':
+    main()
@@ -14,6 +14,13 @@ class Config:
     LLM_DEFAULT_KEY = os.environ.get('LLM_DEFAULT_KEY', '')
     LLM_DEFAULT_MODEL = os.environ.get('LLM_DEFAULT_MODEL', 'gpt-3.5-turbo')
     LLM_DEFAULT_TIMEOUT = int(os.environ.get('LLM_DEFAULT_TIMEOUT', 30))
+
+    # 批量合规检测单次请求的最大条数
+    COMPLIANCE_BATCH_MAX_ITEMS = int(os.environ.get('COMPLIANCE_BATCH_MAX_ITEMS', 500))
+
+    # 合规检测长连接服务端口（0表示不启动）及处理请求的线程数
+    COMPLIANCE_SOCKET_PORT = int(os.environ.get('COMPLIANCE_SOCKET_PORT', 0))
+    COMPLIANCE_SOCKET_WORKERS = int(os.environ.get('COMPLIANCE_SOCKET_WORKERS', 16))
     
 class DevelopmentConfig(Config):
     DEBUG = True
@@ -5,7 +5,8 @@ import os
 # Add the parent directory to the Python path
 sys.path.append(os.path.dirname(os.path.dirname(os.path.abspath(__file__))))
 
-from services.compliance_service import check_compliance
+from services.compliance_service import check_compliance, empty_content_result, is_empty_content
+from config import config
 
 logger = logging.getLogger(__name__)
 
@@ -52,3 +53,53 @@ def check_compliance_route():
         return jsonify({
             "error": str(e)
         }), 500
+
+
+@compliance_bp.route('/check/batch', methods=['POST'])
+def check_compliance_batch_route():
+    """
+    批量合规检测接口
+    请求体: {"contents": ["...", "..."], "mode": "moderate", "llmConfig": {...}}
+    mode和llmConfig的含义与单条检测接口相同，对所有内容生效
+    返回: {"results": [...]}，顺序与contents一致；
+    单条内容为空时对应位置直接返回通过结果；检测出错时返回 {"error": "..."}，不影响其他内容
+    """
+    try:
+        data = request.get_json()
+        contents = data.get('contents')
+        mode = data.get('mode', 'moderate')
+        llm_config = data.get('llmConfig', {})
+
+        if not isinstance(contents, list) or not contents:
+            return jsonify({
+                "error": "contents必须是非空数组"
+            }), 400
+
+        max_items = config.get('default', config['development']).COMPLIANCE_BATCH_MAX_ITEMS
+        if len(contents) > max_items:
+            return jsonify({
+                "error": f"单次最多检测{max_items}条内容"
+            }), 413
+
+        logger.info(f"收到批量检测请求，条数: {len(contents)}, 检查模式: {mode}")
+
+        results = []
+        for content in contents:
+            if is_empty_content(content):
+                results.append(empty_content_result())
+                continue
+            try:
+                results.append(check_compliance(content, mode, llm_config))
+            except Exception as e:
+                logger.error(f"批量检测中单条内容检测失败: {str(e)}")
+                results.append({"error": str(e)})
+
+        logger.info(f"批量检测完成，条数: {len(results)}")
+
+        return jsonify({"results": results})
+
+    except Exception as e:
+        logger.error(f"批量检测失败: {str(e)}")
+        return jsonify({
+            "error": str(e)
+        }), 500
@@ -296,6 +296,21 @@ def check_with_llm(content, llm_config=None):
             "detail": f"LLM检测发生错误: {str(e)}"
         }
 
+def empty_content_result():
+    """
+    空内容（含纯空白、非字符串）无需检测，直接返回通过，批量检测中不作为出错处理
+    """
+    return {
+        "result": "PASS",
+        "risk_level": "LOW",
+        "risk_categories": "",
+        "confidence_score": 1.0,
+        "detail": "内容为空，跳过检测"
+    }
+
+def is_empty_content(content):
+    return not isinstance(content, str) or not content.strip()
+
 def check_compliance(content, mode='moderate', llm_config=None):
     """
     合规检测主函数
@@ -0,0 +1,171 @@
+"""
+合规检测长连接服务
+在HTTP接口之外提供一个基于TCP长连接的二进制协议，供后端在高吞吐场景下使用：
+连接建立后可以连续发送多个请求而不必等待响应（流水线），响应按完成顺序返回，用请求ID对应。
+
+帧格式：4字节大端无符号长度N + N字节帧体
+字符串(str)：4字节大端长度 + UTF-8字节
+
+请求帧体：u32 请求ID, u8 操作码, 参数
+  0x01 单条检测：str 内容
+  0x02 批量检测：u32 条数, 条数 x str 内容
+响应帧体：u32 请求ID, u8 状态(0成功, 1失败), 内容
+  失败：str 错误信息
+  单条检测成功：检测项
+  批量检测成功：u32 条数, 条数 x 检测项（顺序与请求一致）
+检测项：u8 标志(0结果, 1错误)
+  结果：str result, str risk_level, str risk_categories, f64 confidence_score, str detail
+  错误：str 错误信息
+"""
+import logging
+import socket
+import socketserver
+import struct
+import threading
+from concurrent.futures import ThreadPoolExecutor
+
+from services.compliance_service import check_compliance, empty_content_result, is_empty_content
+
+logger = logging.getLogger(__name__)
+
+OP_CHECK = 0x01
+OP_CHECK_BATCH = 0x02
+
+STATUS_OK = 0
+STATUS_ERROR = 1
+
+# 单帧最大字节数，防止异常长度耗尽内存
+MAX_FRAME_BYTES = 64 * 1024 * 1024
+
+
+def _read_exact(sock_file, size):
+    data = sock_file.read(size)
+    if len(data) < size:
+        raise EOFError()
+    return data
+
+
+class _Reader:
+    """按顺序读取帧体中的字段"""
+
+    def __init__(self, data):
+        self.data = data
+        self.offset = 0
+
+    def u8(self):
+        value = self.data[self.offset]
+        self.offset += 1
+        return value
+
+    def u32(self):
+        value = struct.unpack_from('>I', self.data, self.offset)[0]
+        self.offset += 4
+        return value
+
+    def str(self):
+        length = self.u32()
+        value = self.data[self.offset:self.offset + length].decode('utf-8')
+        self.offset += length
+        return value
+
+
+def _pack_str(value):
+    data = (value if isinstance(value, str) else str(value or '')).encode('utf-8')
+    return struct.pack('>I', len(data)) + data
+
+
+def _pack_item(result):
+    if result is None or 'error' in result:
+        message = result.get('error') if result else '检测失败'
+        return b'\x01' + _pack_str(message)
+    return (b'\x00'
+            + _pack_str(result.get('result', ''))
+            + _pack_str(result.get('risk_level', ''))
+            + _pack_str(result.get('risk_categories', ''))
+            + struct.pack('>d', float(result.get('confidence_score') or 0.0))
+            + _pack_str(result.get('detail', '')))
+
+
+def _check_one(content, mode):
+    if is_empty_content(content):
+        return empty_content_result()
+    try:
+        return check_compliance(content, mode, {})
+    except Exception as e:
+        logger.error(f"长连接检测中单条内容检测失败: {str(e)}")
+        return {"error": str(e)}
+
+
+class ComplianceSocketServer(socketserver.ThreadingTCPServer):
+    daemon_threads = True
+    allow_reuse_address = True
+
+    def __init__(self, address, workers, max_batch_items, mode='moderate'):
+        super().__init__(address, _ConnectionHandler)
+        self.executor = ThreadPoolExecutor(max_workers=workers, thread_name_prefix='compliance-socket')
+        self.max_batch_items = max_batch_items
+        self.mode = mode
+
+    def handle_request_frame(self, body):
+        """处理一个请求帧，返回响应帧体"""
+        reader = _Reader(body)
+        request_id = reader.u32()
+        try:
+            op = reader.u8()
+            if op == OP_CHECK:
+                payload = _pack_item(_check_one(reader.str(), self.mode))
+            elif op == OP_CHECK_BATCH:
+                count = reader.u32()
+                if count > self.max_batch_items:
+                    raise ValueError(f"单次最多检测{self.max_batch_items}条内容")
+                contents = [reader.str() for _ in range(count)]
+                payload = struct.pack('>I', count) + b''.join(
+                    _pack_item(_check_one(content, self.mode)) for content in contents)
+            else:
+                raise ValueError(f"未知的操作码: {op}")
+            return struct.pack('>IB', request_id, STATUS_OK) + payload
+        except Exception as e:
+            logger.error(f"长连接请求处理失败: {str(e)}")
+            return struct.pack('>IB', request_id, STATUS_ERROR) + _pack_str(str(e))
+
+
+class _ConnectionHandler(socketserver.StreamRequestHandler):
+    """一个连接：读线程持续读取请求帧并交给线程池处理，响应在写锁保护下按完成顺序写回"""
+
+    def handle(self):
+        self.request.setsockopt(socket.IPPROTO_TCP, socket.TCP_NODELAY, 1)
+        write_lock = threading.Lock()
+        peer = self.client_address
+        logger.info(f"合规检测长连接建立: {peer}")
+
+        def process(body):
+            response = self.server.handle_request_frame(body)
+            frame = struct.pack('>I', len(response)) + response
+            try:
+                with write_lock:
+                    self.wfile.write(frame)
+                    self.wfile.flush()
+            except OSError:
+                pass
+
+        try:
+            while True:
+                length = struct.unpack('>I', _read_exact(self.rfile, 4))[0]
+                if length > MAX_FRAME_BYTES:
+                    logger.error(f"合规检测长连接帧过大: {length}字节, 关闭连接: {peer}")
+                    return
+                body = _read_exact(self.rfile, length)
+                self.server.executor.submit(process, body)
+        except (EOFError, ConnectionError, OSError):
+            pass
+        finally:
+            logger.info(f"合规检测长连接关闭: {peer}")
+
+
+def start_socket_server(host, port, workers, max_batch_items):
+    """在后台线程中启动长连接服务"""
+    server = ComplianceSocketServer((host, port), workers, max_batch_items)
+    thread = threading.Thread(target=server.serve_forever, name='compliance-socket-server', daemon=True)
+    thread.start()
+    logger.info(f"合规检测长连接服务已启动: {host}:{port}, 工作线程数: {workers}")
+    return server